@@ -0,0 +1,8 @@
+package com.omarahmed42.socialmedia.cache;
+
+/**
+ * Published when a node writes or evicts a cache entry, a {@code null} key
+ * clears the whole cache.
+ */
+public record CacheInvalidation(String nodeId, String cacheName, String key) {
+}
@@ -0,0 +1,220 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.metrics.CacheMetrics;
+import com.omarahmed42.socialmedia.metrics.HeavyHitters.HeavyHitter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Introspection of the Spring caches for operators:
+ * <ul>
+ * <li>{@code GET /actuator/cachekeys} lists the hottest keys of every cache</li>
+ * <li>{@code GET /actuator/cachekeys/{cache}} adds entry counts and the
+ * distribution of value sizes, sampled from Redis</li>
+ * <li>{@code DELETE /actuator/cachekeys/{cache}?pattern=...} evicts the keys
+ * matching a Redis glob pattern, e.g. {@code 1163*}</li>
+ * </ul>
+ * Redis is only walked with SCAN, bounded by {@code caching.introspection.*},
+ * node by node in cluster mode.
+ * Hot keys come from the sketches of {@link CacheMetrics} and cover the
+ * lookups of this node only.
+ */
+@Component
+@Endpoint(id = "cachekeys")
+@Slf4j
+public class CacheKeysEndpoint {
+
+    private static final int HOT_KEYS = 10;
+    private static final int DETAILED_HOT_KEYS = 50;
+    private static final int LARGEST_KEYS = 10;
+
+    private final CacheManager cacheManager;
+    private final RedisCacheConfiguration redisCacheConfiguration;
+    private final StringRedisTemplate redisTemplate;
+    private final CacheMetrics cacheMetrics;
+    private final CachingProperties.Introspection properties;
+
+    public CacheKeysEndpoint(CacheManager cacheManager, RedisCacheConfiguration redisCacheConfiguration,
+            StringRedisTemplate redisTemplate, CacheMetrics cacheMetrics, CachingProperties cachingProperties) {
+        this.cacheManager = cacheManager;
+        this.redisCacheConfiguration = redisCacheConfiguration;
+        this.redisTemplate = redisTemplate;
+        this.cacheMetrics = cacheMetrics;
+        this.properties = cachingProperties.getIntrospection();
+    }
+
+    @ReadOperation
+    public Map<String, List<HeavyHitter>> hotKeys() {
+        Map<String, List<HeavyHitter>> hotKeys = new LinkedHashMap<>();
+        cacheManager.getCacheNames().stream()
+                .sorted()
+                .forEach(cacheName -> hotKeys.put(cacheName, cacheMetrics.hotKeys(cacheName, HOT_KEYS)));
+        return hotKeys;
+    }
+
+    @ReadOperation
+    public CacheReport cache(@Selector String cacheName) {
+        Cache cache = targetCache(cacheName);
+        if (cache == null)
+            return null;
+
+        List<String> sample = new ArrayList<>(properties.getSizeSample());
+        long[] entries = { 0 };
+        boolean complete = scan(cacheName, "*", key -> {
+            if (entries[0] == properties.getScanLimit())
+                return false;
+            if (sample.size() < properties.getSizeSample())
+                sample.add(key);
+            entries[0]++;
+            return true;
+        });
+
+        Long localEntries = cache instanceof TwoLevelCache twoLevelCache ? twoLevelCache.estimatedLocalSize()
+                : null;
+        List<KeySize> sizes = sizes(cacheName, sample);
+        return new CacheReport(cacheName, cacheMetrics.hotKeys(cacheName, DETAILED_HOT_KEYS), localEntries,
+                entries[0], complete, SizeDistribution.of(sizes),
+                sizes.stream().sorted(Comparator.comparingLong(KeySize::bytes).reversed()).limit(LARGEST_KEYS)
+                        .toList());
+    }
+
+    @DeleteOperation
+    public Map<String, Object> evict(@Selector String cacheName, String pattern) {
+        if (StringUtils.isBlank(pattern))
+            throw new IllegalArgumentException("Key pattern cannot be empty");
+
+        Cache cache = targetCache(cacheName);
+        if (cache == null)
+            return null;
+
+        long[] evicted = { 0 };
+        List<String> batch = new ArrayList<>(properties.getBatchSize());
+        scan(cacheName, pattern, key -> {
+            batch.add(key);
+            if (batch.size() == properties.getBatchSize()) {
+                evicted[0] += unlink(batch);
+                batch.clear();
+            }
+            return true;
+        });
+        if (!batch.isEmpty())
+            evicted[0] += unlink(batch);
+
+        // In-process entries cannot be matched against a Redis pattern, so the whole level is dropped
+        if (cache instanceof TwoLevelCache twoLevelCache)
+            twoLevelCache.clearLocal();
+
+        log.info("Evicted {} keys matching {} from cache {}", evicted[0], pattern, cacheName);
+        return Map.of("cache", cacheName, "pattern", pattern, "evicted", evicted[0]);
+    }
+
+    private Cache targetCache(String cacheName) {
+        Cache cache = cacheManager.getCache(cacheName);
+        return cache instanceof TransactionAwareCacheDecorator decorator ? decorator.getTargetCache() : cache;
+    }
+
+    /**
+     * Passes the keys of the cache matching the pattern to the visitor until it
+     * returns false, and returns whether every key was visited. A cluster has no
+     * cluster-wide SCAN, so each primary is scanned in turn.
+     */
+    private boolean scan(String cacheName, String pattern, Predicate<String> visitor) {
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(redisCacheConfiguration.getKeyPrefixFor(cacheName) + pattern)
+                .count(properties.getBatchSize())
+                .build();
+        return Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection -> {
+            if (!(connection instanceof RedisClusterConnection clusterConnection))
+                return visit(connection.keyCommands().scan(options), visitor);
+
+            for (RedisClusterNode node : clusterConnection.clusterGetNodes()) {
+                if (node.isMaster() && !visit(clusterConnection.scan(node, options), visitor))
+                    return false;
+            }
+            return true;
+        }));
+    }
+
+    private static boolean visit(Cursor<byte[]> cursor, Predicate<String> visitor) {
+        try (cursor) {
+            while (cursor.hasNext()) {
+                if (!visitor.test(new String(cursor.next(), StandardCharsets.UTF_8)))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private long unlink(List<String> keys) {
+        Long unlinked = redisTemplate.unlink(keys);
+        return unlinked == null ? 0 : unlinked;
+    }
+
+    private List<KeySize> sizes(String cacheName, List<String> keys) {
+        List<Object> lengths = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys)
+                connection.stringCommands().strLen(key.getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+
+        String prefix = redisCacheConfiguration.getKeyPrefixFor(cacheName);
+        List<KeySize> sizes = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            // Keys expired between the scan and the pipeline come back as zero
+            if (lengths.get(i) instanceof Long length && length > 0)
+                sizes.add(new KeySize(keys.get(i).substring(prefix.length()), length));
+        }
+        return sizes;
+    }
+
+    public record CacheReport(String cache, List<HeavyHitter> hotKeys, Long localEntries, long redisEntries,
+            boolean redisEntriesComplete, SizeDistribution valueSizes, List<KeySize> largestValues) {
+    }
+
+    public record KeySize(String key, long bytes) {
+    }
+
+    public record SizeDistribution(int sampled, long mean, long p50, long p90, long p99, long max) {
+
+        static SizeDistribution of(List<KeySize> sizes) {
+            long[] bytes = sizes.stream().mapToLong(KeySize::bytes).sorted().toArray();
+            if (bytes.length == 0)
+                return new SizeDistribution(0, 0, 0, 0, 0, 0);
+
+            return new SizeDistribution(bytes.length, Arrays.stream(bytes).sum() / bytes.length,
+                    percentile(bytes, 0.5), percentile(bytes, 0.9), percentile(bytes, 0.99),
+                    bytes[bytes.length - 1]);
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.enums.TokenStatus;
+import com.omarahmed42.socialmedia.model.graph.UserNode;
+import com.omarahmed42.socialmedia.repository.PostRepository;
+import com.omarahmed42.socialmedia.repository.RefreshTokenRepository;
+import com.omarahmed42.socialmedia.repository.graph.UserNodeRepository;
+import com.omarahmed42.socialmedia.service.NewsfeedRebuildService;
+import com.omarahmed42.socialmedia.service.NewsfeedStore;
+import com.omarahmed42.socialmedia.service.PostHydrationService;
+import com.omarahmed42.socialmedia.service.StatisticsService;
+import com.omarahmed42.socialmedia.util.RateLimiter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Preloads the content most reads hit first, so a deploy or a Redis flush does
+ * not send every first read to MySQL, Neo4j and COUNT queries:
+ * <ul>
+ * <li>the latest posts of the users with the most friends</li>
+ * <li>the reaction counters of posts created within the reaction window</li>
+ * <li>the newsfeeds of the users who signed in most recently</li>
+ * </ul>
+ * Runs once the application is ready and through the {@code cachewarmup}
+ * actuator endpoint. Only one run is active at a time; its items are spread
+ * over a fixed number of threads and rate limited, so warming never competes
+ * with live traffic for more than its share of the databases.
+ */
+@Component
+@Slf4j
+public class CacheWarmer implements DisposableBean {
+
+    private static final int AUTHORS_PER_QUERY = 100;
+    private static final int POSTS_PER_BATCH = 100;
+
+    private final CachingProperties.Warmup properties;
+    private final PostRepository postRepository;
+    private final UserNodeRepository userNodeRepository;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final PostHydrationService postHydrationService;
+    private final StatisticsService postReactionsStatisticsService;
+    private final NewsfeedStore newsfeedStore;
+    private final NewsfeedRebuildService newsfeedRebuildService;
+
+    private final ExecutorService coordinator;
+    private final ThreadPoolExecutor workers;
+    private final RateLimiter rateLimiter;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile WarmupRun lastRun;
+
+    public CacheWarmer(CachingProperties cachingProperties, PostRepository postRepository,
+            UserNodeRepository userNodeRepository, RefreshTokenRepository refreshTokenRepository,
+            PostHydrationService postHydrationService,
+            @Qualifier("postReactionsStatisticsService") StatisticsService postReactionsStatisticsService,
+            NewsfeedStore newsfeedStore, NewsfeedRebuildService newsfeedRebuildService) {
+        this.properties = cachingProperties.getWarmup();
+        if (properties.getConcurrency() < 1)
+            throw new IllegalArgumentException("Cache warmup concurrency must be at least 1");
+
+        this.postRepository = postRepository;
+        this.userNodeRepository = userNodeRepository;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.postHydrationService = postHydrationService;
+        this.postReactionsStatisticsService = postReactionsStatisticsService;
+        this.newsfeedStore = newsfeedStore;
+        this.newsfeedRebuildService = newsfeedRebuildService;
+        this.rateLimiter = new RateLimiter(properties.getRateLimit());
+        this.coordinator = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("cache-warmup-"));
+        // Unbounded queue, a run never submits more items than the configured limits
+        this.workers = new ThreadPoolExecutor(properties.getConcurrency(), properties.getConcurrency(), 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("cache-warmup-worker-"));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        if (properties.isOnStartup())
+            start();
+    }
+
+    /**
+     * Starts a run in the background, unless one is already running.
+     *
+     * @return whether a run was started
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true))
+            return false;
+
+        try {
+            coordinator.execute(() -> {
+                try {
+                    lastRun = warm();
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public WarmupRun getLastRun() {
+        return lastRun;
+    }
+
+    private WarmupRun warm() {
+        Instant startedAt = Instant.now();
+        AtomicInteger failures = new AtomicInteger();
+        log.info("Cache warmup started");
+
+        int posts = warmTopAuthorPosts(failures);
+        int reactionCounters = warmReactionCounters(failures);
+        int newsfeeds = warmNewsfeeds(failures);
+
+        WarmupRun run = new WarmupRun(startedAt, Instant.now(), posts, reactionCounters, newsfeeds, failures.get());
+        log.info("Cache warmup finished in {} ms: {} posts, {} reaction counters, {} newsfeeds, {} failures",
+                run.finishedAt().toEpochMilli() - startedAt.toEpochMilli(), posts, reactionCounters, newsfeeds,
+                run.failures());
+        return run;
+    }
+
+    private int warmTopAuthorPosts(AtomicInteger failures) {
+        List<Long> authorIds = query("top authors", failures,
+                () -> userNodeRepository.findMostConnected(properties.getTopAuthors()).stream()
+                        .map(UserNode::getUserId)
+                        .filter(Objects::nonNull)
+                        .toList());
+
+        List<Long> postIds = new ArrayList<>();
+        for (int i = 0; i < authorIds.size(); i += AUTHORS_PER_QUERY) {
+            List<Long> authors = authorIds.subList(i, Math.min(i + AUTHORS_PER_QUERY, authorIds.size()));
+            postIds.addAll(query("top author posts", failures,
+                    () -> postRepository.findLatestIdsPerUserIds(authors, PostStatus.PUBLISHED.name(),
+                            properties.getPostsPerAuthor())));
+        }
+
+        List<List<Long>> batches = new ArrayList<>();
+        for (int i = 0; i < postIds.size(); i += POSTS_PER_BATCH)
+            batches.add(postIds.subList(i, Math.min(i + POSTS_PER_BATCH, postIds.size())));
+
+        return runAll(batches, List::size, postHydrationService::hydrate, failures);
+    }
+
+    private int warmReactionCounters(AtomicInteger failures) {
+        LocalDateTime since = LocalDateTime.now().minus(properties.getReactionWindow());
+        List<Long> postIds = query("recent posts", failures, () -> postRepository.findLatestIdsCreatedSince(since,
+                PostStatus.PUBLISHED, properties.getMaxReactionPosts()));
+
+        return runAll(postIds, postId -> 1,
+                postId -> postReactionsStatisticsService.getStatistics(String.valueOf(postId)), failures);
+    }
+
+    private int warmNewsfeeds(AtomicInteger failures) {
+        List<Long> userIds = query("active users", failures, () -> refreshTokenRepository
+                .findLatestUserIdsByStatusAndValidAfter(TokenStatus.VALID, System.currentTimeMillis(),
+                        properties.getActiveUsers()));
+
+        return runAll(userIds, userId -> 1, userId -> {
+            // Feeds kept up to date by fanout are left alone
+            if (!newsfeedStore.exists(userId))
+                newsfeedRebuildService.rebuild(userId);
+        }, failures);
+    }
+
+    private <T> int runAll(List<T> items, ToIntFunction<T> permits,
+            Consumer<T> warmer, AtomicInteger failures) {
+        AtomicInteger warmed = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    rateLimiter.acquire(permits.applyAsInt(item));
+                    warmer.accept(item);
+                    warmed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                    log.warn("Cache warmup of {} failed", item, e);
+                }
+            }, workers));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        return warmed.get();
+    }
+
+    private static <T> List<T> query(String name, AtomicInteger failures, Supplier<List<T>> query) {
+        try {
+            return query.get();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            log.error("Cache warmup could not query {}", name, e);
+            return List.of();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    public record WarmupRun(Instant startedAt, Instant finishedAt, int posts, int reactionCounters, int newsfeeds,
+            int failures) {
+    }
+}
@@ -0,0 +1,36 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * {@code GET /actuator/cachewarmup} reports the last cache warmup,
+ * {@code POST /actuator/cachewarmup} starts a new one in the background.
+ */
+@Component
+@Endpoint(id = "cachewarmup")
+@RequiredArgsConstructor
+public class CacheWarmupEndpoint {
+
+    private final CacheWarmer cacheWarmer;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", cacheWarmer.isRunning());
+        status.put("lastRun", cacheWarmer.getLastRun());
+        return status;
+    }
+
+    @WriteOperation
+    public Map<String, Object> warm() {
+        return Map.of("started", cacheWarmer.start());
+    }
+}
@@ -0,0 +1,137 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.util.SingleFlight;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads a missing cache entry once per key: concurrent callers on this node
+ * wait for the caller already loading it and share its result.
+ * <p>
+ * With a Redis template, loads are also coalesced across nodes. The node
+ * holding the key's lock loads and writes the value while the others poll
+ * the cache for it, and load it themselves once the wait time is up.
+ */
+@Slf4j
+public class CoalescingLoader {
+
+    private static final String LOCK_PREFIX = "lock:";
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final SingleFlight<String, Object> loads = new SingleFlight<>();
+    private final StringRedisTemplate redisTemplate;
+    private final CachingProperties.Lock lock;
+
+    public CoalescingLoader() {
+        this(null, null);
+    }
+
+    /**
+     * @param redisTemplate coalesces loads across nodes, or {@code null} to only
+     *                      coalesce them within this node
+     */
+    public CoalescingLoader(StringRedisTemplate redisTemplate, CachingProperties.Lock lock) {
+        this.redisTemplate = redisTemplate;
+        this.lock = lock;
+    }
+
+    /**
+     * @param key    the Redis key of the entry
+     * @param cached reads the entry, {@code null} when it is missing
+     * @param loader loads the value from its source
+     * @param writer caches a loaded value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, Supplier<ValueWrapper> cached, Supplier<T> loader, Consumer<T> writer) {
+        return (T) loads.execute(key, () -> redisTemplate == null
+                ? loadAndWrite(loader, writer)
+                : loadLocked(key, cached, loader, writer));
+    }
+
+    private <T> T loadLocked(String key, Supplier<ValueWrapper> cached, Supplier<T> loader, Consumer<T> writer) {
+        String lockKey = LOCK_PREFIX + key;
+        String token = UUID.randomUUID().toString();
+        boolean acquired;
+        try {
+            acquired = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, token,
+                    lock.getLeaseTime()));
+        } catch (RuntimeException e) {
+            log.warn("Could not acquire load lock of {}, loading without it", key, e);
+            return loadAndWrite(loader, writer);
+        }
+
+        if (!acquired) {
+            ValueWrapper wrapper = awaitValue(cached);
+            if (wrapper != null)
+                return castValue(wrapper);
+
+            // The lock holder is slow or gone, rather load again than fail the caller
+            log.debug("Gave up waiting for the load of {} on another node", key);
+            return loadAndWrite(loader, writer);
+        }
+
+        try {
+            // Another node may have cached it between our miss and taking the lock
+            ValueWrapper wrapper = cached.get();
+            return wrapper != null ? castValue(wrapper) : loadAndWrite(loader, writer);
+        } finally {
+            release(lockKey, token);
+        }
+    }
+
+    private ValueWrapper awaitValue(Supplier<ValueWrapper> cached) {
+        long deadline = System.nanoTime() + lock.getWaitTime().toNanos();
+        Duration retryInterval = lock.getRetryInterval();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(retryInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            ValueWrapper wrapper = cached.get();
+            if (wrapper != null)
+                return wrapper;
+        }
+        return null;
+    }
+
+    private void release(String lockKey, String token) {
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey), token);
+        } catch (RuntimeException e) {
+            // The lease expires the lock anyway
+            log.warn("Could not release load lock {}", lockKey, e);
+        }
+    }
+
+    private static <T> T loadAndWrite(Supplier<T> loader, Consumer<T> writer) {
+        T value = loader.get();
+        writer.accept(value);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T castValue(ValueWrapper wrapper) {
+        return (T) wrapper.get();
+    }
+}
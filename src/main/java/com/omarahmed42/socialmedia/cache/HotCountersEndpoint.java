@@ -0,0 +1,38 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.omarahmed42.socialmedia.metrics.HotCounter;
+import com.omarahmed42.socialmedia.service.impl.CommentReactionsStatisticsService;
+import com.omarahmed42.socialmedia.service.impl.PostReactionsStatisticsService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * {@code GET /actuator/hotcounters?limit=...} lists the posts and comments
+ * whose reactions this node saw incremented the most, with their increments
+ * per second and the number of keys their counters are sharded over.
+ */
+@Component
+@Endpoint(id = "hotcounters")
+@RequiredArgsConstructor
+public class HotCountersEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final PostReactionsStatisticsService postReactionsStatisticsService;
+    private final CommentReactionsStatisticsService commentReactionsStatisticsService;
+
+    @ReadOperation
+    public Map<String, List<HotCounter>> hotCounters(@Nullable Integer limit) {
+        int max = limit == null || limit < 1 ? DEFAULT_LIMIT : limit;
+        return Map.of("posts", postReactionsStatisticsService.getHotCounters(max),
+                "comments", commentReactionsStatisticsService.getHotCounters(max));
+    }
+}
@@ -0,0 +1,112 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.data.redis.cache.CacheKeyPrefix;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import com.omarahmed42.socialmedia.metrics.CacheMetrics;
+
+/**
+ * Records hits, misses, writes, serialized value sizes and the keys looked up
+ * of every Redis cache, whether or not an in-process level sits in front of it.
+ */
+public class MeteredRedisCacheWriter implements RedisCacheWriter {
+
+    private final RedisCacheWriter delegate;
+    private final CacheMetrics cacheMetrics;
+
+    public MeteredRedisCacheWriter(RedisCacheWriter delegate, CacheMetrics cacheMetrics) {
+        this.delegate = delegate;
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return recordLookup(name, key, delegate.get(name, key));
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key, Duration ttl) {
+        return recordLookup(name, key, delegate.get(name, key, ttl));
+    }
+
+    @Override
+    public boolean supportsAsyncRetrieve() {
+        return delegate.supportsAsyncRetrieve();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> retrieve(String name, byte[] key, Duration ttl) {
+        return delegate.retrieve(name, key, ttl).thenApply(value -> recordLookup(name, key, value));
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        delegate.put(name, key, value, ttl);
+        recordPut(name, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String name, byte[] key, byte[] value, Duration ttl) {
+        return delegate.store(name, key, value, ttl).thenRun(() -> recordPut(name, value));
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        byte[] existing = delegate.putIfAbsent(name, key, value, ttl);
+        if (existing == null)
+            recordPut(name, value);
+        return existing;
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        delegate.remove(name, key);
+        cacheMetrics.recordWrite(name, "evict");
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        delegate.clean(name, pattern);
+        cacheMetrics.recordWrite(name, "clear");
+    }
+
+    @Override
+    public void clearStatistics(String name) {
+        delegate.clearStatistics(name);
+    }
+
+    @Override
+    public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+        return new MeteredRedisCacheWriter(delegate.withStatisticsCollector(cacheStatisticsCollector),
+                cacheMetrics);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return delegate.getCacheStatistics(cacheName);
+    }
+
+    private byte[] recordLookup(String name, byte[] key, byte[] value) {
+        cacheMetrics.recordLookup(name, CacheMetrics.REDIS, value != null);
+        cacheMetrics.recordKeyAccess(name, cacheKey(key));
+        return value;
+    }
+
+    // Tracked without the cache name prefix, like the keys of the in-process caches
+    private static String cacheKey(byte[] key) {
+        String redisKey = new String(key, StandardCharsets.UTF_8);
+        int separator = redisKey.indexOf(CacheKeyPrefix.SEPARATOR);
+        return separator < 0 ? redisKey : redisKey.substring(separator + CacheKeyPrefix.SEPARATOR.length());
+    }
+
+    private void recordPut(String name, byte[] value) {
+        cacheMetrics.recordWrite(name, "put");
+        cacheMetrics.recordValueSize(name, value.length);
+    }
+}
@@ -0,0 +1,325 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.omarahmed42.socialmedia.cache.proto.CommentValue;
+import com.omarahmed42.socialmedia.cache.proto.ConversationValue;
+import com.omarahmed42.socialmedia.cache.proto.NewsfeedValue;
+import com.omarahmed42.socialmedia.cache.proto.PostValue;
+import com.omarahmed42.socialmedia.cache.proto.ReactionValue;
+import com.omarahmed42.socialmedia.enums.CommentStatus;
+import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.model.cache.CommentReactionSnapshot;
+import com.omarahmed42.socialmedia.model.cache.CommentSnapshot;
+import com.omarahmed42.socialmedia.model.cache.ConversationSnapshot;
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.model.cache.PostReactionSnapshot;
+import com.omarahmed42.socialmedia.model.cache.PostSnapshot;
+
+/**
+ * Writes cache snapshots and newsfeed entries as protobuf messages prefixed
+ * with a one byte type tag. Anything else is written by the JSON delegate.
+ * Values larger than the compression threshold are deflated, which is marked
+ * by the high bit of the tag.
+ * <p>
+ * Tags are below any byte Jackson starts a document with, so entries written
+ * by the JSON serializer before the switch are still read.
+ */
+public class ProtobufCacheValueSerializer implements RedisSerializer<Object> {
+
+    private static final byte POST = 0x01;
+    private static final byte COMMENT = 0x02;
+    private static final byte CONVERSATION = 0x03;
+    private static final byte POST_REACTION = 0x04;
+    private static final byte COMMENT_REACTION = 0x05;
+    private static final byte NEWSFEED = 0x06;
+    private static final byte JSON = 0x10;
+    private static final int DEFLATED = 0x80;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final RedisSerializer<Object> delegate;
+    private final int compressionThreshold;
+
+    /**
+     * @param compressionThreshold size in bytes from which values are deflated, zero or less disables compression
+     */
+    public ProtobufCacheValueSerializer(RedisSerializer<Object> delegate, int compressionThreshold) {
+        this.delegate = delegate;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null)
+            return EMPTY;
+
+        byte tag;
+        byte[] payload;
+        switch (value) {
+            case PostSnapshot post -> {
+                tag = POST;
+                payload = toPostValue(post).toByteArray();
+            }
+            case CommentSnapshot comment -> {
+                tag = COMMENT;
+                payload = toCommentValue(comment).toByteArray();
+            }
+            case ConversationSnapshot conversation -> {
+                tag = CONVERSATION;
+                payload = toConversationValue(conversation).toByteArray();
+            }
+            case PostReactionSnapshot postReaction -> {
+                tag = POST_REACTION;
+                payload = toReactionValue(postReaction.userId(), postReaction.postId(), postReaction.reactionId(),
+                        postReaction.reactionName(), postReaction.createdAt(), postReaction.lastModifiedAt())
+                        .toByteArray();
+            }
+            case CommentReactionSnapshot commentReaction -> {
+                tag = COMMENT_REACTION;
+                payload = toReactionValue(commentReaction.userId(), commentReaction.commentId(),
+                        commentReaction.reactionId(), commentReaction.reactionName(), commentReaction.createdAt(),
+                        commentReaction.lastModifiedAt()).toByteArray();
+            }
+            case Newsfeed newsfeed -> {
+                tag = NEWSFEED;
+                payload = toNewsfeedValue(newsfeed).toByteArray();
+            }
+            default -> {
+                byte[] json = delegate.serialize(value);
+                if (!shouldCompress(json))
+                    return json;
+                tag = JSON;
+                payload = json;
+            }
+        }
+
+        if (shouldCompress(payload))
+            return withTag((byte) (tag | DEFLATED), deflate(payload));
+        return withTag(tag, payload);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0)
+            return null;
+
+        int tag = bytes[0] & 0xFF;
+        if ((tag & ~DEFLATED) == 0 || (tag & ~DEFLATED) > JSON)
+            return delegate.deserialize(bytes);
+
+        byte[] payload = Arrays.copyOfRange(bytes, 1, bytes.length);
+        if ((tag & DEFLATED) != 0)
+            payload = inflate(payload);
+
+        try {
+            return switch ((byte) (tag & ~DEFLATED)) {
+                case POST -> fromPostValue(PostValue.parseFrom(payload));
+                case COMMENT -> fromCommentValue(CommentValue.parseFrom(payload));
+                case CONVERSATION -> fromConversationValue(ConversationValue.parseFrom(payload));
+                case POST_REACTION -> fromPostReactionValue(ReactionValue.parseFrom(payload));
+                case COMMENT_REACTION -> fromCommentReactionValue(ReactionValue.parseFrom(payload));
+                case NEWSFEED -> fromNewsfeedValue(NewsfeedValue.parseFrom(payload));
+                case JSON -> delegate.deserialize(payload);
+                default -> throw new SerializationException("Unknown cache value tag " + tag);
+            };
+        } catch (InvalidProtocolBufferException e) {
+            throw new SerializationException("Could not read cache value", e);
+        }
+    }
+
+    private boolean shouldCompress(byte[] payload) {
+        return compressionThreshold > 0 && payload.length >= compressionThreshold;
+    }
+
+    private static byte[] withTag(byte tag, byte[] payload) {
+        byte[] bytes = new byte[payload.length + 1];
+        bytes[0] = tag;
+        System.arraycopy(payload, 0, bytes, 1, payload.length);
+        return bytes;
+    }
+
+    private static byte[] deflate(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished())
+                out.write(buffer, 0, deflater.deflate(buffer));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] payload) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new SerializationException("Truncated compressed cache value");
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SerializationException("Could not inflate cache value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static MessageLite toPostValue(PostSnapshot post) {
+        PostValue.Builder builder = PostValue.newBuilder().setId(post.id());
+        setIfPresent(post.content(), builder::setContent);
+        if (post.postStatus() != null)
+            builder.setPostStatus(post.postStatus().getValue());
+        setIfPresent(post.userId(), builder::setUserId);
+        setIfPresent(post.parentId(), builder::setParentId);
+        setIfPresent(toMicros(post.createdAt()), builder::setCreatedAt);
+        setIfPresent(toMicros(post.lastModifiedAt()), builder::setLastModifiedAt);
+        return builder.build();
+    }
+
+    private static PostSnapshot fromPostValue(PostValue value) {
+        return new PostSnapshot(value.getId(),
+                value.hasContent() ? value.getContent() : null,
+                postStatusOf(value.getPostStatus()),
+                value.hasUserId() ? value.getUserId() : null,
+                value.hasParentId() ? value.getParentId() : null,
+                value.hasCreatedAt() ? fromMicros(value.getCreatedAt()) : null,
+                value.hasLastModifiedAt() ? fromMicros(value.getLastModifiedAt()) : null);
+    }
+
+    private static MessageLite toCommentValue(CommentSnapshot comment) {
+        CommentValue.Builder builder = CommentValue.newBuilder().setId(comment.id());
+        setIfPresent(comment.content(), builder::setContent);
+        if (comment.commentStatus() != null)
+            builder.setCommentStatus(comment.commentStatus().getValue());
+        setIfPresent(comment.postId(), builder::setPostId);
+        setIfPresent(comment.userId(), builder::setUserId);
+        setIfPresent(toMicros(comment.createdAt()), builder::setCreatedAt);
+        setIfPresent(toMicros(comment.lastModifiedAt()), builder::setLastModifiedAt);
+        return builder.build();
+    }
+
+    private static CommentSnapshot fromCommentValue(CommentValue value) {
+        return new CommentSnapshot(value.getId(),
+                value.hasContent() ? value.getContent() : null,
+                commentStatusOf(value.getCommentStatus()),
+                value.hasPostId() ? value.getPostId() : null,
+                value.hasUserId() ? value.getUserId() : null,
+                value.hasCreatedAt() ? fromMicros(value.getCreatedAt()) : null,
+                value.hasLastModifiedAt() ? fromMicros(value.getLastModifiedAt()) : null);
+    }
+
+    private static MessageLite toConversationValue(ConversationSnapshot conversation) {
+        ConversationValue.Builder builder = ConversationValue.newBuilder().setId(conversation.id());
+        setIfPresent(conversation.name(), builder::setName);
+        setIfPresent(conversation.isGroup(), builder::setIsGroup);
+        setIfPresent(toMicros(conversation.createdAt()), builder::setCreatedAt);
+        setIfPresent(toMicros(conversation.lastModifiedAt()), builder::setLastModifiedAt);
+        return builder.build();
+    }
+
+    private static ConversationSnapshot fromConversationValue(ConversationValue value) {
+        return new ConversationSnapshot(value.getId(),
+                value.hasName() ? value.getName() : null,
+                value.hasIsGroup() ? value.getIsGroup() : null,
+                value.hasCreatedAt() ? fromMicros(value.getCreatedAt()) : null,
+                value.hasLastModifiedAt() ? fromMicros(value.getLastModifiedAt()) : null);
+    }
+
+    private static MessageLite toReactionValue(Long userId, Long targetId, Integer reactionId, String reactionName,
+            LocalDateTime createdAt, LocalDateTime lastModifiedAt) {
+        ReactionValue.Builder builder = ReactionValue.newBuilder();
+        setIfPresent(userId, builder::setUserId);
+        setIfPresent(targetId, builder::setTargetId);
+        setIfPresent(reactionId, builder::setReactionId);
+        setIfPresent(reactionName, builder::setReactionName);
+        setIfPresent(toMicros(createdAt), builder::setCreatedAt);
+        setIfPresent(toMicros(lastModifiedAt), builder::setLastModifiedAt);
+        return builder.build();
+    }
+
+    private static PostReactionSnapshot fromPostReactionValue(ReactionValue value) {
+        return new PostReactionSnapshot(
+                value.hasUserId() ? value.getUserId() : null,
+                value.hasTargetId() ? value.getTargetId() : null,
+                value.hasReactionId() ? value.getReactionId() : null,
+                value.hasReactionName() ? value.getReactionName() : null,
+                value.hasCreatedAt() ? fromMicros(value.getCreatedAt()) : null,
+                value.hasLastModifiedAt() ? fromMicros(value.getLastModifiedAt()) : null);
+    }
+
+    private static CommentReactionSnapshot fromCommentReactionValue(ReactionValue value) {
+        return new CommentReactionSnapshot(
+                value.hasUserId() ? value.getUserId() : null,
+                value.hasTargetId() ? value.getTargetId() : null,
+                value.hasReactionId() ? value.getReactionId() : null,
+                value.hasReactionName() ? value.getReactionName() : null,
+                value.hasCreatedAt() ? fromMicros(value.getCreatedAt()) : null,
+                value.hasLastModifiedAt() ? fromMicros(value.getLastModifiedAt()) : null);
+    }
+
+    private static MessageLite toNewsfeedValue(Newsfeed newsfeed) {
+        NewsfeedValue.Builder builder = NewsfeedValue.newBuilder();
+        setIfPresent(newsfeed.getUserId(), builder::setUserId);
+        setIfPresent(newsfeed.getPostId(), builder::setPostId);
+        return builder.build();
+    }
+
+    private static Newsfeed fromNewsfeedValue(NewsfeedValue value) {
+        return new Newsfeed(value.hasUserId() ? value.getUserId() : null,
+                value.hasPostId() ? value.getPostId() : null);
+    }
+
+    private static <T> void setIfPresent(T value, Consumer<T> setter) {
+        if (value != null)
+            setter.accept(value);
+    }
+
+    private static Long toMicros(LocalDateTime dateTime) {
+        if (dateTime == null)
+            return null;
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static PostStatus postStatusOf(int value) {
+        for (PostStatus status : PostStatus.values()) {
+            if (status.getValue() == value)
+                return status;
+        }
+        return null;
+    }
+
+    private static CommentStatus commentStatusOf(int value) {
+        for (CommentStatus status : CommentStatus.values()) {
+            if (status.getValue() == value)
+                return status;
+        }
+        return null;
+    }
+}
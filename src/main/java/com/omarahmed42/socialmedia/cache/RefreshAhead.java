@@ -0,0 +1,73 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.omarahmed42.socialmedia.util.SingleFlight;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reloads a Redis cache entry in the background once its remaining time to
+ * live drops below a window, so hot entries are replaced before they expire
+ * instead of being reloaded by every reader that misses at once.
+ */
+@Slf4j
+final class RefreshAhead {
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final long windowMillis;
+    private final Executor executor;
+    private final SingleFlight<String, Object> refreshes = new SingleFlight<>();
+
+    RefreshAhead(StringRedisTemplate redisTemplate, String keyPrefix, Duration window, Executor executor) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.windowMillis = window.toMillis();
+        this.executor = executor;
+    }
+
+    void refreshIfExpiring(String key, Callable<?> valueLoader, Consumer<Object> writer) {
+        Long remaining;
+        try {
+            remaining = redisTemplate.getExpire(keyPrefix + key, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            log.debug("Could not read the time to live of {}", keyPrefix + key, e);
+            return;
+        }
+
+        // Negative when the entry is gone or does not expire
+        if (remaining == null || remaining < 0 || remaining > windowMillis)
+            return;
+
+        try {
+            refreshes.execute(key, () -> {
+                Object value = load(valueLoader);
+                writer.accept(value);
+                return value;
+            }, executor).exceptionally(e -> {
+                log.warn("Could not refresh {} ahead of its expiration", keyPrefix + key, e);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Skipping refresh of {}, too many refreshes pending", keyPrefix + key);
+        }
+    }
+
+    private static Object load(Callable<?> valueLoader) {
+        try {
+            return valueLoader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+/**
+ * Serves the lookups of the given caches from replicas and sends everything
+ * else to the primary.
+ * <p>
+ * Replicas lag behind the primary, so a lookup right after a write or an
+ * eviction may still return the previous value. Only meant for read-heavy
+ * caches that tolerate that, and lookups with time to idle are always sent to
+ * the primary since they also touch the expiration.
+ */
+public class ReplicaReadRedisCacheWriter implements RedisCacheWriter {
+
+    private final RedisCacheWriter primary;
+    private final RedisCacheWriter replica;
+    private final Set<String> cacheNames;
+
+    public ReplicaReadRedisCacheWriter(RedisCacheWriter primary, RedisCacheWriter replica, Set<String> cacheNames) {
+        this.primary = primary;
+        this.replica = replica;
+        this.cacheNames = Set.copyOf(cacheNames);
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return reader(name).get(name, key);
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key, Duration ttl) {
+        return ttl == null ? get(name, key) : primary.get(name, key, ttl);
+    }
+
+    @Override
+    public boolean supportsAsyncRetrieve() {
+        return primary.supportsAsyncRetrieve() && replica.supportsAsyncRetrieve();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> retrieve(String name, byte[] key, Duration ttl) {
+        return ttl == null ? reader(name).retrieve(name, key, null) : primary.retrieve(name, key, ttl);
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        primary.put(name, key, value, ttl);
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String name, byte[] key, byte[] value, Duration ttl) {
+        return primary.store(name, key, value, ttl);
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        return primary.putIfAbsent(name, key, value, ttl);
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        primary.remove(name, key);
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        primary.clean(name, pattern);
+    }
+
+    @Override
+    public void clearStatistics(String name) {
+        primary.clearStatistics(name);
+    }
+
+    @Override
+    public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+        return new ReplicaReadRedisCacheWriter(primary.withStatisticsCollector(cacheStatisticsCollector), replica,
+                cacheNames);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return primary.getCacheStatistics(cacheName);
+    }
+
+    private RedisCacheWriter reader(String name) {
+        return cacheNames.contains(name) ? replica : primary;
+    }
+}
@@ -0,0 +1,52 @@
+package com.omarahmed42.socialmedia.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.omarahmed42.socialmedia.model.Comment;
+import com.omarahmed42.socialmedia.model.CommentReaction;
+import com.omarahmed42.socialmedia.model.Conversation;
+import com.omarahmed42.socialmedia.model.Post;
+import com.omarahmed42.socialmedia.model.PostReaction;
+import com.omarahmed42.socialmedia.model.cache.CacheSnapshot;
+import com.omarahmed42.socialmedia.model.cache.CommentReactionSnapshot;
+import com.omarahmed42.socialmedia.model.cache.CommentSnapshot;
+import com.omarahmed42.socialmedia.model.cache.ConversationSnapshot;
+import com.omarahmed42.socialmedia.model.cache.PostReactionSnapshot;
+import com.omarahmed42.socialmedia.model.cache.PostSnapshot;
+
+/**
+ * Maps cached entities to their {@link CacheSnapshot} before they are
+ * serialized and back to detached entities when they are read, so the
+ * entity graph is never walked on the way into the cache.
+ */
+public class SnapshotRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> delegate;
+
+    public SnapshotRedisSerializer(RedisSerializer<Object> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        return delegate.serialize(toSnapshot(value));
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        Object value = delegate.deserialize(bytes);
+        return value instanceof CacheSnapshot<?> snapshot ? snapshot.toEntity() : value;
+    }
+
+    public static Object toSnapshot(Object value) {
+        return switch (value) {
+            case Post post -> PostSnapshot.from(post);
+            case Comment comment -> CommentSnapshot.from(comment);
+            case Conversation conversation -> ConversationSnapshot.from(conversation);
+            case PostReaction postReaction -> PostReactionSnapshot.from(postReaction);
+            case CommentReaction commentReaction -> CommentReactionSnapshot.from(commentReaction);
+            case null, default -> value;
+        };
+    }
+}
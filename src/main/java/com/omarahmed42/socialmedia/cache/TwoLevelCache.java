@@ -0,0 +1,185 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.omarahmed42.socialmedia.metrics.CacheMetrics;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * A bounded in-process cache (L1) in front of a Redis cache (L2).
+ * <p>
+ * Reads are served from L1 when possible and fill it from L2 otherwise. Writes
+ * and evictions go to both levels and are announced so that the other nodes
+ * drop their L1 copy. Synchronized lookups that miss both levels are loaded
+ * once per key, see {@link CoalescingLoader}.
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> localCache;
+    private final Cache redisCache;
+    private final RedisSerializer<Object> serializer;
+    private final Consumer<String> invalidationPublisher;
+    private final CoalescingLoader coalescingLoader;
+    private final RefreshAhead refreshAhead;
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * @param serializer            keeps L1 entries serialized when not
+     *                              {@code null}
+     * @param invalidationPublisher announces a changed key, or {@code null} for
+     *                              the whole cache
+     * @param coalescingLoader      loads entries missing from both levels
+     * @param refreshAhead          reloads entries close to expiring, or
+     *                              {@code null}
+     * @param cacheMetrics          records in-process lookups and loads, Redis
+     *                              is metered by its cache writer
+     */
+    TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<String, Object> localCache,
+            Cache redisCache, boolean allowNullValues, RedisSerializer<Object> serializer,
+            Consumer<String> invalidationPublisher, CoalescingLoader coalescingLoader, RefreshAhead refreshAhead,
+            CacheMetrics cacheMetrics) {
+        super(allowNullValues);
+        this.name = name;
+        this.localCache = localCache;
+        this.redisCache = redisCache;
+        this.serializer = serializer;
+        this.invalidationPublisher = invalidationPublisher;
+        this.coalescingLoader = coalescingLoader;
+        this.refreshAhead = refreshAhead;
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String localKey = localKey(key);
+        Object value = localCache.getIfPresent(localKey);
+        cacheMetrics.recordLookup(name, CacheMetrics.LOCAL, value != null);
+        if (value != null) {
+            // Misses are tracked by the Redis level
+            cacheMetrics.recordKeyAccess(name, localKey);
+            return fromLocal(value);
+        }
+
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper == null)
+            return null;
+
+        value = toStoreValue(wrapper.get());
+        localCache.put(localKey, toLocal(value));
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        Object value = localCache.getIfPresent(localKey);
+        cacheMetrics.recordLookup(name, CacheMetrics.LOCAL, value != null);
+        if (value != null) {
+            cacheMetrics.recordKeyAccess(name, localKey);
+            return (T) fromStoreValue(fromLocal(value));
+        }
+
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper != null) {
+            localCache.put(localKey, toLocal(toStoreValue(wrapper.get())));
+            if (refreshAhead != null)
+                refreshAhead.refreshIfExpiring(localKey, valueLoader, refreshed -> put(key, refreshed));
+            return (T) wrapper.get();
+        }
+
+        T loaded = coalescingLoader.load(name + "::" + localKey, () -> redisCache.get(key),
+                () -> call(key, valueLoader), loadedValue -> redisCache.put(key, loadedValue));
+        localCache.put(localKey, toLocal(toStoreValue(loaded)));
+        return loaded;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        String localKey = localKey(key);
+        localCache.put(localKey, toLocal(toStoreValue(value)));
+        invalidationPublisher.accept(localKey);
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        String localKey = localKey(key);
+        localCache.invalidate(localKey);
+        invalidationPublisher.accept(localKey);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.invalidateAll();
+        invalidationPublisher.accept(null);
+    }
+
+    /**
+     * Drops the in-process entries of this cache on every node, leaving Redis as is.
+     */
+    public void clearLocal() {
+        localCache.invalidateAll();
+        invalidationPublisher.accept(null);
+    }
+
+    public long estimatedLocalSize() {
+        return localCache.estimatedSize();
+    }
+
+    void invalidateLocal(String localKey) {
+        if (localKey == null)
+            localCache.invalidateAll();
+        else
+            localCache.invalidate(localKey);
+    }
+
+    private <T> T call(Object key, Callable<T> valueLoader) {
+        Timer.Sample sample = cacheMetrics.startLoad();
+        boolean success = false;
+        try {
+            T value = valueLoader.call();
+            success = true;
+            return value;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            cacheMetrics.stopLoad(sample, name, success);
+        }
+    }
+
+    // Cached nulls stay as they are, so their shorter expiry can tell them apart
+    private Object toLocal(Object storeValue) {
+        return serializer == null || storeValue == NullValue.INSTANCE ? storeValue
+                : serializer.serialize(storeValue);
+    }
+
+    private Object fromLocal(Object localValue) {
+        return serializer != null && localValue instanceof byte[] bytes ? serializer.deserialize(bytes) : localValue;
+    }
+
+    // Keys travel between nodes as strings, so entries are looked up by the same string form Redis uses
+    static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
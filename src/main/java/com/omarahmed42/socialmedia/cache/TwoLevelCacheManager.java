@@ -0,0 +1,165 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.metrics.CacheMetrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates a {@link TwoLevelCache} for every cache of the wrapped
+ * {@link RedisCacheManager}, and keeps the in-process level of this node in
+ * sync with the writes of the other nodes over Redis pub/sub.
+ * <p>
+ * Pub/sub delivery is at most once, so in-process entries also expire after
+ * {@code caching.local.time-to-live}.
+ */
+@Slf4j
+public class TwoLevelCacheManager extends AbstractTransactionSupportingCacheManager
+        implements MessageListener, DisposableBean {
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, TwoLevelCache> twoLevelCaches = new ConcurrentHashMap<>();
+
+    private final RedisCacheManager redisCacheManager;
+    private final RedisCacheConfiguration redisCacheConfiguration;
+    private final RedisSerializer<Object> cacheValueSerializer;
+    private final CachingProperties cachingProperties;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final CacheMetrics cacheMetrics;
+    private final ThreadPoolExecutor refreshExecutor;
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager, RedisCacheConfiguration redisCacheConfiguration,
+            RedisSerializer<Object> cacheValueSerializer, CachingProperties cachingProperties,
+            StringRedisTemplate redisTemplate, ObjectMapper objectMapper, CacheMetrics cacheMetrics) {
+        this.redisCacheManager = redisCacheManager;
+        this.redisCacheConfiguration = redisCacheConfiguration;
+        this.cacheValueSerializer = cacheValueSerializer;
+        this.cachingProperties = cachingProperties;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.cacheMetrics = cacheMetrics;
+        this.refreshExecutor = new ThreadPoolExecutor(
+                cachingProperties.getLocal().getRefreshThreads(), cachingProperties.getLocal().getRefreshThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cachingProperties.getLocal().getRefreshQueueCapacity()),
+                new CustomizableThreadFactory("cache-refresh-"));
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        return List.of();
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        Cache redisCache = redisCacheManager.getCache(name);
+        if (redisCache == null)
+            return null;
+
+        return twoLevelCaches.computeIfAbsent(name, cacheName -> new TwoLevelCache(cacheName,
+                Caffeine.newBuilder()
+                        .maximumSize(cachingProperties.localMaxSize(cacheName))
+                        .expireAfter(localExpiry(cachingProperties.getLocal().getTimeToLive(),
+                                cachingProperties.nullValueTimeToLive(cacheName)))
+                        .build(),
+                redisCache,
+                redisCacheConfiguration.getAllowCacheNullValues(),
+                cachingProperties.storeByValue(cacheName) ? cacheValueSerializer : null,
+                key -> publishInvalidation(cacheName, key),
+                cachingProperties.distributedLock(cacheName)
+                        ? new CoalescingLoader(redisTemplate, cachingProperties.getLock())
+                        : new CoalescingLoader(),
+                refreshAhead(cacheName),
+                cacheMetrics));
+    }
+
+    private static Expiry<String, Object> localExpiry(Duration timeToLive, Duration nullValueTimeToLive) {
+        long valueNanos = timeToLive.toNanos();
+        long nullValueNanos = Math.min(valueNanos, nullValueTimeToLive.toNanos());
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String key, Object value, long currentTime) {
+                return value == NullValue.INSTANCE ? nullValueNanos : valueNanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, Object value, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, value, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String key, Object value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    private RefreshAhead refreshAhead(String cacheName) {
+        Duration window = cachingProperties.refreshAhead(cacheName);
+        if (window == null || window.isZero() || window.isNegative())
+            return null;
+
+        return new RefreshAhead(redisTemplate, redisCacheConfiguration.getKeyPrefixFor(cacheName), window,
+                refreshExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private void publishInvalidation(String cacheName, String key) {
+        try {
+            redisTemplate.convertAndSend(cachingProperties.getInvalidationChannel(),
+                    objectMapper.writeValueAsString(new CacheInvalidation(nodeId, cacheName, key)));
+        } catch (IOException | RuntimeException e) {
+            // Other nodes fall back on the in-process time to live
+            log.warn("Could not publish invalidation of {} in cache {}", key, cacheName, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        CacheInvalidation invalidation;
+        try {
+            invalidation = objectMapper.readValue(message.getBody(), CacheInvalidation.class);
+        } catch (IOException e) {
+            log.warn("Skipping malformed cache invalidation", e);
+            return;
+        }
+
+        if (nodeId.equals(invalidation.nodeId()))
+            return;
+
+        TwoLevelCache cache = twoLevelCaches.get(invalidation.cacheName());
+        if (cache != null)
+            cache.invalidateLocal(invalidation.key());
+    }
+}
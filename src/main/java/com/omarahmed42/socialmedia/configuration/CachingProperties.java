@@ -0,0 +1,296 @@
+package com.omarahmed42.socialmedia.configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@ConfigurationProperties(prefix = "caching")
+@Getter
+@Setter
+public class CachingProperties {
+
+    /**
+     * Time to live of Redis entries of caches without their own.
+     */
+    private Duration timeToLive = Duration.ofSeconds(100);
+
+    /**
+     * Time to live of cached lookups that found nothing, in Redis and in process.
+     */
+    private Duration nullValueTimeToLive = Duration.ofSeconds(30);
+
+    /**
+     * Redis lock coalescing the loads of a key across nodes, for caches that enable it.
+     */
+    private Lock lock = new Lock();
+
+    /**
+     * In-process cache kept in front of Redis.
+     */
+    private Local local = new Local();
+
+    /**
+     * Redis pub/sub channel used to invalidate the in-process caches of the other nodes.
+     */
+    private String invalidationChannel = "cache-invalidation";
+
+    /**
+     * Encoding of cache values in Redis and in the in-process caches.
+     */
+    private Serialization serialization = new Serialization();
+
+    /**
+     * Preloading of hot content after startup or on demand.
+     */
+    private Warmup warmup = new Warmup();
+
+    /**
+     * Limits of the Redis scans behind the {@code cachekeys} actuator endpoint.
+     */
+    private Introspection introspection = new Introspection();
+
+    /**
+     * Settings of individual caches, by cache name.
+     */
+    private Map<String, Spec> caches = new HashMap<>();
+
+    public long localMaxSize(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.getLocalMaxSize() != null ? spec.getLocalMaxSize() : local.getMaxSize();
+    }
+
+    public Duration timeToLive(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.getTimeToLive() != null ? spec.getTimeToLive() : timeToLive;
+    }
+
+    public Duration nullValueTimeToLive(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.getNullValueTimeToLive() != null ? spec.getNullValueTimeToLive()
+                : nullValueTimeToLive;
+    }
+
+    public boolean distributedLock(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.isDistributedLock();
+    }
+
+    public boolean storeByValue(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.getStoreByValue() != null ? spec.getStoreByValue() : local.isStoreByValue();
+    }
+
+    public boolean slidingExpiration(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.isSlidingExpiration();
+    }
+
+    public Duration refreshAhead(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec == null ? null : spec.getRefreshAhead();
+    }
+
+    public Set<String> replicaReadCaches() {
+        return caches.entrySet().stream()
+                .filter(entry -> entry.getValue().isReplicaReads())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Getter
+    @Setter
+    public static class Local {
+
+        /**
+         * Whether an in-process cache is kept in front of Redis.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of entries of an in-process cache without its own limit.
+         */
+        private long maxSize = 10_000;
+
+        /**
+         * Upper bound on how long an in-process entry is served, in case an invalidation is missed.
+         */
+        private Duration timeToLive = Duration.ofMinutes(1);
+
+        /**
+         * Number of threads reloading entries ahead of their expiration.
+         */
+        private int refreshThreads = 2;
+
+        /**
+         * Maximum number of pending reloads, further reloads are skipped until the queue drains.
+         */
+        private int refreshQueueCapacity = 1_000;
+
+        /**
+         * Whether in-process entries of caches without their own setting are kept serialized and
+         * deserialized on every read, so callers never share a mutable instance.
+         */
+        private boolean storeByValue = false;
+    }
+
+    @Getter
+    @Setter
+    public static class Lock {
+
+        /**
+         * How long a node may hold the load lock of a key before it is released anyway.
+         */
+        private Duration leaseTime = Duration.ofSeconds(2);
+
+        /**
+         * How long other nodes wait for the lock holder to cache the value before loading it themselves.
+         */
+        private Duration waitTime = Duration.ofMillis(500);
+
+        /**
+         * Interval at which waiting nodes check whether the value was cached.
+         */
+        private Duration retryInterval = Duration.ofMillis(20);
+    }
+
+    @Getter
+    @Setter
+    public static class Serialization {
+
+        /**
+         * Format cache values are written in. Values written in JSON are still read after switching to protobuf.
+         */
+        private SerializationFormat format = SerializationFormat.PROTOBUF;
+
+        /**
+         * Size in bytes from which protobuf encoded values are deflated, zero disables compression.
+         */
+        private int compressionThreshold = 512;
+    }
+
+    @Getter
+    @Setter
+    public static class Warmup {
+
+        /**
+         * Whether caches are warmed once the application is ready.
+         */
+        private boolean onStartup = true;
+
+        /**
+         * Number of threads warming caches.
+         */
+        private int concurrency = 4;
+
+        /**
+         * Maximum number of items warmed per second, across all threads.
+         */
+        private int rateLimit = 200;
+
+        /**
+         * Number of users with the most friends whose recent posts are preloaded.
+         */
+        private int topAuthors = 100;
+
+        /**
+         * Number of recent posts preloaded per top author.
+         */
+        private int postsPerAuthor = 20;
+
+        /**
+         * Posts created within this window get their reaction counters preloaded.
+         */
+        private Duration reactionWindow = Duration.ofHours(6);
+
+        /**
+         * Maximum number of recent posts whose reaction counters are preloaded.
+         */
+        private int maxReactionPosts = 5_000;
+
+        /**
+         * Number of most recently signed in users whose newsfeeds are rebuilt when missing.
+         */
+        private int activeUsers = 1_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Introspection {
+
+        /**
+         * Maximum number of keys of a cache counted per report, larger caches are reported as incomplete.
+         */
+        private int scanLimit = 10_000;
+
+        /**
+         * Number of keys of a cache whose value sizes are sampled per report.
+         */
+        private int sizeSample = 1_000;
+
+        /**
+         * Number of keys fetched per SCAN and deleted per UNLINK.
+         */
+        private int batchSize = 500;
+    }
+
+    public enum SerializationFormat {
+        JSON, PROTOBUF
+    }
+
+    @Getter
+    @Setter
+    public static class Spec {
+
+        /**
+         * Time to live of the Redis entries of this cache.
+         */
+        private Duration timeToLive;
+
+        /**
+         * Maximum number of entries of this cache kept in process.
+         */
+        private Long localMaxSize;
+
+        /**
+         * Whether in-process entries of this cache are kept serialized. Needed when callers modify
+         * the values they read, served by reference otherwise.
+         */
+        private Boolean storeByValue;
+
+        /**
+         * Time to live of cached lookups of this cache that found nothing. Not applied with
+         * sliding expiration, where Redis cannot tell them apart on read.
+         */
+        private Duration nullValueTimeToLive;
+
+        /**
+         * Whether loads of a key are coalesced across nodes with a Redis lock, not only within a node.
+         */
+        private boolean distributedLock;
+
+        /**
+         * Whether reading an entry from Redis restarts its time to live.
+         */
+        private boolean slidingExpiration;
+
+        /**
+         * Entries read from Redis with less time to live left than this are reloaded in the
+         * background. Only applies to synchronized lookups, and should exceed the in-process
+         * time to live, since entries served in process are not checked.
+         */
+        private Duration refreshAhead;
+
+        /**
+         * Whether lookups of this cache are served by Redis replicas, when {@code redis.topology.replica-reads}
+         * is enabled. Replicas lag behind, so lookups may briefly return values that were just overwritten.
+         */
+        private boolean replicaReads;
+    }
+}
@@ -1,8 +1,10 @@
 package com.omarahmed42.socialmedia.configuration;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,12 +12,19 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.util.backoff.FixedBackOff;
 
 import com.omarahmed42.socialmedia.dto.event.FriendRequestEvent;
+import com.omarahmed42.socialmedia.dto.event.NewsfeedEvent;
 import com.omarahmed42.socialmedia.dto.event.PublishedMessage;
+import com.omarahmed42.socialmedia.dto.event.ReactionDeltaEvent;
 import com.omarahmed42.socialmedia.model.Comment;
 import com.omarahmed42.socialmedia.model.FriendRequest;
 import com.omarahmed42.socialmedia.model.Post;
@@ -41,8 +50,8 @@ public class KafkaConsumerConfiguration {
                 props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
                 props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
                 props.put(JsonDeserializer.TYPE_MAPPINGS,
-                                getTypeMappings(PublishedMessage.class, Newsfeed.class, Comment.class, Post.class, FriendRequest.class,
-                                                FriendRequestEvent.class,
+                                getTypeMappings(PublishedMessage.class, Newsfeed.class, NewsfeedEvent.class, Comment.class, Post.class, FriendRequest.class,
+                                                FriendRequestEvent.class, ReactionDeltaEvent.class,
                                                 Long.class, String.class, Map.class, HashMap.class, Object.class));
                 return new DefaultKafkaConsumerFactory<>(props);
         }
@@ -68,4 +77,65 @@ public class KafkaConsumerConfiguration {
                 return factory;
         }
 
+        // One consumer thread per partition at most, so events of one author are still handled in order
+        @Bean
+        public ConcurrentKafkaListenerContainerFactory<String, Object> fanoutKafkaListenerContainerFactory(
+                        @Value("${newsfeed.fanout.concurrency:3}") int concurrency) {
+                ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+                factory.setConsumerFactory(consumerFactory());
+                factory.setConcurrency(concurrency);
+                return factory;
+        }
+
+        @Bean
+        public NewTopic newsfeedTopic(@Value("${newsfeed.fanout.partitions:12}") int partitions,
+                        @Value("${newsfeed.fanout.replicas:1}") short replicas) {
+                return TopicBuilder.name("newsfeed")
+                                .partitions(partitions)
+                                .replicas(replicas)
+                                .build();
+        }
+
+        // Each poll waits up to the window for records, so a batch is one aggregation window
+        // Records that still fail after the retries go to reaction-deltas.DLT, on the partition they came from
+        @Bean
+        public ConcurrentKafkaListenerContainerFactory<String, Object> reactionDeltaKafkaListenerContainerFactory(
+                        @Value("${reactions.aggregation.window:500ms}") Duration window,
+                        @Value("${reactions.aggregation.max-records:5000}") int maxRecords,
+                        @Value("${reactions.aggregation.concurrency:3}") int concurrency,
+                        @Value("${reactions.aggregation.retry-interval:1s}") Duration retryInterval,
+                        @Value("${reactions.aggregation.retry-attempts:5}") long retryAttempts,
+                        KafkaTemplate<String, Object> kafkaTemplate) {
+                Map<String, Object> props = new HashMap<>(consumerFactory().getConfigurationProperties());
+                props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 1024 * 1024);
+                props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, (int) window.toMillis());
+                props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxRecords);
+
+                ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+                factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props));
+                factory.setBatchListener(true);
+                factory.setConcurrency(concurrency);
+                factory.setCommonErrorHandler(new DefaultErrorHandler(new DeadLetterPublishingRecoverer(kafkaTemplate),
+                                new FixedBackOff(retryInterval.toMillis(), retryAttempts)));
+                return factory;
+        }
+
+        @Bean
+        public NewTopic reactionDeltasTopic(@Value("${reactions.aggregation.partitions:12}") int partitions,
+                        @Value("${reactions.aggregation.replicas:1}") short replicas) {
+                return TopicBuilder.name("reaction-deltas")
+                                .partitions(partitions)
+                                .replicas(replicas)
+                                .build();
+        }
+
+        @Bean
+        public NewTopic reactionDeltasDeadLetterTopic(@Value("${reactions.aggregation.partitions:12}") int partitions,
+                        @Value("${reactions.aggregation.replicas:1}") short replicas) {
+                return TopicBuilder.name("reaction-deltas.DLT")
+                                .partitions(partitions)
+                                .replicas(replicas)
+                                .build();
+        }
+
 }
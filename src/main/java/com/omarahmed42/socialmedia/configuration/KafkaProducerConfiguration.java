@@ -15,7 +15,9 @@ import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.support.serializer.DelegatingSerializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
+import com.omarahmed42.socialmedia.dto.event.NewsfeedEvent;
 import com.omarahmed42.socialmedia.dto.event.PublishedMessage;
+import com.omarahmed42.socialmedia.dto.event.ReactionDeltaEvent;
 import com.omarahmed42.socialmedia.model.Comment;
 import com.omarahmed42.socialmedia.model.FriendRequest;
 import com.omarahmed42.socialmedia.model.Post;
@@ -39,7 +41,7 @@ public class KafkaProducerConfiguration {
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
         configProps.put(JsonSerializer.TYPE_MAPPINGS,
-                getTypeMappings(PublishedMessage.class, Newsfeed.class, Comment.class, Post.class, FriendRequest.class, Long.class,
+                getTypeMappings(PublishedMessage.class, Newsfeed.class, NewsfeedEvent.class, ReactionDeltaEvent.class, Comment.class, Post.class, FriendRequest.class, Long.class,
                         String.class, Map.class, HashMap.class, Object.class));
                         
         return new DefaultKafkaProducerFactory<>(configProps);
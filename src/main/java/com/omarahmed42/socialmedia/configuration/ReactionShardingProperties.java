@@ -0,0 +1,45 @@
+package com.omarahmed42.socialmedia.configuration;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@ConfigurationProperties(prefix = "reactions.sharding")
+@Getter
+@Setter
+public class ReactionShardingProperties {
+
+    /**
+     * Whether the reaction counters of hot posts and comments are spread over several Redis keys.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Reactions added or removed per second on one counter, seen by a single node, above which it is sharded.
+     */
+    private int threshold = 500;
+
+    /**
+     * Number of keys a sharded counter is spread over.
+     */
+    private int shards = 8;
+
+    /**
+     * Interval at which increment rates are measured and counters sharded or collapsed.
+     */
+    private Duration checkInterval = Duration.ofSeconds(1);
+
+    /**
+     * How long a sharded counter has to stay below half the threshold before it is collapsed.
+     */
+    private Duration cooldown = Duration.ofSeconds(30);
+
+    /**
+     * How long nodes keep using the shards they know of before checking the counter again. Shards
+     * are only folded back once every node stopped writing to them.
+     */
+    private Duration stateRefresh = Duration.ofSeconds(1);
+}
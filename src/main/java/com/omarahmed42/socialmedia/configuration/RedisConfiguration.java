@@ -1,18 +1,41 @@
 package com.omarahmed42.socialmedia.configuration;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager.RedisCacheManagerBuilder;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.cache.RedisCacheWriter.TtlFunction;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisNode;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
@@ -23,9 +46,31 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.hibernate6.Hibernate6Module;
 import com.fasterxml.jackson.datatype.hibernate6.Hibernate6Module.Feature;
+import com.omarahmed42.socialmedia.cache.MeteredRedisCacheWriter;
+import com.omarahmed42.socialmedia.cache.ProtobufCacheValueSerializer;
+import com.omarahmed42.socialmedia.cache.ReplicaReadRedisCacheWriter;
+import com.omarahmed42.socialmedia.cache.SnapshotRedisSerializer;
+import com.omarahmed42.socialmedia.cache.TwoLevelCacheManager;
+import com.omarahmed42.socialmedia.configuration.CachingProperties.Serialization;
+import com.omarahmed42.socialmedia.configuration.CachingProperties.SerializationFormat;
+import com.omarahmed42.socialmedia.configuration.RedisTopologyProperties.Mode;
+import com.omarahmed42.socialmedia.metrics.CacheMetrics;
+
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Redis is reached with Jedis on a single node, and with Lettuce in cluster
+ * mode and for replica reads: Spring Data cannot pipeline over Jedis cluster
+ * connections nor read from replicas with Jedis.
+ */
 @Configuration
 @EnableCaching
+@EnableConfigurationProperties({ CachingProperties.class, RedisTopologyProperties.class,
+        ReactionShardingProperties.class })
+@Slf4j
 public class RedisConfiguration {
 
     @Value("${spring.data.redis.host}")
@@ -35,46 +80,185 @@ public class RedisConfiguration {
     private Integer redisPort;
 
     @Bean
-    JedisConnectionFactory jedisConnectionFactory() {
-        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(redisHost, redisPort);
-        return new JedisConnectionFactory(configuration);
+    @Primary
+    RedisConnectionFactory redisConnectionFactory(RedisTopologyProperties topology) {
+        log.info("Connecting to Redis in {} mode", topology.getMode());
+        if (topology.getMode() == Mode.CLUSTER)
+            return new LettuceConnectionFactory(clusterConfiguration(topology),
+                    lettuceClientConfiguration(topology, ReadFrom.UPSTREAM));
+
+        return new JedisConnectionFactory(new RedisStandaloneConfiguration(redisHost, redisPort));
     }
 
+    // Only used for lookups of the caches that opt in, writes always go to the primary
     @Bean
-    public RedisTemplate<String, Long> redisTemplate(ObjectMapper objectMapper) {
+    @ConditionalOnProperty(name = "redis.topology.replica-reads", havingValue = "true")
+    LettuceConnectionFactory replicaReadConnectionFactory(RedisTopologyProperties topology) {
+        LettuceClientConfiguration clientConfiguration = lettuceClientConfiguration(topology,
+                ReadFrom.REPLICA_PREFERRED);
+        return switch (topology.getMode()) {
+            case CLUSTER -> new LettuceConnectionFactory(clusterConfiguration(topology), clientConfiguration);
+            case REPLICATED -> {
+                RedisStaticMasterReplicaConfiguration configuration = new RedisStaticMasterReplicaConfiguration(
+                        redisHost, redisPort);
+                nodes(topology.getReplicas()).forEach(
+                        replica -> configuration.node(replica.getHost(), replica.getPort()));
+                yield new LettuceConnectionFactory(configuration, clientConfiguration);
+            }
+            case STANDALONE -> throw new IllegalStateException(
+                    "Replica reads need redis.topology.mode set to replicated or cluster");
+        };
+    }
+
+    private static RedisClusterConfiguration clusterConfiguration(RedisTopologyProperties topology) {
+        if (topology.getNodes().isEmpty())
+            throw new IllegalStateException("Cluster mode needs at least one node in redis.topology.nodes");
+
+        RedisClusterConfiguration configuration = new RedisClusterConfiguration();
+        configuration.setClusterNodes(nodes(topology.getNodes()));
+        configuration.setMaxRedirects(topology.getMaxRedirects());
+        return configuration;
+    }
+
+    private static LettuceClientConfiguration lettuceClientConfiguration(RedisTopologyProperties topology,
+            ReadFrom readFrom) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder()
+                .readFrom(readFrom);
+        // Picks up failovers and resharding without waiting for a MOVED redirect on every key
+        if (topology.getMode() == Mode.CLUSTER)
+            builder.clientOptions(ClusterClientOptions.builder()
+                    .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                            .enableAllAdaptiveRefreshTriggers()
+                            .build())
+                    .build());
+        return builder.build();
+    }
+
+    private static List<RedisNode> nodes(List<String> hostsAndPorts) {
+        return hostsAndPorts.stream().map(RedisNode::fromString).toList();
+    }
+
+    @Bean
+    public RedisTemplate<String, Long> redisTemplate(ObjectMapper objectMapper,
+            RedisConnectionFactory redisConnectionFactory, RedisTopologyProperties topology) {
         ObjectMapper mapper = objectMapper
                 .copy()
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         RedisTemplate<String, Long> template = new RedisTemplate<>();
         template.setKeySerializer(new StringRedisSerializer());
         template.setValueSerializer(new Jackson2JsonRedisSerializer<>(mapper, Long.class));
-        template.setEnableTransactionSupport(true);
-        template.setConnectionFactory(jedisConnectionFactory());
+        // MULTI cannot span the nodes of a cluster
+        template.setEnableTransactionSupport(topology.getMode() != Mode.CLUSTER);
+        template.setConnectionFactory(redisConnectionFactory);
         return template;
     }
 
+    @Bean
+    public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
+        return new StringRedisTemplate(redisConnectionFactory);
+    }
+
     @Bean
     ObjectMapper jacksonObjectMapper() {
         return new Jackson2ObjectMapperBuilder().build();
     }
 
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory jedisConnectionFactory, ObjectMapper objectMapper) {
+    public RedisSerializer<Object> cacheValueSerializer(ObjectMapper objectMapper, CachingProperties cachingProperties) {
         ObjectMapper mapper = objectMapper
                 .copy()
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
                 .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
-                .registerModule(new Hibernate6Module().enable(Feature.REPLACE_PERSISTENT_COLLECTIONS)
-                        .enable(Feature.FORCE_LAZY_LOADING))
+                .registerModule(new Hibernate6Module().enable(Feature.REPLACE_PERSISTENT_COLLECTIONS))
                 .activateDefaultTyping(
                         jacksonObjectMapper().getPolymorphicTypeValidator(),
                         ObjectMapper.DefaultTyping.EVERYTHING,
                         JsonTypeInfo.As.PROPERTY);
-        return RedisCacheManager.builder(jedisConnectionFactory)
-                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig()
-                        .serializeKeysWith(SerializationPair.fromSerializer(new StringRedisSerializer()))
-                        .serializeValuesWith(
-                                SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer(mapper))))
-                .transactionAware().build();
+        RedisSerializer<Object> jsonSerializer = new GenericJackson2JsonRedisSerializer(mapper);
+
+        Serialization serialization = cachingProperties.getSerialization();
+        if (serialization.getFormat() == SerializationFormat.PROTOBUF)
+            return new SnapshotRedisSerializer(
+                    new ProtobufCacheValueSerializer(jsonSerializer, serialization.getCompressionThreshold()));
+        return new SnapshotRedisSerializer(jsonSerializer);
+    }
+
+    @Bean
+    public RedisCacheConfiguration redisCacheConfiguration(RedisSerializer<Object> cacheValueSerializer,
+            CachingProperties cachingProperties) {
+        return RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(ttlFunction(cachingProperties.getTimeToLive(), cachingProperties.getNullValueTimeToLive()))
+                .serializeKeysWith(SerializationPair.fromSerializer(new StringRedisSerializer()))
+                .serializeValuesWith(SerializationPair.fromSerializer(cacheValueSerializer));
+    }
+
+    // Same serialization as the cache manager, for bulk reads/writes of cache entries
+    @Bean
+    public RedisTemplate<String, Object> cacheRedisTemplate(RedisSerializer<Object> cacheValueSerializer,
+            RedisConnectionFactory redisConnectionFactory) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(cacheValueSerializer);
+        template.setConnectionFactory(redisConnectionFactory);
+        return template;
+    }
+
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+            @Qualifier("replicaReadConnectionFactory") ObjectProvider<LettuceConnectionFactory> replicaReadConnectionFactory,
+            RedisCacheConfiguration redisCacheConfiguration, RedisSerializer<Object> cacheValueSerializer,
+            CachingProperties cachingProperties, ObjectMapper objectMapper, CacheMetrics cacheMetrics,
+            StringRedisTemplate stringRedisTemplate) {
+        RedisCacheWriter primaryWriter = RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory);
+        LettuceConnectionFactory replicaFactory = replicaReadConnectionFactory.getIfAvailable();
+        Set<String> replicaReadCaches = cachingProperties.replicaReadCaches();
+        if (replicaFactory != null && !replicaReadCaches.isEmpty())
+            primaryWriter = new ReplicaReadRedisCacheWriter(primaryWriter,
+                    RedisCacheWriter.nonLockingRedisCacheWriter(replicaFactory), replicaReadCaches);
+        RedisCacheWriter cacheWriter = new MeteredRedisCacheWriter(primaryWriter, cacheMetrics);
+        RedisCacheManagerBuilder builder = RedisCacheManager.builder(cacheWriter)
+                .cacheDefaults(redisCacheConfiguration)
+                .withInitialCacheConfigurations(cacheConfigurations(redisCacheConfiguration, cachingProperties));
+        if (!cachingProperties.getLocal().isEnabled())
+            return builder.transactionAware().build();
+
+        // Transactions are handled by the two level manager, which defers writes to both levels
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.afterPropertiesSet();
+
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(redisCacheManager, redisCacheConfiguration,
+                cacheValueSerializer, cachingProperties, stringRedisTemplate, objectMapper, cacheMetrics);
+        cacheManager.setTransactionAware(true);
+        return cacheManager;
+    }
+
+    private static Map<String, RedisCacheConfiguration> cacheConfigurations(
+            RedisCacheConfiguration redisCacheConfiguration, CachingProperties cachingProperties) {
+        Map<String, RedisCacheConfiguration> configurations = new HashMap<>();
+        for (String cacheName : cachingProperties.getCaches().keySet()) {
+            Duration timeToLive = cachingProperties.timeToLive(cacheName);
+            // Reads with time to idle ask for the time to live without a value, so nulls cannot get their own
+            RedisCacheConfiguration configuration = cachingProperties.slidingExpiration(cacheName)
+                    ? redisCacheConfiguration.entryTtl(timeToLive).enableTimeToIdle()
+                    : redisCacheConfiguration.entryTtl(
+                            ttlFunction(timeToLive, cachingProperties.nullValueTimeToLive(cacheName)));
+            configurations.put(cacheName, configuration);
+        }
+        return configurations;
+    }
+
+    private static TtlFunction ttlFunction(Duration timeToLive, Duration nullValueTimeToLive) {
+        return (key, value) -> value == null ? nullValueTimeToLive : timeToLive;
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+            CacheManager cacheManager, CachingProperties cachingProperties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        if (cacheManager instanceof TwoLevelCacheManager twoLevelCacheManager)
+            container.addMessageListener(twoLevelCacheManager,
+                    new ChannelTopic(cachingProperties.getInvalidationChannel()));
+        return container;
     }
 }
@@ -0,0 +1,46 @@
+package com.omarahmed42.socialmedia.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@ConfigurationProperties(prefix = "redis.topology")
+@Getter
+@Setter
+public class RedisTopologyProperties {
+
+    /**
+     * How Redis is deployed. Standalone and replicated primaries are reached through
+     * {@code spring.data.redis.host} and {@code spring.data.redis.port}.
+     */
+    private Mode mode = Mode.STANDALONE;
+
+    /**
+     * Seed nodes of the cluster as {@code host:port}, in cluster mode.
+     */
+    private List<String> nodes = new ArrayList<>();
+
+    /**
+     * Maximum number of MOVED/ASK redirects followed per command, in cluster mode.
+     */
+    private int maxRedirects = 5;
+
+    /**
+     * Replicas of the primary as {@code host:port}, in replicated mode.
+     */
+    private List<String> replicas = new ArrayList<>();
+
+    /**
+     * Whether lookups of caches with {@code replica-reads} are served by replicas when one is
+     * available. Needs cluster or replicated mode.
+     */
+    private boolean replicaReads;
+
+    public enum Mode {
+        STANDALONE, REPLICATED, CLUSTER
+    }
+}
@@ -32,6 +32,7 @@ public class SecurityConfiguration {
         http.csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(
                         request -> request.requestMatchers("/api/v1/auth/**").permitAll()
+                                .requestMatchers("/actuator/cachewarmup", "/actuator/cachekeys/**", "/actuator/hotcounters").hasRole("ADMIN")
                                 .requestMatchers("/actuator/**").permitAll()
                                 .requestMatchers("/prometheus/**").permitAll()
                                 .requestMatchers("/graphql").permitAll()
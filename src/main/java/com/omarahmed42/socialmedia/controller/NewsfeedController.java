@@ -1,11 +1,10 @@
 package com.omarahmed42.socialmedia.controller;
 
-import java.util.List;
-
+import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.stereotype.Controller;
 
-import com.omarahmed42.socialmedia.model.Post;
+import com.omarahmed42.socialmedia.dto.response.NewsfeedPage;
 import com.omarahmed42.socialmedia.service.FanoutService;
 
 import graphql.GraphQLContext;
@@ -18,7 +17,7 @@ public class NewsfeedController {
     private final FanoutService fanoutService;
 
     @QueryMapping
-    public List<Post> fetchNewsfeed(GraphQLContext context) {
-        return fanoutService.getNewsfeed();
+    public NewsfeedPage fetchNewsfeed(@Argument Integer first, @Argument String after, GraphQLContext context) {
+        return fanoutService.getNewsfeed(first, after);
     }
 }
@@ -0,0 +1,23 @@
+package com.omarahmed42.socialmedia.dto.event;
+
+import java.io.Serializable;
+
+import com.omarahmed42.socialmedia.enums.NewsfeedEventType;
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class NewsfeedEvent implements Serializable {
+    private NewsfeedEventType type;
+    private Long userId;
+    private Long postId;
+
+    public Newsfeed toNewsfeed() {
+        return new Newsfeed(userId, postId);
+    }
+}
@@ -0,0 +1,19 @@
+package com.omarahmed42.socialmedia.dto.event;
+
+import java.io.Serializable;
+
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReactionDeltaEvent implements Serializable {
+    private ReactionOwnerType ownerType;
+    private Long ownerId;
+    private String reaction;
+    private long delta;
+}
@@ -0,0 +1,8 @@
+package com.omarahmed42.socialmedia.dto.response;
+
+import java.util.List;
+
+import com.omarahmed42.socialmedia.model.Post;
+
+public record NewsfeedPage(List<Post> posts, String endCursor, Boolean hasNextPage) {
+}
@@ -0,0 +1,6 @@
+package com.omarahmed42.socialmedia.enums;
+
+public enum NewsfeedEventType {
+    PUBLISHED,
+    DELETED
+}
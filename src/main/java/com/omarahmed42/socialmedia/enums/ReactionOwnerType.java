@@ -0,0 +1,6 @@
+package com.omarahmed42.socialmedia.enums;
+
+public enum ReactionOwnerType {
+    POST,
+    COMMENT
+}
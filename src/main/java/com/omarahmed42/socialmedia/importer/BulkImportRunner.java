@@ -0,0 +1,41 @@
+package com.omarahmed42.socialmedia.importer;
+
+import java.nio.file.Path;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Runs the bulk import on startup when {@code import.source-dir} is set, e.g.
+ * {@code --import.source-dir=/data/partner}. Restarting with the same
+ * checkpoint file resumes an interrupted import.
+ */
+@Component
+@ConditionalOnProperty(name = "import.source-dir")
+@RequiredArgsConstructor
+public class BulkImportRunner implements ApplicationRunner {
+
+    private static final String DEFAULT_CHECKPOINT_FILE = "import-checkpoint.json";
+
+    private final BulkImporter bulkImporter;
+
+    @Value("${import.source-dir}")
+    private String sourceDirectory;
+
+    @Value("${import.checkpoint-file:}")
+    private String checkpointFile;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Path source = Path.of(sourceDirectory);
+        Path checkpoint = StringUtils.isBlank(checkpointFile) ? source.resolve(DEFAULT_CHECKPOINT_FILE)
+                : Path.of(checkpointFile);
+        bulkImporter.importAll(source, checkpoint);
+    }
+}
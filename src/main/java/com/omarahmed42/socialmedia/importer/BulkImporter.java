@@ -0,0 +1,435 @@
+package com.omarahmed42.socialmedia.importer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.exception.InternalServerErrorException;
+import com.omarahmed42.socialmedia.model.Reaction;
+import com.omarahmed42.socialmedia.model.Role;
+import com.omarahmed42.socialmedia.repository.ReactionRepository;
+import com.omarahmed42.socialmedia.repository.RoleRepository;
+import com.omarahmed42.socialmedia.service.NewsfeedRebuildService;
+import com.omarahmed42.socialmedia.util.RedisKeys;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Imports a whole community from JSON lines files ({@code users.jsonl},
+ * {@code friendships.jsonl} and {@code posts.jsonl}) without going through the
+ * per-row services and events.
+ * <p>
+ * Files are read one row at a time and written in batches of
+ * {@code import.batch-size}: MySQL rows in JDBC batches, graph nodes and edges
+ * with one {@code UNWIND} per batch, reaction counters in one pipeline.
+ * Newsfeeds are built from the database once everything is written. Posts are
+ * expected in chronological order, their ids are generated in import order.
+ */
+@Component
+@Slf4j
+public class BulkImporter {
+
+    private static final String DEFAULT_ROLE = "USER";
+    private static final Duration COUNTER_TIME_TO_LIVE = Duration.ofHours(12);
+    private static final byte[] INITIALIZE_COUNTERS_SCRIPT = """
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                return 0
+            end
+            for i = 2, #ARGV do
+                redis.call('HSET', KEYS[1], ARGV[i], 0)
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private static final String INSERT_USER = """
+            INSERT INTO `user` (id, first_name, last_name, username, email, password, bio, date_of_birth,
+                enabled, active, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+    private static final String INSERT_USER_ROLE = "INSERT INTO user_role (user_id, role_id) VALUES (?, ?)";
+    private static final String INSERT_POST = """
+            INSERT INTO post (id, content, post_status, user_id, created_at)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private static final String MERGE_USERS = """
+            UNWIND $userIds AS userId
+            MERGE (user:User {userId: userId})
+            ON CREATE SET user.createdAt = localdatetime(), user.version = 0
+            """;
+    private static final String MERGE_FRIENDSHIPS = """
+            UNWIND $friendships AS friendship
+            MATCH (user:User {userId: friendship.userId}), (friend:User {userId: friendship.friendId})
+            MERGE (user)-[:FRIEND_WITH]-(friend)
+            WITH collect(user) + collect(friend) AS linked
+            UNWIND linked AS user
+            WITH DISTINCT user
+            SET user.friendCount = COUNT { (user)-[:FRIEND_WITH]-(:User) }
+            """;
+
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Neo4jClient neo4jClient;
+    private final StringRedisTemplate redisTemplate;
+    private final IdBlockAllocator idBlockAllocator;
+    private final ImportIdMappings idMappings;
+    private final RoleRepository roleRepository;
+    private final ReactionRepository reactionRepository;
+    private final NewsfeedRebuildService newsfeedRebuildService;
+    private final MeterRegistry meterRegistry;
+
+    private final int batchSize;
+    private final Duration reportInterval;
+    private final boolean buildNewsfeeds;
+
+    public BulkImporter(ObjectMapper objectMapper, JdbcTemplate jdbcTemplate,
+            NamedParameterJdbcTemplate namedParameterJdbcTemplate, TransactionTemplate transactionTemplate,
+            Neo4jClient neo4jClient, StringRedisTemplate redisTemplate, IdBlockAllocator idBlockAllocator,
+            ImportIdMappings idMappings, RoleRepository roleRepository, ReactionRepository reactionRepository,
+            NewsfeedRebuildService newsfeedRebuildService, MeterRegistry meterRegistry,
+            @Value("${import.batch-size:1000}") int batchSize,
+            @Value("${import.report-interval:10s}") Duration reportInterval,
+            @Value("${import.build-newsfeeds:true}") boolean buildNewsfeeds) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Import batch size must be at least 1");
+
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.neo4jClient = neo4jClient;
+        this.redisTemplate = redisTemplate;
+        this.idBlockAllocator = idBlockAllocator;
+        this.idMappings = idMappings;
+        this.roleRepository = roleRepository;
+        this.reactionRepository = reactionRepository;
+        this.newsfeedRebuildService = newsfeedRebuildService;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.reportInterval = reportInterval;
+        this.buildNewsfeeds = buildNewsfeeds;
+    }
+
+    public void importAll(Path sourceDirectory, Path checkpointFile) {
+        log.info("Importing {} (checkpoint: {})", sourceDirectory, checkpointFile);
+        idMappings.createTableIfMissing();
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile, objectMapper);
+
+        Integer defaultRoleId = roleRepository.findAllByNameIn(Set.of(DEFAULT_ROLE)).stream()
+                .findFirst()
+                .map(Role::getId)
+                .orElseThrow(() -> new InternalServerErrorException("Role " + DEFAULT_ROLE + " does not exist"));
+        List<String> reactions = reactionRepository.findAll().stream()
+                .map(Reaction::getName)
+                .filter(StringUtils::isNotBlank)
+                .toList();
+
+        try {
+            importFile(sourceDirectory, ImportPhase.USERS, ImportedUser.class, checkpoint,
+                    users -> writeUsers(users, defaultRoleId));
+            importFile(sourceDirectory, ImportPhase.FRIENDSHIPS, ImportedFriendship.class, checkpoint,
+                    this::writeFriendships);
+            importFile(sourceDirectory, ImportPhase.POSTS, ImportedPost.class, checkpoint,
+                    posts -> writePosts(posts, reactions));
+        } finally {
+            idBlockAllocator.release();
+        }
+
+        if (buildNewsfeeds)
+            buildNewsfeeds(checkpoint);
+        log.info("Import of {} finished", sourceDirectory);
+    }
+
+    private <T> void importFile(Path sourceDirectory, ImportPhase phase, Class<T> rowType,
+            ImportCheckpoint checkpoint, ToIntFunction<List<T>> writer) {
+        if (checkpoint.isCompleted(phase)) {
+            log.info("Import {} already completed, skipping", phase);
+            return;
+        }
+
+        Path file = sourceDirectory.resolve(phase.getFileName());
+        if (!Files.exists(file)) {
+            log.info("{} does not exist, skipping import {}", file, phase);
+            checkpoint.complete(phase);
+            return;
+        }
+
+        long position = checkpoint.position(phase);
+        ThroughputReporter reporter = new ThroughputReporter(phase, reportInterval, meterRegistry);
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file));
+                MappingIterator<T> rows = objectMapper.readerFor(rowType).readValues(inputStream)) {
+            for (long skipped = 0; skipped < position && rows.hasNextValue(); skipped++) {
+                rows.nextValue();
+            }
+            if (position > 0)
+                log.info("Resuming import {} after row {}", phase, position);
+
+            List<T> batch = new ArrayList<>(batchSize);
+            while (rows.hasNextValue()) {
+                batch.add(rows.nextValue());
+                if (batch.size() == batchSize) {
+                    position = writeBatch(phase, batch, writer, checkpoint, reporter, position);
+                }
+            }
+            if (!batch.isEmpty())
+                writeBatch(phase, batch, writer, checkpoint, reporter, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+
+        checkpoint.complete(phase);
+        reporter.finish();
+    }
+
+    private <T> long writeBatch(ImportPhase phase, List<T> batch, ToIntFunction<List<T>> writer,
+            ImportCheckpoint checkpoint, ThroughputReporter reporter, long position) {
+        int written = writer.applyAsInt(batch);
+        long newPosition = position + batch.size();
+        checkpoint.save(phase, newPosition);
+        reporter.record(batch.size(), written);
+        batch.clear();
+        return newPosition;
+    }
+
+    private int writeUsers(List<ImportedUser> batch, Integer defaultRoleId) {
+        Map<String, ImportedUser> usersById = new LinkedHashMap<>();
+        for (ImportedUser user : batch) {
+            if (isValid(user))
+                usersById.putIfAbsent(user.id(), user);
+        }
+
+        Map<String, Long> importedIds = idMappings.find(ImportIdMappings.USER, usersById.keySet());
+        usersById.keySet().removeAll(importedIds.keySet());
+        removeTakenUsernamesAndEmails(usersById);
+
+        List<ImportedUser> users = new ArrayList<>(usersById.values());
+        List<Long> ids = idBlockAllocator.allocate(users.size());
+        Map<String, Long> newIds = new HashMap<>();
+        List<Object[]> userRows = new ArrayList<>(users.size());
+        List<Object[]> roleRows = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            ImportedUser user = users.get(i);
+            Long id = ids.get(i);
+            newIds.put(user.id(), id);
+            userRows.add(new Object[] { id, user.firstName(), user.lastName(), user.username(), user.email(),
+                    user.passwordHash(), user.bio(),
+                    user.dateOfBirth() == null ? null : Date.valueOf(user.dateOfBirth()),
+                    true, true, timestamp(user.createdAt()) });
+            roleRows.add(new Object[] { id, defaultRoleId });
+        }
+
+        if (!users.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_USER, userRows);
+                jdbcTemplate.batchUpdate(INSERT_USER_ROLE, roleRows);
+                idMappings.insert(ImportIdMappings.USER, newIds);
+            });
+        }
+
+        // Users written by an interrupted run may be missing from the graph, MERGE makes this safe to repeat
+        List<Long> graphIds = new ArrayList<>(importedIds.values());
+        graphIds.addAll(newIds.values());
+        if (!graphIds.isEmpty())
+            neo4jClient.query(MERGE_USERS).bind(graphIds).to("userIds").run();
+
+        return users.size();
+    }
+
+    private boolean isValid(ImportedUser user) {
+        return user != null
+                && StringUtils.isNotBlank(user.id())
+                && StringUtils.isNotBlank(user.passwordHash())
+                && isLengthBetween(user.firstName(), 1, 50)
+                && isLengthBetween(user.lastName(), 1, 50)
+                && isLengthBetween(user.username(), 1, 50)
+                && isLengthBetween(user.email(), 1, 254)
+                && StringUtils.length(user.bio()) <= 160;
+    }
+
+    private void removeTakenUsernamesAndEmails(Map<String, ImportedUser> usersById) {
+        if (usersById.isEmpty())
+            return;
+
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        // Duplicates inside the batch would fail the whole JDBC batch on the unique constraints
+        usersById.values().removeIf(user -> {
+            boolean duplicate = usernames.contains(user.username()) || emails.contains(user.email());
+            usernames.add(user.username());
+            emails.add(user.email());
+            return duplicate;
+        });
+
+        Set<String> takenUsernames = new HashSet<>();
+        Set<String> takenEmails = new HashSet<>();
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("usernames", usernames)
+                .addValue("emails", emails);
+        namedParameterJdbcTemplate.query(
+                "SELECT username, email FROM `user` WHERE username IN (:usernames) OR email IN (:emails)",
+                parameters, rs -> {
+                    takenUsernames.add(rs.getString("username"));
+                    takenEmails.add(rs.getString("email"));
+                });
+
+        int before = usersById.size();
+        usersById.values().removeIf(
+                user -> takenUsernames.contains(user.username()) || takenEmails.contains(user.email()));
+        if (usersById.size() < before)
+            log.warn("Skipped {} imported users whose username or email is already taken", before - usersById.size());
+    }
+
+    private int writeFriendships(List<ImportedFriendship> batch) {
+        Set<String> externalIds = new HashSet<>();
+        for (ImportedFriendship friendship : batch) {
+            if (friendship == null)
+                continue;
+            externalIds.add(friendship.userId());
+            externalIds.add(friendship.friendId());
+        }
+        externalIds.remove(null);
+
+        Map<String, Long> ids = idMappings.find(ImportIdMappings.USER, externalIds);
+        List<Map<String, Object>> friendships = new ArrayList<>(batch.size());
+        for (ImportedFriendship friendship : batch) {
+            if (friendship == null)
+                continue;
+
+            Long userId = ids.get(friendship.userId());
+            Long friendId = ids.get(friendship.friendId());
+            if (userId != null && friendId != null && !userId.equals(friendId))
+                friendships.add(Map.of("userId", userId, "friendId", friendId));
+        }
+
+        if (friendships.size() < batch.size())
+            log.warn("Skipped {} friendships with unknown or identical users", batch.size() - friendships.size());
+
+        if (!friendships.isEmpty())
+            neo4jClient.query(MERGE_FRIENDSHIPS).bind(friendships).to("friendships").run();
+        return friendships.size();
+    }
+
+    private int writePosts(List<ImportedPost> batch, List<String> reactions) {
+        Map<String, ImportedPost> postsById = new LinkedHashMap<>();
+        for (ImportedPost post : batch) {
+            if (post != null && StringUtils.isNotBlank(post.id()) && post.userId() != null
+                    && isLengthBetween(post.content(), 1, 254))
+                postsById.putIfAbsent(post.id(), post);
+        }
+
+        postsById.keySet().removeAll(idMappings.find(ImportIdMappings.POST, postsById.keySet()).keySet());
+        Map<String, Long> userIds = idMappings.find(ImportIdMappings.USER,
+                postsById.values().stream().map(ImportedPost::userId).toList());
+        postsById.values().removeIf(post -> !userIds.containsKey(post.userId()));
+
+        List<ImportedPost> posts = new ArrayList<>(postsById.values());
+        if (posts.isEmpty())
+            return 0;
+
+        List<Long> ids = idBlockAllocator.allocate(posts.size());
+        Map<String, Long> newIds = new HashMap<>();
+        List<Object[]> postRows = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            ImportedPost post = posts.get(i);
+            newIds.put(post.id(), ids.get(i));
+            postRows.add(new Object[] { ids.get(i), post.content(), PostStatus.PUBLISHED.name(),
+                    userIds.get(post.userId()), timestamp(post.createdAt()) });
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_POST, postRows);
+            idMappings.insert(ImportIdMappings.POST, newIds);
+        });
+
+        initializeReactionCounters(ids, reactions);
+        return posts.size();
+    }
+
+    // New posts have no reactions, seeding the counters spares the first reads a grouped COUNT query each.
+    // Counters that already exist are left alone, a resumed import may reach posts that were reacted to since.
+    private void initializeReactionCounters(List<Long> postIds, List<String> reactions) {
+        byte[][] args = new byte[reactions.size() + 1][];
+        args[0] = String.valueOf(COUNTER_TIME_TO_LIVE.toMillis()).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < reactions.size(); i++)
+            args[i + 1] = reactions.get(i).getBytes(StandardCharsets.UTF_8);
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long postId : postIds) {
+                byte[][] keyAndArgs = new byte[args.length + 1][];
+                keyAndArgs[0] = RedisKeys.postReactions(postId).getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(args, 0, keyAndArgs, 1, args.length);
+                connection.scriptingCommands().eval(INITIALIZE_COUNTERS_SCRIPT, ReturnType.INTEGER, 1, keyAndArgs);
+            }
+            return null;
+        });
+    }
+
+    private void buildNewsfeeds(ImportCheckpoint checkpoint) {
+        if (checkpoint.isCompleted(ImportPhase.NEWSFEEDS)) {
+            log.info("Import {} already completed, skipping", ImportPhase.NEWSFEEDS);
+            return;
+        }
+
+        ThroughputReporter reporter = new ThroughputReporter(ImportPhase.NEWSFEEDS, reportInterval, meterRegistry);
+        long lastUserId = checkpoint.position(ImportPhase.NEWSFEEDS);
+        List<Long> userIds;
+        while (!(userIds = idMappings.findIdsAfter(ImportIdMappings.USER, lastUserId, batchSize)).isEmpty()) {
+            int built = 0;
+            for (Long userId : userIds) {
+                if (newsfeedRebuildService.rebuild(userId) > 0)
+                    built++;
+            }
+            lastUserId = userIds.get(userIds.size() - 1);
+            checkpoint.save(ImportPhase.NEWSFEEDS, lastUserId);
+            reporter.record(userIds.size(), built);
+        }
+
+        checkpoint.complete(ImportPhase.NEWSFEEDS);
+        reporter.finish();
+    }
+
+    private static boolean isLengthBetween(String value, int min, int max) {
+        int length = StringUtils.length(value);
+        return length >= min && length <= max;
+    }
+
+    private static Timestamp timestamp(LocalDateTime dateTime) {
+        return Timestamp.valueOf(Objects.requireNonNullElseGet(dateTime, LocalDateTime::now));
+    }
+}
@@ -0,0 +1,91 @@
+package com.omarahmed42.socialmedia.importer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Int64Value;
+import com.omarahmed42.socialmedia.client.grpc.UIDGrpc;
+import com.omarahmed42.socialmedia.client.grpc.Uid;
+import com.omarahmed42.socialmedia.exception.InvalidIdException;
+
+import net.devh.boot.grpc.client.inject.GrpcClient;
+
+/**
+ * Hands out ids to the importer a block at a time.
+ * <p>
+ * The uid generator only serves one id per call, so a block is requested as
+ * concurrent calls on one channel, and the next block is requested as soon as
+ * the current one is handed out so that it arrives while the current batch is
+ * being written.
+ */
+@Component
+public class IdBlockAllocator {
+
+    @GrpcClient("uid-generator")
+    private UIDGrpc.UIDFutureStub uidGeneratorStub;
+
+    @Value("${import.id-block.timeout:30s}")
+    private Duration timeout;
+
+    private ListenableFuture<List<Int64Value>> nextBlock;
+    private int nextBlockSize;
+
+    public synchronized List<Long> allocate(int count) {
+        if (count < 1)
+            return List.of();
+
+        ListenableFuture<List<Int64Value>> block = nextBlock != null && nextBlockSize == count ? nextBlock
+                : request(count);
+        if (block != nextBlock)
+            release();
+
+        nextBlock = request(count);
+        nextBlockSize = count;
+        return toIds(await(block));
+    }
+
+    public synchronized void release() {
+        if (nextBlock != null)
+            nextBlock.cancel(true);
+        nextBlock = null;
+        nextBlockSize = 0;
+    }
+
+    private ListenableFuture<List<Int64Value>> request(int count) {
+        List<ListenableFuture<Int64Value>> calls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            calls.add(uidGeneratorStub.generateUid(Uid.Empty.getDefaultInstance()));
+        }
+        return Futures.allAsList(calls);
+    }
+
+    private List<Int64Value> await(ListenableFuture<List<Int64Value>> block) {
+        try {
+            return block.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while allocating ids", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Could not allocate a block of ids", e);
+        }
+    }
+
+    private List<Long> toIds(List<Int64Value> values) {
+        List<Long> ids = new ArrayList<>(values.size());
+        for (Int64Value value : values) {
+            if (value.getValue() <= 0)
+                throw new InvalidIdException("Invalid generated ID");
+            ids.add(value.getValue());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,82 @@
+package com.omarahmed42.socialmedia.importer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Progress of an import, saved after every written batch so that an
+ * interrupted import resumes after the last batch it wrote.
+ * <p>
+ * For file phases the position is the number of rows read, for the newsfeeds
+ * phase it is the last user id whose newsfeed was built.
+ */
+public class ImportCheckpoint {
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final Map<ImportPhase, Long> positions = new EnumMap<>(ImportPhase.class);
+    private final Set<ImportPhase> completed = EnumSet.noneOf(ImportPhase.class);
+
+    private ImportCheckpoint(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    public static ImportCheckpoint load(Path file, ObjectMapper objectMapper) {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file, objectMapper);
+        if (!Files.exists(file))
+            return checkpoint;
+
+        try {
+            State state = objectMapper.readValue(file.toFile(), State.class);
+            if (state.positions() != null)
+                checkpoint.positions.putAll(state.positions());
+            if (state.completed() != null)
+                checkpoint.completed.addAll(state.completed());
+            return checkpoint;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read import checkpoint " + file, e);
+        }
+    }
+
+    public long position(ImportPhase phase) {
+        return positions.getOrDefault(phase, 0L);
+    }
+
+    public boolean isCompleted(ImportPhase phase) {
+        return completed.contains(phase);
+    }
+
+    public void save(ImportPhase phase, long position) {
+        positions.put(phase, position);
+        write();
+    }
+
+    public void complete(ImportPhase phase) {
+        completed.add(phase);
+        write();
+    }
+
+    private void write() {
+        try {
+            // Written next to the checkpoint and moved over it, a crash mid-write keeps the previous one
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temporary.toFile(), new State(positions, completed));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write import checkpoint " + file, e);
+        }
+    }
+
+    private record State(Map<ImportPhase, Long> positions, Set<ImportPhase> completed) {
+    }
+}
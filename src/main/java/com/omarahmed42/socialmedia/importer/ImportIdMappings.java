@@ -0,0 +1,71 @@
+package com.omarahmed42.socialmedia.importer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Maps the ids of the imported community to the ids generated for them, so
+ * that friendships and posts can reference users by their original ids and a
+ * resumed import skips what it already wrote.
+ */
+@Component
+@RequiredArgsConstructor
+public class ImportIdMappings {
+
+    public static final String USER = "user";
+    public static final String POST = "post";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public void createTableIfMissing() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS import_id_mapping (
+                    entity_type VARCHAR(16) NOT NULL,
+                    external_id VARCHAR(64) NOT NULL,
+                    id BIGINT NOT NULL,
+                    PRIMARY KEY (entity_type, external_id),
+                    KEY idx_import_id_mapping_type_id (entity_type, id)
+                )
+                """);
+    }
+
+    public Map<String, Long> find(String entityType, Collection<String> externalIds) {
+        Map<String, Long> ids = new HashMap<>();
+        if (externalIds.isEmpty())
+            return ids;
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("entityType", entityType)
+                .addValue("externalIds", externalIds);
+        namedParameterJdbcTemplate.query(
+                "SELECT external_id, id FROM import_id_mapping WHERE entity_type = :entityType AND external_id IN (:externalIds)",
+                parameters, rs -> {
+                    ids.put(rs.getString("external_id"), rs.getLong("id"));
+                });
+        return ids;
+    }
+
+    public void insert(String entityType, Map<String, Long> ids) {
+        List<Object[]> rows = ids.entrySet().stream()
+                .map(entry -> new Object[] { entityType, entry.getKey(), entry.getValue() })
+                .toList();
+        jdbcTemplate.batchUpdate("INSERT INTO import_id_mapping (entity_type, external_id, id) VALUES (?, ?, ?)",
+                rows);
+    }
+
+    public List<Long> findIdsAfter(String entityType, long afterId, int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM import_id_mapping WHERE entity_type = ? AND id > ? ORDER BY id LIMIT ?",
+                Long.class, entityType, afterId, limit);
+    }
+}
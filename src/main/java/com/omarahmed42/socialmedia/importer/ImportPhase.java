@@ -0,0 +1,18 @@
+package com.omarahmed42.socialmedia.importer;
+
+public enum ImportPhase {
+    USERS("users.jsonl"),
+    FRIENDSHIPS("friendships.jsonl"),
+    POSTS("posts.jsonl"),
+    NEWSFEEDS(null);
+
+    private final String fileName;
+
+    ImportPhase(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
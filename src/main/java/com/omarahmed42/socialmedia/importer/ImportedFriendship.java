@@ -0,0 +1,4 @@
+package com.omarahmed42.socialmedia.importer;
+
+public record ImportedFriendship(String userId, String friendId) {
+}
@@ -0,0 +1,6 @@
+package com.omarahmed42.socialmedia.importer;
+
+import java.time.LocalDateTime;
+
+public record ImportedPost(String id, String userId, String content, LocalDateTime createdAt) {
+}
@@ -0,0 +1,8 @@
+package com.omarahmed42.socialmedia.importer;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public record ImportedUser(String id, String firstName, String lastName, String username, String email,
+        String passwordHash, String bio, LocalDate dateOfBirth, LocalDateTime createdAt) {
+}
@@ -0,0 +1,70 @@
+package com.omarahmed42.socialmedia.importer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class ThroughputReporter {
+
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
+    private final ImportPhase phase;
+    private final long intervalNanos;
+    private final Counter readCounter;
+    private final Counter writtenCounter;
+
+    private final long startNanos = System.nanoTime();
+    private long lastReportNanos = startNanos;
+    private long read;
+    private long written;
+    private long readAtLastReport;
+
+    public ThroughputReporter(ImportPhase phase, Duration interval, MeterRegistry meterRegistry) {
+        this.phase = phase;
+        this.intervalNanos = interval.toNanos();
+        this.readCounter = Counter.builder("import.rows")
+                .tag("phase", phase.name().toLowerCase())
+                .tag("result", "read")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("import.rows")
+                .tag("phase", phase.name().toLowerCase())
+                .tag("result", "written")
+                .register(meterRegistry);
+    }
+
+    public void record(int readRows, int writtenRows) {
+        read += readRows;
+        written += writtenRows;
+        readCounter.increment(readRows);
+        writtenCounter.increment(writtenRows);
+
+        long now = System.nanoTime();
+        if (now - lastReportNanos < intervalNanos)
+            return;
+
+        double rate = (read - readAtLastReport) / secondsBetween(lastReportNanos, now);
+        log.info("Import {}: {} rows read, {} written, {} rows/s, heap used {} MB", phase, read, written,
+                Math.round(rate), usedHeapMegabytes());
+        lastReportNanos = now;
+        readAtLastReport = read;
+    }
+
+    public void finish() {
+        long now = System.nanoTime();
+        log.info("Import {} finished: {} rows read, {} written in {} s ({} rows/s)", phase, read, written,
+                TimeUnit.NANOSECONDS.toSeconds(now - startNanos), Math.round(read / secondsBetween(startNanos, now)));
+    }
+
+    private static double secondsBetween(long startNanos, long endNanos) {
+        return Math.max(endNanos - startNanos, 1L) / 1_000_000_000.0;
+    }
+
+    private static long usedHeapMegabytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / BYTES_PER_MEGABYTE;
+    }
+}
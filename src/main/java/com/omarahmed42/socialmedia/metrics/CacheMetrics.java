@@ -0,0 +1,129 @@
+package com.omarahmed42.socialmedia.metrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.omarahmed42.socialmedia.metrics.HeavyHitters.HeavyHitter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of the Spring caches, tagged by cache name. Lookups are also tagged
+ * by the level that answered them: {@code local} for the in-process cache and
+ * {@code redis} for Redis.
+ * <p>
+ * Names avoid the {@code cache.gets}/{@code cache.puts} meters Spring Boot
+ * binds for known caches, which carry a different set of tags.
+ * <p>
+ * Keys looked up are fed to a {@link HeavyHitters} sketch per cache, which
+ * tracks the hottest keys for the {@code cachekeys} actuator endpoint without
+ * a meter per key. The sketch samples one lookup in eight, so it stays off
+ * the lock of every cache hit.
+ */
+@Component
+public class CacheMetrics {
+
+    public static final String LOCAL = "local";
+    public static final String REDIS = "redis";
+
+    private static final int HOT_KEYS_CAPACITY = 100;
+    private static final Duration HOT_KEYS_HALF_LIFE = Duration.ofMinutes(1);
+    private static final int HOT_KEYS_SAMPLE_RATE = 8;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, HeavyHitters> hotKeys = new ConcurrentHashMap<>();
+    private final Map<String, CacheMeters> cacheMeters = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void recordLookup(String cacheName, String level, boolean hit) {
+        Counter[] lookups = meters(cacheName).lookups().computeIfAbsent(level, l -> new Counter[] {
+                lookupCounter(cacheName, l, false), lookupCounter(cacheName, l, true) });
+        lookups[hit ? 1 : 0].increment();
+    }
+
+    public void recordWrite(String cacheName, String operation) {
+        meters(cacheName).writes().computeIfAbsent(operation, op -> Counter.builder("cache.writes")
+                .description("Cache puts, evictions and clears")
+                .tag("cache", cacheName)
+                .tag("operation", op)
+                .register(meterRegistry))
+                .increment();
+    }
+
+    public void recordValueSize(String cacheName, int bytes) {
+        meters(cacheName).valueSize().record(bytes);
+    }
+
+    public Timer.Sample startLoad() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stopLoad(Timer.Sample sample, String cacheName, boolean success) {
+        CacheMeters meters = meters(cacheName);
+        sample.stop(success ? meters.loadSuccess() : meters.loadFailure());
+    }
+
+    public void recordKeyAccess(String cacheName, String key) {
+        hotKeys.computeIfAbsent(cacheName, name -> new HeavyHitters(HOT_KEYS_CAPACITY, HOT_KEYS_HALF_LIFE,
+                HOT_KEYS_SAMPLE_RATE))
+                .record(key);
+    }
+
+    public List<HeavyHitter> hotKeys(String cacheName, int limit) {
+        HeavyHitters heavyHitters = hotKeys.get(cacheName);
+        return heavyHitters == null ? List.of() : heavyHitters.top(limit);
+    }
+
+    // Meters are registered once per cache and tag set, lookups and writes are on the hot path
+    private CacheMeters meters(String cacheName) {
+        CacheMeters meters = cacheMeters.get(cacheName);
+        return meters != null ? meters : cacheMeters.computeIfAbsent(cacheName, this::register);
+    }
+
+    private CacheMeters register(String cacheName) {
+        DistributionSummary valueSize = DistributionSummary.builder("cache.value.size")
+                .description("Serialized size of values written to Redis")
+                .baseUnit("bytes")
+                .tag("cache", cacheName)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        return new CacheMeters(valueSize, loadTimer(cacheName, true), loadTimer(cacheName, false));
+    }
+
+    private Counter lookupCounter(String cacheName, String level, boolean hit) {
+        return Counter.builder("cache.lookups")
+                .description("Cache lookups by level and result")
+                .tag("cache", cacheName)
+                .tag("level", level)
+                .tag("result", hit ? "hit" : "miss")
+                .register(meterRegistry);
+    }
+
+    private Timer loadTimer(String cacheName, boolean success) {
+        return Timer.builder("cache.load")
+                .description("Time taken to load a value missing from every cache level")
+                .tag("cache", cacheName)
+                .tag("result", success ? "success" : "failure")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    // Lookup counters of a level are indexed by hit
+    private record CacheMeters(Map<String, Counter[]> lookups, Map<String, Counter> writes,
+            DistributionSummary valueSize, Timer loadSuccess, Timer loadFailure) {
+
+        private CacheMeters(DistributionSummary valueSize, Timer loadSuccess, Timer loadFailure) {
+            this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), valueSize, loadSuccess, loadFailure);
+        }
+    }
+}
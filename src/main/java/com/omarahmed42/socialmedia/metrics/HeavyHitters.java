@@ -0,0 +1,145 @@
+package com.omarahmed42.socialmedia.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Space-Saving sketch of the most frequent keys of a stream, in memory bounded
+ * by {@code capacity} counters. A key that is not tracked takes over the
+ * counter of the least frequent tracked key, inheriting its count as an upper
+ * bound of its own overestimation.
+ * <p>
+ * Counts are halved every {@code halfLife}, so keys that were hot a while ago
+ * make way for the ones that are hot now.
+ * <p>
+ * Meant to be fed from hot paths: only one in {@code sampleRate} keys is
+ * recorded, and a key arriving while another thread updates the sketch is
+ * dropped rather than waited for. Reported counts are scaled back up by the
+ * sample rate.
+ */
+public class HeavyHitters {
+
+    private final int capacity;
+    private final int sampleRate;
+    private final long halfLifeNanos;
+    private final LongSupplier nanoClock;
+    private final Map<String, Counter> counters;
+    private final Lock lock = new ReentrantLock();
+    private long nextDecayNanos;
+
+    public HeavyHitters(int capacity, Duration halfLife, int sampleRate) {
+        this(capacity, halfLife, sampleRate, System::nanoTime);
+    }
+
+    HeavyHitters(int capacity, Duration halfLife, int sampleRate, LongSupplier nanoClock) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Heavy hitters capacity must be at least 1");
+        if (sampleRate < 1)
+            throw new IllegalArgumentException("Heavy hitters sample rate must be at least 1");
+
+        this.capacity = capacity;
+        this.sampleRate = sampleRate;
+        this.halfLifeNanos = halfLife.toNanos();
+        this.nanoClock = nanoClock;
+        this.counters = new HashMap<>(capacity * 2);
+        this.nextDecayNanos = nanoClock.getAsLong() + halfLifeNanos;
+    }
+
+    public void record(String key) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)
+            return;
+        if (!lock.tryLock())
+            return;
+
+        try {
+            add(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the most frequent keys, most frequent first. A key's true count lies
+     * between {@code count - error} and {@code count}, give or take the sampling
+     * error.
+     */
+    public List<HeavyHitter> top(int limit) {
+        List<HeavyHitter> top = new ArrayList<>(capacity);
+        lock.lock();
+        try {
+            decayIfDue();
+            counters.forEach((key, counter) -> top.add(
+                    new HeavyHitter(key, counter.count * sampleRate, counter.error * sampleRate)));
+        } finally {
+            lock.unlock();
+        }
+
+        top.sort(Comparator.comparingLong(HeavyHitter::count).reversed());
+        return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+    }
+
+    private void add(String key) {
+        decayIfDue();
+
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count++;
+            return;
+        }
+
+        if (counters.size() < capacity) {
+            counters.put(key, new Counter(1, 0));
+            return;
+        }
+
+        Map.Entry<String, Counter> least = null;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (least == null || entry.getValue().count < least.getValue().count)
+                least = entry;
+        }
+        long inherited = least.getValue().count;
+        counters.remove(least.getKey());
+        counters.put(key, new Counter(inherited + 1, inherited));
+    }
+
+    private void decayIfDue() {
+        long now = nanoClock.getAsLong();
+        if (now - nextDecayNanos < 0)
+            return;
+
+        // Catches up on every half life elapsed since the last decay
+        long halvings = 1 + (now - nextDecayNanos) / halfLifeNanos;
+        nextDecayNanos += halvings * halfLifeNanos;
+        int shift = (int) Math.min(halvings, 63);
+        Iterator<Counter> iterator = counters.values().iterator();
+        while (iterator.hasNext()) {
+            Counter counter = iterator.next();
+            counter.count >>= shift;
+            counter.error >>= shift;
+            if (counter.count == 0)
+                iterator.remove();
+        }
+    }
+
+    public record HeavyHitter(String key, long count, long error) {
+    }
+
+    private static final class Counter {
+        private long count;
+        private long error;
+
+        private Counter(long count, long error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.omarahmed42.socialmedia.metrics;
+
+/**
+ * A reaction counter as measured by this node.
+ *
+ * @param ownerId             the post or comment the counter belongs to
+ * @param incrementsPerSecond increments of the last measurement window
+ * @param shards              number of keys the counter is spread over, 0 when
+ *                            it is not sharded
+ */
+public record HotCounter(long ownerId, double incrementsPerSecond, int shards) {
+}
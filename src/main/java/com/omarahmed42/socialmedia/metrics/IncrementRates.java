@@ -0,0 +1,67 @@
+package com.omarahmed42.socialmedia.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Increments per second of a set of counters, measured over windows that are
+ * closed by {@link #rotate()}. Only counters incremented during a window are
+ * tracked, so memory is bounded by the traffic of one window.
+ */
+public class IncrementRates {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final LongSupplier nanoClock;
+    private volatile Map<Long, LongAdder> window = new ConcurrentHashMap<>();
+    private volatile Map<Long, Double> lastRates = Map.of();
+    private long windowStartNanos;
+
+    public IncrementRates() {
+        this(System::nanoTime);
+    }
+
+    IncrementRates(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.windowStartNanos = nanoClock.getAsLong();
+    }
+
+    public void record(long id) {
+        record(id, 1);
+    }
+
+    /**
+     * Records several increments of a counter at once, such as an aggregated
+     * update.
+     */
+    public void record(long id, long increments) {
+        window.computeIfAbsent(id, key -> new LongAdder()).add(increments);
+    }
+
+    /**
+     * Closes the current window and returns the increments per second of every
+     * counter incremented during it.
+     */
+    public synchronized Map<Long, Double> rotate() {
+        Map<Long, LongAdder> closed = window;
+        window = new ConcurrentHashMap<>();
+        long now = nanoClock.getAsLong();
+        double seconds = Math.max(now - windowStartNanos, 1) / NANOS_PER_SECOND;
+        windowStartNanos = now;
+
+        Map<Long, Double> rates = new HashMap<>(closed.size() * 2);
+        closed.forEach((id, increments) -> rates.put(id, increments.sum() / seconds));
+        lastRates = Map.copyOf(rates);
+        return lastRates;
+    }
+
+    /**
+     * Returns the rates of the last closed window.
+     */
+    public Map<Long, Double> lastRates() {
+        return lastRates;
+    }
+}
@@ -0,0 +1,91 @@
+package com.omarahmed42.socialmedia.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of the newsfeed fanout pipeline, exported through
+ * {@code /actuator/prometheus} with percentile histograms.
+ * <p>
+ * Publish times are read from the snowflake post id, so
+ * {@code newsfeed.metrics.snowflake.epoch} and
+ * {@code newsfeed.metrics.snowflake.timestamp-shift} have to match the uid
+ * generator.
+ */
+@Component
+public class NewsfeedMetrics {
+
+    private static final Duration MAX_EXPECTED_LAG = Duration.ofMinutes(10);
+
+    private final MeterRegistry meterRegistry;
+    private final long snowflakeEpoch;
+    private final int snowflakeTimestampShift;
+
+    private final Timer fanoutLag;
+    private final DistributionSummary fanoutFriends;
+    private final Timer publishToVisible;
+
+    public NewsfeedMetrics(MeterRegistry meterRegistry,
+            @Value("${newsfeed.metrics.snowflake.epoch:1288834974657}") long snowflakeEpoch,
+            @Value("${newsfeed.metrics.snowflake.timestamp-shift:22}") int snowflakeTimestampShift) {
+        this.meterRegistry = meterRegistry;
+        this.snowflakeEpoch = snowflakeEpoch;
+        this.snowflakeTimestampShift = snowflakeTimestampShift;
+
+        this.fanoutLag = Timer.builder("newsfeed.fanout.lag")
+                .description("Time from a newsfeed event being sent to its fanout starting")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(MAX_EXPECTED_LAG)
+                .register(meterRegistry);
+        this.fanoutFriends = DistributionSummary.builder("newsfeed.fanout.friends")
+                .description("Number of newsfeeds a post is fanned out to")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.publishToVisible = Timer.builder("newsfeed.publish.visible")
+                .description("Time from a post being created to it being in its readers' newsfeeds")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(MAX_EXPECTED_LAG)
+                .register(meterRegistry);
+    }
+
+    public void recordFanoutLag(long sentAtMillis) {
+        recordSince(fanoutLag, sentAtMillis);
+    }
+
+    public Timer.Sample startFanout() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stopFanout(Timer.Sample sample, String mode) {
+        sample.stop(Timer.builder("newsfeed.fanout.duration")
+                .description("Time taken to fan a post out to its readers")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    public void recordFanoutFriends(int friends) {
+        fanoutFriends.record(friends);
+    }
+
+    public void recordVisible(Long postId) {
+        if (postId != null)
+            recordSince(publishToVisible, createdAt(postId));
+    }
+
+    public long createdAt(long postId) {
+        return (postId >>> snowflakeTimestampShift) + snowflakeEpoch;
+    }
+
+    // Clock skew between nodes can put the start slightly in the future
+    private static void recordSince(Timer timer, long startMillis) {
+        timer.record(Math.max(0L, System.currentTimeMillis() - startMillis), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,27 @@
+package com.omarahmed42.socialmedia.model;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The durable count of one reaction of a post or comment, written in batches
+ * by {@code ReactionCountWriteBehind}.
+ */
+@Data
+@Entity
+@Table(name = "reaction_count")
+@NoArgsConstructor
+public class ReactionCount implements Serializable {
+
+    @EmbeddedId
+    private ReactionCountId reactionCountId;
+
+    @Column(name = "count", nullable = false)
+    private Long count;
+}
@@ -0,0 +1,28 @@
+package com.omarahmed42.socialmedia.model;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The last flush generation committed to {@link ReactionCount} for a shard of
+ * the reaction count deltas.
+ */
+@Data
+@Entity
+@Table(name = "reaction_count_flush")
+@NoArgsConstructor
+public class ReactionCountFlush implements Serializable {
+
+    @Id
+    @Column(name = "shard", nullable = false)
+    private Integer shard;
+
+    @Column(name = "generation", nullable = false)
+    private Long generation;
+}
@@ -0,0 +1,30 @@
+package com.omarahmed42.socialmedia.model;
+
+import java.io.Serializable;
+
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Embeddable
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReactionCountId implements Serializable {
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "owner_type", length = 16, nullable = false)
+    private ReactionOwnerType ownerType;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    @Column(name = "reaction", length = 50, nullable = false)
+    private String reaction;
+}
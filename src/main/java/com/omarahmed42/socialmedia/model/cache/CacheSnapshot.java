@@ -0,0 +1,63 @@
+package com.omarahmed42.socialmedia.model.cache;
+
+import java.io.Serializable;
+
+import com.omarahmed42.socialmedia.model.Comment;
+import com.omarahmed42.socialmedia.model.Post;
+import com.omarahmed42.socialmedia.model.Reaction;
+import com.omarahmed42.socialmedia.model.User;
+
+/**
+ * Flat, immutable form of an entity as it is stored in the cache.
+ * Associations are kept as ids and come back as id-only references, so
+ * nothing is lazily loaded while a snapshot is written or read.
+ */
+public interface CacheSnapshot<T> extends Serializable {
+
+    T toEntity();
+
+    static User userReference(Long id) {
+        if (id == null)
+            return null;
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    static Post postReference(Long id) {
+        if (id == null)
+            return null;
+        Post post = new Post();
+        post.setId(id);
+        return post;
+    }
+
+    static Comment commentReference(Long id) {
+        if (id == null)
+            return null;
+        Comment comment = new Comment();
+        comment.setId(id);
+        return comment;
+    }
+
+    static Reaction reactionReference(Integer id, String name) {
+        if (id == null)
+            return null;
+        Reaction reaction = new Reaction();
+        reaction.setId(id);
+        reaction.setName(name);
+        return reaction;
+    }
+
+    static Long idOf(User user) {
+        return user == null ? null : user.getId();
+    }
+
+    static Long idOf(Post post) {
+        return post == null ? null : post.getId();
+    }
+
+    static Long idOf(Comment comment) {
+        return comment == null ? null : comment.getId();
+    }
+}
@@ -0,0 +1,39 @@
+package com.omarahmed42.socialmedia.model.cache;
+
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.idOf;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.commentReference;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.reactionReference;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.userReference;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.Hibernate;
+
+import com.omarahmed42.socialmedia.model.CommentReaction;
+import com.omarahmed42.socialmedia.model.CommentReactionId;
+import com.omarahmed42.socialmedia.model.Reaction;
+
+public record CommentReactionSnapshot(Long userId, Long commentId, Integer reactionId, String reactionName,
+        LocalDateTime createdAt, LocalDateTime lastModifiedAt) implements CacheSnapshot<CommentReaction> {
+
+    public static CommentReactionSnapshot from(CommentReaction commentReaction) {
+        CommentReactionId commentReactionId = commentReaction.getCommentReactionId();
+        Reaction reaction = commentReaction.getReaction();
+        return new CommentReactionSnapshot(idOf(commentReactionId.getUser()), idOf(commentReactionId.getComment()),
+                reaction == null ? null : reaction.getId(), reaction == null || !Hibernate.isInitialized(reaction) ? null : reaction.getName(),
+                commentReaction.getCreatedAt(), commentReaction.getLastModifiedAt());
+    }
+
+    @Override
+    public CommentReaction toEntity() {
+        CommentReactionId commentReactionId = new CommentReactionId();
+        commentReactionId.setUser(userReference(userId));
+        commentReactionId.setComment(commentReference(commentId));
+
+        CommentReaction commentReaction = new CommentReaction(commentReactionId);
+        commentReaction.setReaction(reactionReference(reactionId, reactionName));
+        commentReaction.setCreatedAt(createdAt);
+        commentReaction.setLastModifiedAt(lastModifiedAt);
+        return commentReaction;
+    }
+}
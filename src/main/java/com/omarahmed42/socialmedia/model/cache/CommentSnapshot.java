@@ -0,0 +1,33 @@
+package com.omarahmed42.socialmedia.model.cache;
+
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.idOf;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.postReference;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.userReference;
+
+import java.time.LocalDateTime;
+
+import com.omarahmed42.socialmedia.enums.CommentStatus;
+import com.omarahmed42.socialmedia.model.Comment;
+
+public record CommentSnapshot(Long id, String content, CommentStatus commentStatus, Long postId, Long userId,
+        LocalDateTime createdAt, LocalDateTime lastModifiedAt) implements CacheSnapshot<Comment> {
+
+    public static CommentSnapshot from(Comment comment) {
+        return new CommentSnapshot(comment.getId(), comment.getContent(), comment.getCommentStatus(),
+                idOf(comment.getPost()), idOf(comment.getUser()), comment.getCreatedAt(),
+                comment.getLastModifiedAt());
+    }
+
+    @Override
+    public Comment toEntity() {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setContent(content);
+        comment.setCommentStatus(commentStatus);
+        comment.setPost(postReference(postId));
+        comment.setUser(userReference(userId));
+        comment.setCreatedAt(createdAt);
+        comment.setLastModifiedAt(lastModifiedAt);
+        return comment;
+    }
+}
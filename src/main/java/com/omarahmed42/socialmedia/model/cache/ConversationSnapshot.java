@@ -0,0 +1,27 @@
+package com.omarahmed42.socialmedia.model.cache;
+
+import java.time.LocalDateTime;
+
+import com.omarahmed42.socialmedia.model.Conversation;
+
+/**
+ * Members are not part of the snapshot, they are always read through
+ * {@code findConversationById} or the member repository.
+ */
+public record ConversationSnapshot(Long id, String name, Boolean isGroup, LocalDateTime createdAt,
+        LocalDateTime lastModifiedAt) implements CacheSnapshot<Conversation> {
+
+    public static ConversationSnapshot from(Conversation conversation) {
+        return new ConversationSnapshot(conversation.getId(), conversation.getName(), conversation.getIsGroup(),
+                conversation.getCreatedAt(), conversation.getLastModifiedAt());
+    }
+
+    @Override
+    public Conversation toEntity() {
+        Conversation conversation = new Conversation(name, isGroup);
+        conversation.setId(id);
+        conversation.setCreatedAt(createdAt);
+        conversation.setLastModifiedAt(lastModifiedAt);
+        return conversation;
+    }
+}
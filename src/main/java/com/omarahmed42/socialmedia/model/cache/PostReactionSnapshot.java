@@ -0,0 +1,43 @@
+package com.omarahmed42.socialmedia.model.cache;
+
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.idOf;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.postReference;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.reactionReference;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.userReference;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.Hibernate;
+
+import com.omarahmed42.socialmedia.model.PostReaction;
+import com.omarahmed42.socialmedia.model.PostReactionId;
+import com.omarahmed42.socialmedia.model.Reaction;
+
+/**
+ * The reaction name is only kept when the reaction was already loaded,
+ * callers resolve the full reaction by id.
+ */
+public record PostReactionSnapshot(Long userId, Long postId, Integer reactionId, String reactionName,
+        LocalDateTime createdAt, LocalDateTime lastModifiedAt) implements CacheSnapshot<PostReaction> {
+
+    public static PostReactionSnapshot from(PostReaction postReaction) {
+        PostReactionId postReactionId = postReaction.getPostReactionId();
+        Reaction reaction = postReaction.getReaction();
+        return new PostReactionSnapshot(idOf(postReactionId.getUser()), idOf(postReactionId.getPost()),
+                reaction == null ? null : reaction.getId(), reaction == null || !Hibernate.isInitialized(reaction) ? null : reaction.getName(),
+                postReaction.getCreatedAt(), postReaction.getLastModifiedAt());
+    }
+
+    @Override
+    public PostReaction toEntity() {
+        PostReactionId postReactionId = new PostReactionId();
+        postReactionId.setUser(userReference(userId));
+        postReactionId.setPost(postReference(postId));
+
+        PostReaction postReaction = new PostReaction(postReactionId);
+        postReaction.setReaction(reactionReference(reactionId, reactionName));
+        postReaction.setCreatedAt(createdAt);
+        postReaction.setLastModifiedAt(lastModifiedAt);
+        return postReaction;
+    }
+}
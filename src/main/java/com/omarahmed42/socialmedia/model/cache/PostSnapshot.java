@@ -0,0 +1,32 @@
+package com.omarahmed42.socialmedia.model.cache;
+
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.idOf;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.postReference;
+import static com.omarahmed42.socialmedia.model.cache.CacheSnapshot.userReference;
+
+import java.time.LocalDateTime;
+
+import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.model.Post;
+
+public record PostSnapshot(Long id, String content, PostStatus postStatus, Long userId, Long parentId,
+        LocalDateTime createdAt, LocalDateTime lastModifiedAt) implements CacheSnapshot<Post> {
+
+    public static PostSnapshot from(Post post) {
+        return new PostSnapshot(post.getId(), post.getContent(), post.getPostStatus(), idOf(post.getUser()),
+                idOf(post.getParent()), post.getCreatedAt(), post.getLastModifiedAt());
+    }
+
+    @Override
+    public Post toEntity() {
+        Post post = new Post();
+        post.setId(id);
+        post.setContent(content);
+        post.setPostStatus(postStatus);
+        post.setUser(userReference(userId));
+        post.setParent(postReference(parentId));
+        post.setCreatedAt(createdAt);
+        post.setLastModifiedAt(lastModifiedAt);
+        return post;
+    }
+}
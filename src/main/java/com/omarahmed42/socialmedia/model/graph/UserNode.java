@@ -6,6 +6,7 @@ import java.util.List;
 
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.annotation.Version;
 import org.springframework.data.neo4j.core.schema.Id;
 import org.springframework.data.neo4j.core.schema.Node;
@@ -27,6 +28,10 @@ public class UserNode {
     @Relationship(type = "BLOCKS", direction = Direction.OUTGOING)
     private List<UserNode> blockedUsers = new ArrayList<>();
 
+    // Stored degree, written by UserNodeRepository#refreshFriendCounts whenever a friendship changes
+    @ReadOnlyProperty
+    private Long friendCount;
+
     @CreatedDate
     @Column(name = "created_at", updatable = false, nullable = false)
     private LocalDateTime createdAt;
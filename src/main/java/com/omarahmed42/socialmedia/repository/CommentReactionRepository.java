@@ -13,7 +13,7 @@ import com.omarahmed42.socialmedia.model.CommentReactionId;
 @Repository
 public interface CommentReactionRepository extends JpaRepository<CommentReaction, CommentReactionId> {
 
-    @Cacheable(cacheNames = "comment-reactions", key = "#id")
+    @Cacheable(cacheNames = "comment-reactions", key = "#id", sync = true)
     Optional<CommentReaction> findById(CommentReactionId id);
 
     @CachePut(cacheNames = "comment-reactions", key = "#commentReaction.commentReactionId")
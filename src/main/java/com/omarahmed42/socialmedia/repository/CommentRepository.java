@@ -20,7 +20,7 @@ public interface CommentRepository extends JpaRepository<Comment, Long>, JpaSpec
     @EntityGraph(attributePaths = { "post" })
     Optional<Comment> findCommentById(Long commentId);
 
-    @Cacheable(cacheNames = "comments", key = "#id")
+    @Cacheable(cacheNames = "comments", key = "#id", sync = true)
     Optional<Comment> findById(Long id);
 
     @CachePut(cacheNames = "comments", key = "#comment.id", condition = "#comment != null && #comment.id != null")
@@ -16,7 +16,7 @@ import com.omarahmed42.socialmedia.model.Conversation;
 @Repository
 public interface ConversationRepository extends JpaRepository<Conversation, Long> {
 
-    @Cacheable(cacheNames = "conversations", key = "#id")
+    @Cacheable(cacheNames = "conversations", key = "#id", sync = true)
     Optional<Conversation> findById(Long id);
 
     @EntityGraph(attributePaths = { "conversationMembers" })
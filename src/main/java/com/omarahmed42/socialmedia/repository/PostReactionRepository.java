@@ -13,7 +13,7 @@ import com.omarahmed42.socialmedia.model.PostReactionId;
 @Repository
 public interface PostReactionRepository extends JpaRepository<PostReaction, PostReactionId> {
 
-    @Cacheable(cacheNames = "post-reactions", key = "#id")
+    @Cacheable(cacheNames = "post-reactions", key = "#id", sync = true)
     Optional<PostReaction> findById(PostReactionId id);
 
     @CachePut(cacheNames = "post-reactions", key = "#postReaction.postReactionId")
@@ -1,5 +1,7 @@
 package com.omarahmed42.socialmedia.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,11 +17,12 @@ import com.omarahmed42.socialmedia.enums.PostStatus;
 import com.omarahmed42.socialmedia.model.Comment;
 import com.omarahmed42.socialmedia.model.Post;
 import com.omarahmed42.socialmedia.model.User;
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
 
 @Repository
 public interface PostRepository extends JpaRepository<Post, Long> {
 
-    @Cacheable(cacheNames = "posts", key = "#id", condition = "#id != null")
+    @Cacheable(cacheNames = "posts", key = "#id", condition = "#id != null", sync = true)
     Optional<Post> findById(Long id);
 
     @CachePut(cacheNames = "posts", key = "#post.id")
@@ -44,6 +47,20 @@ public interface PostRepository extends JpaRepository<Post, Long> {
 
 	List<Post> findAllByUserId(Long userId, Pageable page);
 
+    @Query(value = "SELECT new com.omarahmed42.socialmedia.model.cache.Newsfeed(p.user.id, p.id) FROM Post p WHERE p.user.id IN :userIds AND p.postStatus = :postStatus ORDER BY p.id DESC LIMIT :limit")
+    List<Newsfeed> findLatestNewsfeedByUserIds(@Param("userIds") Collection<Long> userIds, @Param("postStatus") PostStatus postStatus, @Param("limit") Integer limit);
+
+    @Query(value = """
+            SELECT ranked.id FROM (
+            SELECT p.id, ROW_NUMBER() OVER (PARTITION BY p.user_id ORDER BY p.id DESC) AS author_rank FROM post p
+            WHERE p.user_id IN (:userIds) AND p.post_status = :postStatus
+            ) ranked WHERE ranked.author_rank <= :perUser
+            """, nativeQuery = true)
+    List<Long> findLatestIdsPerUserIds(@Param("userIds") Collection<Long> userIds, @Param("postStatus") String postStatus, @Param("perUser") Integer perUser);
+
+    @Query(value = "SELECT p.id FROM Post p WHERE p.createdAt >= :since AND p.postStatus = :postStatus ORDER BY p.id DESC LIMIT :limit")
+    List<Long> findLatestIdsCreatedSince(@Param("since") LocalDateTime since, @Param("postStatus") PostStatus postStatus, @Param("limit") Integer limit);
+
     boolean existsByParentId(Long postId);
 
     Integer countByParentId(Long postId);
@@ -11,6 +11,6 @@ import com.omarahmed42.socialmedia.model.Reaction;
 @Repository
 public interface ReactionRepository extends JpaRepository<Reaction, Integer> {
     
-    @Cacheable(cacheNames = "reactions", key = "#id")
+    @Cacheable(cacheNames = "reactions", key = "#id", sync = true)
     Optional<Reaction> findById(Integer id);
 }
@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.UUID;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.omarahmed42.socialmedia.enums.TokenStatus;
@@ -13,4 +15,7 @@ import com.omarahmed42.socialmedia.model.RefreshToken;
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, UUID> {
 
     List<RefreshToken> findAllByUser_idAndStatus(Long userId, TokenStatus status);
+
+    @Query(value = "SELECT t.user.id FROM RefreshToken t WHERE t.status = :status AND t.validUntil > :now GROUP BY t.user.id ORDER BY MAX(t.validUntil) DESC LIMIT :limit")
+    List<Long> findLatestUserIdsByStatusAndValidAfter(@Param("status") TokenStatus status, @Param("now") Long now, @Param("limit") Integer limit);
 }
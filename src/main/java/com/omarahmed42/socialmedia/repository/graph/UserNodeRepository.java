@@ -1,5 +1,6 @@
 package com.omarahmed42.socialmedia.repository.graph;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.neo4j.repository.Neo4jRepository;
@@ -61,6 +62,31 @@ public interface UserNodeRepository extends Neo4jRepository<UserNode, Long> {
                                     """)
         long countFriends(@Param("user_id") Long userId);
 
+        // Users whose friend count was never stored are counted on the fly
+        @Query("""
+                        MATCH (user:User {userId: $user_id})
+                        RETURN CASE WHEN user.friendCount IS NULL
+                            THEN COUNT { (user)-[:FRIEND_WITH]-(:User) }
+                            ELSE user.friendCount END
+                        """)
+        long findFriendCount(@Param("user_id") Long userId);
+
+        @Query("""
+                        MATCH (user:User) WHERE user.userId IN $user_ids
+                        SET user.friendCount = COUNT { (user)-[:FRIEND_WITH]-(:User) }
+                        """)
+        void refreshFriendCounts(@Param("user_ids") Collection<Long> userIds);
+
+        @Query("""
+                        MATCH (user:User {userId: $user_id})<-[:FRIEND_WITH]->(friend:User)
+                        WHERE CASE WHEN friend.friendCount IS NULL
+                            THEN COUNT { (friend)-[:FRIEND_WITH]-(:User) }
+                            ELSE friend.friendCount END > $threshold
+                        RETURN DISTINCT friend
+                        """)
+        List<UserNode> findAllFriendsWithMoreFriendsThan(@Param("user_id") Long userId,
+                        @Param("threshold") Long threshold);
+
         @Query("""
                         MATCH (user:User {userId: $userId})-[:FRIEND_WITH]->(friend:User)-[:FRIEND_WITH]->(fof:User)
                             WHERE NOT (user)-[:FRIEND_WITH]->(fof) AND user <> fof
@@ -73,4 +99,13 @@ public interface UserNodeRepository extends Neo4jRepository<UserNode, Long> {
                             LIMIT $limit
                             """)
         List<UserNode> findRecommendedConnections(@Param("userId") Long userId, @Param("offset") Integer offset, @Param("limit") Integer limit);
+
+        // Ranks by the degree stored on every friendship change and import, without counting relationships
+        @Query("""
+                        MATCH (user:User) WHERE user.friendCount IS NOT NULL
+                        RETURN user
+                        ORDER BY user.friendCount DESC
+                        LIMIT $limit
+                        """)
+        List<UserNode> findMostConnected(@Param("limit") Integer limit);
 }
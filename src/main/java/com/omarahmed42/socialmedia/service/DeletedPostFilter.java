@@ -0,0 +1,17 @@
+package com.omarahmed42.socialmedia.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+
+public interface DeletedPostFilter {
+    void markDeleted(Long authorId, Long postId);
+
+    Set<Long> findDeleted(Collection<Long> postIds);
+
+    List<Newsfeed> claimPendingCompaction(int limit);
+
+    void expire();
+}
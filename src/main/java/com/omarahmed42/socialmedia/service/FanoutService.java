@@ -1,24 +1,23 @@
 package com.omarahmed42.socialmedia.service;
 
-import java.util.List;
-import java.util.Set;
-
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
-import com.omarahmed42.socialmedia.model.Post;
+import com.omarahmed42.socialmedia.dto.response.NewsfeedPage;
 import com.omarahmed42.socialmedia.model.cache.Newsfeed;
 
 public interface FanoutService {
-    void pushToNewsfeed(ConsumerRecord<String, Newsfeed> consumerRecord);
+    void consumeNewsfeedEvent(ConsumerRecord<String, Object> consumerRecord);
+
+    void pushToNewsfeed(Newsfeed newsfeedPost);
 
-    List<Post> getNewsfeed();
-    List<Post> getNewsfeed(Long userId);
+    NewsfeedPage getNewsfeed(Integer first, String after);
+    NewsfeedPage getNewsfeed(Long userId, Integer first, String after);
 
-    Set<Newsfeed> removeFromTargetUserNewsfeed(Long targetUserId, Long sourceUserId);
+    void removeFromTargetUserNewsfeed(Long targetUserId, Long sourceUserId);
 
-    Set<Newsfeed> removePostFromNewsfeed(Long targetUserId, Long postId);
+    void removePostFromNewsfeed(Long targetUserId, Long postId);
 
     void evictNewsfeedByUser(ConsumerRecord<String, Long> consumerRecord);
 
-    void evictNewsfeedByPost(ConsumerRecord<String, Newsfeed> consumerRecord);
+    void evictNewsfeedByPost(Newsfeed newsfeedPost);
 }
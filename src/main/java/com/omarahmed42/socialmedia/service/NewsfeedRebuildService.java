@@ -0,0 +1,7 @@
+package com.omarahmed42.socialmedia.service;
+
+public interface NewsfeedRebuildService {
+    boolean rebuildIfAbsent(Long userId);
+
+    int rebuild(Long userId);
+}
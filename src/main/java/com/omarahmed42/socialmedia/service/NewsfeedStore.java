@@ -0,0 +1,32 @@
+package com.omarahmed42.socialmedia.service;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+
+public interface NewsfeedStore {
+    void add(Long userId, Newsfeed newsfeed);
+
+    void addAll(Collection<Long> userIds, Newsfeed newsfeed);
+
+    void addToTimeline(Long authorId, Newsfeed newsfeed);
+
+    void merge(Long userId, Collection<Newsfeed> newsfeed);
+
+    boolean exists(Long userId);
+
+    List<Newsfeed> findLatest(Long userId, Long beforePostId, int limit);
+
+    List<Newsfeed> findLatestFromTimelines(Collection<Long> authorIds, Long beforePostId, int limit);
+
+    void removePost(Long userId, Long postId);
+
+    void removePost(Collection<Long> userIds, Long postId);
+
+    void removeFromTimeline(Long authorId, Long postId);
+
+    void removeByAuthor(Long userId, Long authorId);
+
+    void removeByAuthor(Collection<Long> userIds, Long authorId);
+}
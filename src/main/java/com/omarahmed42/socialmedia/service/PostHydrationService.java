@@ -0,0 +1,13 @@
+package com.omarahmed42.socialmedia.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.omarahmed42.socialmedia.model.Post;
+
+public interface PostHydrationService {
+    PostHydration hydrate(Collection<Long> postIds);
+
+    record PostHydration(Map<Long, Post> posts, int hits, int misses) {
+    }
+}
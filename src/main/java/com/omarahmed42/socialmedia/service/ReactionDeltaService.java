@@ -0,0 +1,14 @@
+package com.omarahmed42.socialmedia.service;
+
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import com.omarahmed42.socialmedia.dto.event.ReactionDeltaEvent;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+
+public interface ReactionDeltaService {
+    void publish(ReactionOwnerType ownerType, Long ownerId, String reaction, long delta);
+
+    void consumeReactionDeltas(List<ConsumerRecord<String, ReactionDeltaEvent>> consumerRecords);
+}
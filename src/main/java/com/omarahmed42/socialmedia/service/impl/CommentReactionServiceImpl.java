@@ -2,11 +2,13 @@ package com.omarahmed42.socialmedia.service.impl;
 
 import java.util.Optional;
 
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.hibernate.Hibernate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.omarahmed42.socialmedia.enums.CommentStatus;
 import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
 import com.omarahmed42.socialmedia.exception.CommentNotFoundException;
 import com.omarahmed42.socialmedia.exception.ForbiddenPostAccessException;
 import com.omarahmed42.socialmedia.exception.ReactionNotFoundException;
@@ -22,7 +24,7 @@ import com.omarahmed42.socialmedia.repository.UserRepository;
 import com.omarahmed42.socialmedia.service.BlockingService;
 import com.omarahmed42.socialmedia.service.CommentReactionService;
 import com.omarahmed42.socialmedia.service.FriendService;
-import com.omarahmed42.socialmedia.service.StatisticsService;
+import com.omarahmed42.socialmedia.service.ReactionDeltaService;
 import com.omarahmed42.socialmedia.util.SecurityUtils;
 
 @Service
@@ -37,22 +39,24 @@ public class CommentReactionServiceImpl implements CommentReactionService {
     private final BlockingService blockingService;
     private final FriendService friendService;
 
-    private final StatisticsService statisticsService;
+    private final ReactionDeltaService reactionDeltaService;
 
     public CommentReactionServiceImpl(UserRepository userRepository, CommentRepository commentRepository,
             ReactionRepository reactionRepository, CommentReactionRepository commentReactionRepository,
             BlockingService blockingService, FriendService friendService,
-            @Qualifier("commentReactionsStatisticsService") StatisticsService statisticsService) {
+            ReactionDeltaService reactionDeltaService) {
         this.userRepository = userRepository;
         this.commentRepository = commentRepository;
         this.reactionRepository = reactionRepository;
         this.commentReactionRepository = commentReactionRepository;
         this.blockingService = blockingService;
         this.friendService = friendService;
-        this.statisticsService = statisticsService;
+        this.reactionDeltaService = reactionDeltaService;
     }
 
+    // Counter deltas are published once the reaction committed
     @Override
+    @Transactional
     public CommentReaction saveCommentReaction(Integer reactionId, Long commentId) {
         SecurityUtils.throwIfNotAuthenticated();
 
@@ -104,20 +108,20 @@ public class CommentReactionServiceImpl implements CommentReactionService {
         if (retrievedCommentReaction != null && (oldReactionId == null && reactionId == null))
             return retrievedCommentReaction;
 
+        Reaction reaction = reactionId == null ? null
+                : reactionRepository.findById(reactionId).orElseThrow(
+                        () -> new ReactionNotFoundException("Reaction with id " + reactionId + " not found"));
         CommentReaction commentReaction = new CommentReaction(commentReactionId);
-        commentReaction.setReaction(reactionId == null ? null : reactionRepository.getReferenceById(reactionId));
+        commentReaction.setReaction(reaction);
         commentReaction = commentReactionRepository.save(commentReaction);
         if (oldReactionId != null) {
-            Reaction reaction = reactionRepository.findById(oldReactionId).orElseThrow(
+            Reaction oldReaction = resolve(retrievedCommentReaction.getReaction()).orElseThrow(
                     () -> new ReactionNotFoundException("Reaction with id " + oldReactionId + " not found"));
-            statisticsService.decrement(commentId.toString(), reaction.getName());
+            reactionDeltaService.publish(ReactionOwnerType.COMMENT, commentId, oldReaction.getName(), -1);
         }
 
-        if (reactionId != null) {
-            Reaction reaction = reactionRepository.findById(reactionId).orElseThrow(
-                    () -> new ReactionNotFoundException("Reaction with id " + reactionId + " not found"));
-            statisticsService.increment(commentId.toString(), reaction.getName());
-        }
+        if (reaction != null)
+            reactionDeltaService.publish(ReactionOwnerType.COMMENT, commentId, reaction.getName(), 1);
         return commentReaction;
     }
 
@@ -138,6 +142,16 @@ public class CommentReactionServiceImpl implements CommentReactionService {
         commentReactionId.setUser(userRepository.getReferenceById(authenticatedUserId));
         Optional<CommentReaction> commentReaction = commentReactionRepository.findById(commentReactionId);
 
-        return commentReaction.isPresent() ? commentReaction.get().getReaction() : null;
+        if (commentReaction.isEmpty() || commentReaction.get().getReaction() == null)
+            return null;
+
+        return resolve(commentReaction.get().getReaction()).orElse(null);
+    }
+
+    // Cached reactions only carry the reaction name when it was loaded before caching
+    private Optional<Reaction> resolve(Reaction reaction) {
+        if (Hibernate.isInitialized(reaction) && reaction.getName() != null)
+            return Optional.of(reaction);
+        return reactionRepository.findById(reaction.getId());
     }
 }
@@ -3,46 +3,43 @@ package com.omarahmed42.socialmedia.service.impl;
 import java.time.Duration;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.configuration.ReactionShardingProperties;
 import com.omarahmed42.socialmedia.dto.response.ReactionStatistics;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
 import com.omarahmed42.socialmedia.exception.InvalidInputException;
+import com.omarahmed42.socialmedia.metrics.HotCounter;
 import com.omarahmed42.socialmedia.model.Reaction;
-import com.omarahmed42.socialmedia.repository.CommentReactionRepository;
 import com.omarahmed42.socialmedia.repository.ReactionRepository;
-import com.omarahmed42.socialmedia.service.AsyncService;
 import com.omarahmed42.socialmedia.service.StatisticsService;
+import com.omarahmed42.socialmedia.util.RedisKeys;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Service("commentReactionsStatisticsService")
 public class CommentReactionsStatisticsService implements StatisticsService {
 
-    private final AsyncService asyncService;
-
-    private final CommentReactionRepository commentReactionRepository;
     private final ReactionRepository reactionRepository;
-    private final RedisTemplate<String, Long> redisTemplate;
+    private final ReactionCounters reactionCounters;
 
-    private static final String COMMENT_PREFIX = "comment";
-    private static final String KEY_DELIMITER = ":";
+    private static final Duration COUNT_TIME_TO_LIVE = Duration.ofHours(12);
 
     private Set<String> validActivityTypes;
 
-    public CommentReactionsStatisticsService(CommentReactionRepository commentReactionRepository,
-            ReactionRepository reactionRepository, RedisTemplate<String, Long> redisTemplate,
-            AsyncService asyncService) {
-        this.commentReactionRepository = commentReactionRepository;
+    public CommentReactionsStatisticsService(ReactionRepository reactionRepository, StringRedisTemplate redisTemplate,
+            ReactionCountWriteBehind writeBehind, CachingProperties cachingProperties,
+            ReactionShardingProperties shardingProperties, MeterRegistry meterRegistry) {
         this.reactionRepository = reactionRepository;
-        this.redisTemplate = redisTemplate;
-        this.asyncService = asyncService;
 
         this.validActivityTypes = new HashSet<>();
 
@@ -53,6 +50,9 @@ public class CommentReactionsStatisticsService implements StatisticsService {
                 .map(Reaction::getName)
                 .filter(StringUtils::isNotBlank).distinct()
                 .collect(Collectors.toSet());
+        this.reactionCounters = new ReactionCounters(redisTemplate, writeBehind, ReactionOwnerType.COMMENT,
+                validActivityTypes, RedisKeys::commentReactions, COUNT_TIME_TO_LIVE, cachingProperties.getLock(),
+                shardingProperties, meterRegistry);
     }
 
     @Override
@@ -63,15 +63,7 @@ public class CommentReactionsStatisticsService implements StatisticsService {
         if (StringUtils.isBlank(activityType))
             throw new IllegalArgumentException("Activity type cannot be empty");
 
-        final String key = key(commentId, activityType);
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        Long count = ops.get(key);
-        if (count == null)
-            count = commentReactionRepository.countByReactionNameAndCommentReactionId_Comment_id(activityType,
-                    Long.parseLong(commentId));
-
-        ops.set(key, count, Duration.ofHours(12));
-        return count;
+        return reactionCounters.get(Long.parseLong(commentId)).getOrDefault(activityType, 0L);
     }
 
     @Override
@@ -91,12 +83,7 @@ public class CommentReactionsStatisticsService implements StatisticsService {
         if (!isValid(activityType))
             throw new IllegalArgumentException("Invalid activity type");
 
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        final String key = key(commentId, activityType);
-
-        ops.setIfAbsent(key, commentReactionRepository.countByReactionNameAndCommentReactionId_Comment_id(activityType,
-                Long.parseLong(commentId)), Duration.ofHours(12));
-        ops.increment(key, value);
+        reactionCounters.add(Long.parseLong(commentId), activityType, value);
     }
 
     @Override
@@ -110,16 +97,7 @@ public class CommentReactionsStatisticsService implements StatisticsService {
         if (!isValid(activityType))
             throw new IllegalArgumentException("Invalid activity type");
 
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        final String key = key(commentId, activityType);
-
-        ops.setIfAbsent(key, commentReactionRepository.countByReactionNameAndCommentReactionId_Comment_id(activityType,
-                Long.parseLong(commentId)), Duration.ofHours(12)); // fix this
-        ops.increment(key);
-    }
-
-    private String key(String commentId, String activityType) {
-        return COMMENT_PREFIX + KEY_DELIMITER + commentId + KEY_DELIMITER + activityType;
+        reactionCounters.add(Long.parseLong(commentId), activityType, 1);
     }
 
     private boolean isValid(String activityType) {
@@ -143,12 +121,7 @@ public class CommentReactionsStatisticsService implements StatisticsService {
         if (!isValid(activityType))
             throw new IllegalArgumentException("Invalid activity type");
 
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        final String key = key(commentId, activityType);
-
-        ops.setIfAbsent(key, commentReactionRepository.countByReactionNameAndCommentReactionId_Comment_id(activityType,
-                Long.parseLong(commentId)), Duration.ofHours(12));
-        ops.decrement(key, value);
+        reactionCounters.add(Long.parseLong(commentId), activityType, -value);
     }
 
     @Override
@@ -162,12 +135,7 @@ public class CommentReactionsStatisticsService implements StatisticsService {
         if (!isValid(activityType))
             throw new IllegalArgumentException("Invalid activity type");
 
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        final String key = key(commentId, activityType);
-
-        ops.setIfAbsent(key, commentReactionRepository.countByReactionNameAndCommentReactionId_Comment_id(activityType,
-                Long.parseLong(commentId)), Duration.ofHours(12));
-        ops.decrement(key);
+        reactionCounters.add(Long.parseLong(commentId), activityType, -1);
     }
 
     @Override
@@ -175,40 +143,32 @@ public class CommentReactionsStatisticsService implements StatisticsService {
         if (commentId == null)
             throw new InvalidInputException("Comment id cannot be null");
 
+        Map<String, Long> counters = reactionCounters.get(Long.parseLong(commentId));
         ReactionStatistics reactionStatistics = new ReactionStatistics();
-        CompletableFuture<Long> likeCountFuture = asyncService.getCompletable(() -> getCountAsync(commentId, "like"));
-        CompletableFuture<Long> loveCountFuture = asyncService.getCompletable(() -> getCountAsync(commentId, "love"));
-        CompletableFuture<Long> angryCountFuture = asyncService.getCompletable(() -> getCountAsync(commentId, "angry"));
-        CompletableFuture<Long> sadCountFuture = asyncService.getCompletable(() -> getCountAsync(commentId, "sad"));
-        CompletableFuture<Long> laughCountFuture = asyncService.getCompletable(() -> getCountAsync(commentId, "laugh"));
-
-        CompletableFuture.allOf(likeCountFuture, loveCountFuture, angryCountFuture, sadCountFuture, laughCountFuture)
-                .join();
-        reactionStatistics.setLikeCount(likeCountFuture.join());
-        reactionStatistics.setLoveCount(loveCountFuture.join());
-        reactionStatistics.setAngryCount(angryCountFuture.join());
-        reactionStatistics.setSadCount(sadCountFuture.join());
-        reactionStatistics.setLaughCount(laughCountFuture.join());
+        reactionStatistics.setLikeCount(counters.getOrDefault("like", 0L));
+        reactionStatistics.setLoveCount(counters.getOrDefault("love", 0L));
+        reactionStatistics.setAngryCount(counters.getOrDefault("angry", 0L));
+        reactionStatistics.setSadCount(counters.getOrDefault("sad", 0L));
+        reactionStatistics.setLaughCount(counters.getOrDefault("laugh", 0L));
 
         return reactionStatistics;
     }
 
-    private Future<Long> getCountAsync(String commentId, String activityType) {
-        if (commentId == null)
-            throw new IllegalArgumentException("Post id cannot be null");
-
-        if (StringUtils.isBlank(activityType))
-            throw new IllegalArgumentException("Activity type cannot be empty");
-
-        final String key = key(commentId, activityType);
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        Long count = ops.get(key);
-        if (count == null)
-            count = commentReactionRepository.countByReactionNameAndCommentReactionId_Comment_id(activityType,
-                    Long.parseLong(commentId));
+    @Scheduled(fixedDelayString = "${reactions.sharding.check-interval:PT1S}")
+    public void rebalanceCounters() {
+        reactionCounters.rebalance();
+    }
 
-        ops.set(key, count, Duration.ofHours(12));
-        return CompletableFuture.completedFuture(count);
+    /**
+     * Returns the comments whose reactions this node saw incremented the most in
+     * the last measurement window.
+     */
+    public List<HotCounter> getHotCounters(int limit) {
+        return reactionCounters.hotCounters(limit);
     }
 
+    // Lets the reaction delta listener record its deltas itself and only update the counters
+    ReactionCounters reactionCounters() {
+        return reactionCounters;
+    }
 }
@@ -0,0 +1,47 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.service.DeletedPostFilter;
+import com.omarahmed42.socialmedia.service.FanoutService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Removes deleted posts from the newsfeeds of the author's friends in the
+ * background, until then readers filter them out through
+ * {@link DeletedPostFilter}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class DeletedPostCompactor {
+
+    private final DeletedPostFilter deletedPostFilter;
+    private final FanoutService fanoutService;
+
+    @Value("${newsfeed.deleted-posts.compaction.batch-size:100}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${newsfeed.deleted-posts.compaction.interval:PT30S}")
+    public void compact() {
+        List<Newsfeed> deletedPosts = deletedPostFilter.claimPendingCompaction(batchSize);
+        for (Newsfeed deletedPost : deletedPosts) {
+            try {
+                fanoutService.evictNewsfeedByPost(deletedPost);
+            } catch (RuntimeException e) {
+                log.error("Could not compact deleted post {} out of the newsfeeds", deletedPost.getPostId(), e);
+            }
+        }
+
+        if (!deletedPosts.isEmpty())
+            log.debug("Compacted {} deleted posts out of the newsfeeds", deletedPosts.size());
+        deletedPostFilter.expire();
+    }
+}
@@ -1,32 +1,37 @@
 package com.omarahmed42.socialmedia.service.impl;
 
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import com.omarahmed42.socialmedia.dto.event.NewsfeedEvent;
+import com.omarahmed42.socialmedia.dto.response.NewsfeedPage;
+import com.omarahmed42.socialmedia.enums.NewsfeedEventType;
+import com.omarahmed42.socialmedia.enums.PostStatus;
 import com.omarahmed42.socialmedia.exception.ForbiddenNewsfeedAccessException;
-import com.omarahmed42.socialmedia.exception.InternalServerErrorException;
+import com.omarahmed42.socialmedia.exception.InvalidInputException;
+import com.omarahmed42.socialmedia.metrics.NewsfeedMetrics;
 import com.omarahmed42.socialmedia.model.Post;
 import com.omarahmed42.socialmedia.model.cache.Newsfeed;
 import com.omarahmed42.socialmedia.model.graph.UserNode;
-import com.omarahmed42.socialmedia.repository.PostRepository;
 import com.omarahmed42.socialmedia.repository.graph.UserNodeRepository;
+import com.omarahmed42.socialmedia.service.DeletedPostFilter;
 import com.omarahmed42.socialmedia.service.FanoutService;
+import com.omarahmed42.socialmedia.service.NewsfeedRebuildService;
+import com.omarahmed42.socialmedia.service.NewsfeedStore;
+import com.omarahmed42.socialmedia.service.PostHydrationService;
+import com.omarahmed42.socialmedia.util.CursorUtils;
 import com.omarahmed42.socialmedia.util.SecurityUtils;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -35,57 +40,87 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class FanoutServiceImpl implements FanoutService {
 
-    private static final String NEWSFEED_KEY = "newsfeed";
-    private static final int MAX_NEWSFEED_SIZE = 250;
+    private final NewsfeedStore newsfeedStore;
+    private final PostHydrationService postHydrationService;
+    private final NewsfeedRebuildService newsfeedRebuildService;
+    private final DeletedPostFilter deletedPostFilter;
+    private final NewsfeedMetrics newsfeedMetrics;
 
-    private final CacheManager cacheManager;
-
-    private final PostRepository postRepository;
     private final UserNodeRepository userNodeRepository;
 
+    @Value("${newsfeed.page.max-size:50}")
+    private int maxNewsfeedPageSize;
+
+    @Value("${newsfeed.fanout.hybrid.enabled:true}")
+    private boolean hybridFanoutEnabled;
+
+    @Value("${newsfeed.fanout.hybrid.friend-threshold:5000}")
+    private long hybridFanoutFriendThreshold;
+
     @Override
-    @KafkaListener(topics = "newsfeed")
-    public void pushToNewsfeed(ConsumerRecord<String, Newsfeed> consumerRecord) {
-        Newsfeed newsfeedPost = consumerRecord.value();
-        Cache newsfeedCache = getCache(NEWSFEED_KEY);
-
-        List<UserNode> friends = userNodeRepository.findAllFriendsById(newsfeedPost.getUserId());
-        for (UserNode friend : friends) {
-            Long friendId = friend.getUserId();
-            Set<Newsfeed> retrievedNewsfeed = newsfeedCache.get(friendId, HashSet::new);
-            if (retrievedNewsfeed.contains(newsfeedPost))
-                return;
-
-            log.info("Retrieved newsfeed: " + retrievedNewsfeed.toString());
-            Set<Newsfeed> newsfeed = retrievedNewsfeed.stream()
-                    .sorted(Comparator.comparing(Newsfeed::getPostId).reversed())
-                    .limit(MAX_NEWSFEED_SIZE - 1L)
-                    .collect(Collectors.toSet());
-
-            newsfeed.add(newsfeedPost);
-            newsfeedCache.put(friendId, newsfeed);
+    @KafkaListener(topics = "newsfeed", groupId = "${newsfeed.fanout.group-id:newsfeed-fanout}", containerFactory = "fanoutKafkaListenerContainerFactory")
+    public void consumeNewsfeedEvent(ConsumerRecord<String, Object> consumerRecord) {
+        NewsfeedEvent newsfeedEvent = toNewsfeedEvent(consumerRecord.value());
+        if (newsfeedEvent == null || newsfeedEvent.getType() == null) {
+            log.error("Newsfeed event with key " + consumerRecord.key() + " is empty");
+            return;
         }
+
+        newsfeedMetrics.recordFanoutLag(consumerRecord.timestamp());
+        switch (newsfeedEvent.getType()) {
+            case PUBLISHED -> pushToNewsfeed(newsfeedEvent.toNewsfeed());
+            // Friends' newsfeeds filter the post out on read and are compacted in the background
+            case DELETED -> newsfeedStore.removeFromTimeline(newsfeedEvent.getUserId(), newsfeedEvent.getPostId());
+        }
+    }
+
+    // Producers older than NewsfeedEvent sent the published post itself to the same topic
+    private static NewsfeedEvent toNewsfeedEvent(Object value) {
+        if (value instanceof Newsfeed newsfeedPost)
+            return new NewsfeedEvent(NewsfeedEventType.PUBLISHED, newsfeedPost.getUserId(), newsfeedPost.getPostId());
+
+        return value instanceof NewsfeedEvent newsfeedEvent ? newsfeedEvent : null;
     }
 
-    private Cache getCache(String cacheName) {
-        Cache cache = cacheManager.getCache(NEWSFEED_KEY);
-        if (cache == null) {
-            log.error("Critical Error: \"" + cacheName + "\" cache does not exist or cannot be created");
-            throw new InternalServerErrorException();
+    @Override
+    public void pushToNewsfeed(Newsfeed newsfeedPost) {
+        Timer.Sample fanout = newsfeedMetrics.startFanout();
+        if (isPulledAuthor(newsfeedPost.getUserId())) {
+            // Readers pull this author's posts at read time, so the fanout cost does not grow with the audience
+            newsfeedStore.addToTimeline(newsfeedPost.getUserId(), newsfeedPost);
+            newsfeedMetrics.stopFanout(fanout, "pull");
+            newsfeedMetrics.recordVisible(newsfeedPost.getPostId());
+            return;
         }
-        return cache;
+
+        List<Long> friendIds = toUserIds(userNodeRepository.findAllFriendsById(newsfeedPost.getUserId()));
+        newsfeedStore.addAll(friendIds, newsfeedPost);
+        newsfeedMetrics.stopFanout(fanout, "push");
+        newsfeedMetrics.recordFanoutFriends(friendIds.size());
+        newsfeedMetrics.recordVisible(newsfeedPost.getPostId());
+    }
+
+    private boolean isPulledAuthor(Long authorId) {
+        // Same stored degree the readers use to pick the authors they pull
+        return hybridFanoutEnabled && userNodeRepository.findFriendCount(authorId) > hybridFanoutFriendThreshold;
+    }
+
+    private List<Long> toUserIds(List<UserNode> users) {
+        return users.stream()
+                .map(UserNode::getUserId)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     @Override
-    public List<Post> getNewsfeed() {
+    public NewsfeedPage getNewsfeed(Integer first, String after) {
         SecurityUtils.throwIfNotAuthenticated();
         Long authenticatedUserId = SecurityUtils.getAuthenticatedUserId();
-        return getNewsfeed(authenticatedUserId);
+        return getNewsfeed(authenticatedUserId, first, after);
     }
 
     @Override
-    @Cacheable(cacheNames = NEWSFEED_KEY, key = "#userId")
-    public List<Post> getNewsfeed(Long userId) {
+    public NewsfeedPage getNewsfeed(Long userId, Integer first, String after) {
         SecurityUtils.throwIfNotAuthenticated();
         Long authenticatedUserId = SecurityUtils.getAuthenticatedUserId();
         if (!authenticatedUserId.equals(userId)) {
@@ -94,49 +129,69 @@ public class FanoutServiceImpl implements FanoutService {
             throw new ForbiddenNewsfeedAccessException("Forbidden access to newsfeed, this attempt will be logged");
         }
 
-        Cache newsfeedCache = getCache(NEWSFEED_KEY);
+        if (first == null || first < 1)
+            throw new InvalidInputException("Page size must be a positive number");
 
-        Set<Newsfeed> retrievedNewsfeed = newsfeedCache.get(userId, HashSet::new);
+        final int pageSize = Math.min(first, maxNewsfeedPageSize);
+        final Long beforePostId = CursorUtils.decode(after);
 
-        Set<Newsfeed> missingNewsfeed = new HashSet<>();
-        List<Post> result = new LinkedList<>();
+        // One extra entry tells whether another page exists
+        List<Newsfeed> pushedNewsfeed = newsfeedStore.findLatest(userId, beforePostId, pageSize + 1);
+        if (pushedNewsfeed.isEmpty() && newsfeedRebuildService.rebuildIfAbsent(userId))
+            pushedNewsfeed = newsfeedStore.findLatest(userId, beforePostId, pageSize + 1);
 
-        Cache postsCache = cacheManager.getCache("posts");
-        for (Newsfeed newsfeed : retrievedNewsfeed) {
-            Post post = postsCache.get(newsfeed.getPostId(), Post.class);
-            if (post == null) {
-                missingNewsfeed.add(newsfeed);
-            } else {
-                result.add(post);
-            }
-        }
+        List<Newsfeed> retrievedNewsfeed = mergeWithPulledAuthors(userId, pushedNewsfeed, beforePostId,
+                pageSize + 1);
 
-        if (!missingNewsfeed.isEmpty()) {
-            List<Long> missingIds = missingNewsfeed.stream()
-                    .filter(Objects::nonNull)
-                    .map(Newsfeed::getPostId)
-                    .distinct()
-                    .toList();
-            List<Post> remainingPosts = postRepository.findAllById(missingIds);
-            cachePosts(remainingPosts);
-            result.addAll(remainingPosts);
-        }
+        boolean hasNextPage = retrievedNewsfeed.size() > pageSize;
+        List<Newsfeed> page = hasNextPage ? retrievedNewsfeed.subList(0, pageSize) : retrievedNewsfeed;
 
-        log.info("Result size: {}", result.size());
-        return result;
+        List<Post> posts = hydrate(userId, page);
+        String endCursor = page.isEmpty() ? null : CursorUtils.encode(page.get(page.size() - 1).getPostId());
+
+        log.debug("Result size: {}", posts.size());
+        return new NewsfeedPage(posts, endCursor, hasNextPage);
     }
 
-    private void cachePosts(Iterable<Post> posts) {
-        Cache postsCache = cacheManager.getCache("posts");
-        if (postsCache == null) {
-            log.error("""
-                    Critical Error: "posts" cache does not exist or cannot be created
-                    """);
-            return;
-        }
-        for (Post post : posts) {
-            postsCache.put(post.getId(), post);
-        }
+    private List<Post> hydrate(Long userId, List<Newsfeed> newsfeed) {
+        List<Long> postIds = newsfeed.stream().map(Newsfeed::getPostId).toList();
+
+        Set<Long> deletedPostIds = deletedPostFilter.findDeleted(postIds);
+        // Cleans this reader's newsfeed right away instead of waiting for the compaction
+        deletedPostIds.forEach(postId -> newsfeedStore.removePost(userId, postId));
+
+        Map<Long, Post> postsById = postHydrationService
+                .hydrate(postIds.stream().filter(postId -> !deletedPostIds.contains(postId)).toList())
+                .posts();
+
+        return postIds.stream()
+                .map(postsById::get)
+                .filter(Objects::nonNull)
+                .filter(post -> post.getPostStatus() == PostStatus.PUBLISHED)
+                .toList();
+    }
+
+    private List<Newsfeed> mergeWithPulledAuthors(Long userId, List<Newsfeed> pushedNewsfeed, Long beforePostId,
+            int limit) {
+        if (!hybridFanoutEnabled)
+            return pushedNewsfeed;
+
+        List<Long> pulledAuthorIds = toUserIds(
+                userNodeRepository.findAllFriendsWithMoreFriendsThan(userId, hybridFanoutFriendThreshold));
+        if (pulledAuthorIds.isEmpty())
+            return pushedNewsfeed;
+
+        List<Newsfeed> pulledNewsfeed = newsfeedStore.findLatestFromTimelines(pulledAuthorIds, beforePostId, limit);
+
+        // An author may have crossed the threshold recently and have posts in both places
+        Map<Long, Newsfeed> newsfeedByPostId = new HashMap<>();
+        pushedNewsfeed.forEach(newsfeed -> newsfeedByPostId.putIfAbsent(newsfeed.getPostId(), newsfeed));
+        pulledNewsfeed.forEach(newsfeed -> newsfeedByPostId.putIfAbsent(newsfeed.getPostId(), newsfeed));
+
+        return newsfeedByPostId.values().stream()
+                .sorted(Comparator.comparing(Newsfeed::getPostId).reversed())
+                .limit(limit)
+                .toList();
     }
 
     @KafkaListener(topics = "newsfeed-following-removal")
@@ -148,58 +203,42 @@ public class FanoutServiceImpl implements FanoutService {
     }
 
     @Override
-    @CachePut(cacheNames = NEWSFEED_KEY, key = "#targetUserId")
-    public Set<Newsfeed> removeFromTargetUserNewsfeed(Long targetUserId, Long sourceUserId) {
+    public void removeFromTargetUserNewsfeed(Long targetUserId, Long sourceUserId) {
         if (targetUserId == null || sourceUserId == null)
             throw new IllegalArgumentException("Target/Source user cannot be null");
 
         if (targetUserId.equals(sourceUserId))
             throw new IllegalArgumentException("target user cannot be the same as the source user");
 
-        Cache newsfeedCache = getCache(NEWSFEED_KEY);
-
-        Set<Newsfeed> newsfeed = newsfeedCache.get(targetUserId, HashSet::new);
-        newsfeed.removeIf(nf -> nf.getUserId().equals(sourceUserId));
-        return newsfeed;
+        newsfeedStore.removeByAuthor(targetUserId, sourceUserId);
     }
 
     @Override
-    @CachePut(cacheNames = NEWSFEED_KEY, key = "#targetUserId")
-    public Set<Newsfeed> removePostFromNewsfeed(Long targetUserId, Long postId) {
+    public void removePostFromNewsfeed(Long targetUserId, Long postId) {
         if (targetUserId == null)
             throw new IllegalArgumentException("Target user cannot be null");
 
         if (postId == null)
             throw new IllegalArgumentException("Post cannot be null");
 
-        Cache newsfeedCache = getCache(NEWSFEED_KEY);
-
-        Set<Newsfeed> newsfeed = newsfeedCache.get(targetUserId, HashSet::new);
-        newsfeed.removeIf(nf -> nf.getPostId().equals(postId));
-        return newsfeed;
+        newsfeedStore.removePost(targetUserId, postId);
     }
 
-    @KafkaListener(topics = "newsfeed-post-eviction")
-    public void evictNewsfeedByPost(ConsumerRecord<String, Newsfeed> consumerRecord) {
-        Newsfeed newsfeedPost = consumerRecord.value();
+    @Override
+    public void evictNewsfeedByPost(Newsfeed newsfeedPost) {
         Long postOwnerId = newsfeedPost.getUserId();
 
+        newsfeedStore.removeFromTimeline(postOwnerId, newsfeedPost.getPostId());
+
         List<UserNode> friends = userNodeRepository.findAllFriendsById(postOwnerId);
-        Long postId = newsfeedPost.getPostId();
-        for (UserNode friend : friends) {
-            Long friendId = friend.getUserId();
-            removePostFromNewsfeed(friendId, postId);
-        }
+        newsfeedStore.removePost(toUserIds(friends), newsfeedPost.getPostId());
     }
 
     @KafkaListener(topics = "newsfeed-user-eviction")
     public void evictNewsfeedByUser(ConsumerRecord<String, Long> consumerRecord) {
         Long userId = consumerRecord.value();
         List<UserNode> friends = userNodeRepository.findAllFriendsById(userId);
-        for (UserNode friend : friends) {
-            Long friendId = friend.getUserId();
-            removeFromTargetUserNewsfeed(friendId, userId);
-        }
+        newsfeedStore.removeByAuthor(toUserIds(friends), userId);
     }
 
 }
@@ -61,6 +61,7 @@ public class FriendServiceImpl implements FriendService {
 
             senderNode.addFriend(receiverNode);
             userNodeRepository.save(senderNode);
+            userNodeRepository.refreshFriendCounts(List.of(senderId, receiverId));
         }
     }
 
@@ -106,12 +107,14 @@ public class FriendServiceImpl implements FriendService {
         boolean isRemovedFromUserList = user.getFriends().removeIf(u -> u.getUserId().equals(friend.getUserId()));
         if (isRemovedFromUserList) {
             userNodeRepository.save(user);
+            userNodeRepository.refreshFriendCounts(List.of(userId, friendId));
             return true;
         }
 
         boolean isRemovedFromFriendList = friend.getFriends().removeIf(u -> u.getUserId().equals(user.getUserId()));
         if (isRemovedFromFriendList) {
             userNodeRepository.save(friend);
+            userNodeRepository.refreshFriendCounts(List.of(userId, friendId));
             return true;
         }
 
@@ -0,0 +1,378 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+
+/**
+ * Fixed-size feeds kept in a memory-mapped file, one slot per owner.
+ * <p>
+ * Slots are found by open addressing on the owner id. Every slot holds the
+ * owner id, its expiration in epoch millis, the entry count and up to
+ * {@code maxEntries} (post id, author id) pairs sorted by ascending post id.
+ * Once full, adding a post drops the oldest one. A slot whose feed expired is
+ * reused by the next owner that needs one; owners are never removed otherwise,
+ * so probe chains stay intact.
+ * <p>
+ * Entries are only read and written while holding the slot's stripe lock, and
+ * slots are only handed to a new owner while also holding the claim lock.
+ */
+final class MappedFeedTable implements Closeable {
+
+    private static final int MAGIC = 0x4E46_4431;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+    private static final int STRIPES = 1024;
+
+    private static final int OWNER = 0;
+    private static final int EXPIRES_AT = 8;
+    private static final int COUNT = 16;
+    private static final int ENTRIES = 24;
+    private static final int ENTRY_SIZE = 16;
+
+    private static final long EMPTY = 0L;
+
+    // Owner ids are published with volatile writes, so lock-free probes never see a torn id
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.BIG_ENDIAN);
+
+    private final int capacity;
+    private final int maxEntries;
+    private final int slotSize;
+    private final int slotsPerSegment;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final Object[] stripes;
+    private final Object claimLock = new Object();
+
+    MappedFeedTable(Path file, int capacity, int maxEntries) throws IOException {
+        if (capacity < 1 || maxEntries < 1)
+            throw new IllegalArgumentException("Feed table capacity and max entries must be at least 1");
+
+        this.capacity = capacity;
+        this.maxEntries = maxEntries;
+        this.slotSize = ENTRIES + maxEntries * ENTRY_SIZE;
+        this.slotsPerSegment = (int) Math.max(1, Math.min(Integer.MAX_VALUE, MAX_SEGMENT_SIZE / slotSize));
+        this.stripes = new Object[Math.min(STRIPES, capacity)];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Object();
+
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean created = channel.size() == 0;
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (created)
+                writeHeader();
+            else
+                checkHeader(file);
+
+            int segmentCount = (capacity + slotsPerSegment - 1) / slotsPerSegment;
+            this.segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                int slots = Math.min(slotsPerSegment, capacity - i * slotsPerSegment);
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE + (long) i * slotsPerSegment * slotSize, (long) slots * slotSize);
+            }
+        }
+    }
+
+    private void writeHeader() {
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, capacity);
+        header.putInt(12, maxEntries);
+    }
+
+    private void checkHeader(Path file) {
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            throw new IllegalStateException(file + " is not a newsfeed store file");
+
+        if (header.getInt(8) != capacity || header.getInt(12) != maxEntries)
+            throw new IllegalStateException(file + " was created with capacity " + header.getInt(8)
+                    + " and max size " + header.getInt(12) + ", restore those settings or delete the file");
+    }
+
+    boolean exists(long owner, long now) {
+        int slot = find(owner);
+        if (slot < 0)
+            return false;
+
+        synchronized (stripe(slot)) {
+            return owns(slot, owner, now);
+        }
+    }
+
+    /**
+     * Adds the post to the owner's feed and drops the oldest posts beyond the
+     * maximum size.
+     *
+     * @param create whether a feed is created for an owner without one
+     * @return whether the owner had or was given a feed
+     */
+    boolean add(long owner, long postId, long authorId, boolean create, long expiresAt, long now) {
+        return update(owner, create, now, slot -> {
+            insert(slot, postId, authorId);
+            putLong(slot, EXPIRES_AT, expiresAt);
+        });
+    }
+
+    boolean merge(long owner, List<Newsfeed> entries, long expiresAt, long now) {
+        return update(owner, true, now, slot -> {
+            for (Newsfeed entry : entries)
+                insert(slot, entry.getPostId(), entry.getUserId());
+            putLong(slot, EXPIRES_AT, expiresAt);
+        });
+    }
+
+    /**
+     * Returns the newest posts of the owner's feed older than {@code beforePostId},
+     * newest first.
+     *
+     * @param expiresAt new expiration of the feed, or zero to leave it as is
+     */
+    List<Newsfeed> findLatest(long owner, Long beforePostId, int limit, long expiresAt, long now) {
+        List<Newsfeed> newsfeed = new ArrayList<>();
+        int slot = find(owner);
+        if (slot < 0 || limit < 1)
+            return newsfeed;
+
+        synchronized (stripe(slot)) {
+            if (!owns(slot, owner, now))
+                return newsfeed;
+
+            for (int i = count(slot) - 1; i >= 0 && newsfeed.size() < limit; i--) {
+                long postId = postId(slot, i);
+                if (beforePostId == null || postId < beforePostId)
+                    newsfeed.add(new Newsfeed(authorId(slot, i), postId));
+            }
+
+            if (expiresAt > 0)
+                putLong(slot, EXPIRES_AT, expiresAt);
+        }
+        return newsfeed;
+    }
+
+    void removePost(long owner, long postId, long now) {
+        update(owner, false, now, slot -> {
+            int count = count(slot);
+            int index = search(slot, count, postId);
+            if (index < 0)
+                return;
+
+            for (int i = index; i < count - 1; i++)
+                copyEntry(slot, i + 1, i);
+            putInt(slot, COUNT, count - 1);
+        });
+    }
+
+    void removeByAuthor(long owner, long authorId, long now) {
+        update(owner, false, now, slot -> {
+            int count = count(slot);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (authorId(slot, i) == authorId)
+                    continue;
+                if (kept != i)
+                    copyEntry(slot, i, kept);
+                kept++;
+            }
+            putInt(slot, COUNT, kept);
+        });
+    }
+
+    private boolean update(long owner, boolean create, long now, IntConsumer operation) {
+        int slot = find(owner);
+        if (slot >= 0) {
+            synchronized (stripe(slot)) {
+                if (owns(slot, owner, now)) {
+                    operation.accept(slot);
+                    return true;
+                }
+            }
+        }
+
+        if (!create)
+            return false;
+
+        synchronized (claimLock) {
+            slot = claim(owner, now);
+            if (slot < 0)
+                return false;
+
+            synchronized (stripe(slot)) {
+                if (!owns(slot, owner, now)) {
+                    putInt(slot, COUNT, 0);
+                    putLong(slot, EXPIRES_AT, 0);
+                    LONGS.setVolatile(buffer(slot), base(slot) + OWNER, owner);
+                }
+                operation.accept(slot);
+                return true;
+            }
+        }
+    }
+
+    private int find(long owner) {
+        if (owner == EMPTY)
+            throw new IllegalArgumentException("Feed owner id cannot be zero");
+
+        int start = home(owner);
+        for (int i = 0; i < capacity; i++) {
+            int slot = (start + i) % capacity;
+            long current = owner(slot);
+            if (current == owner)
+                return slot;
+            if (current == EMPTY)
+                return -1;
+        }
+        return -1;
+    }
+
+    // Prefers the owner's own slot, then the first expired slot of the probe chain, then the empty slot ending it
+    private int claim(long owner, long now) {
+        int start = home(owner);
+        int reusable = -1;
+        for (int i = 0; i < capacity; i++) {
+            int slot = (start + i) % capacity;
+            long current = owner(slot);
+            if (current == owner)
+                return slot;
+            if (current == EMPTY)
+                return reusable >= 0 ? reusable : slot;
+            if (reusable < 0 && expired(slot, now))
+                reusable = slot;
+        }
+        return reusable;
+    }
+
+    private boolean owns(int slot, long owner, long now) {
+        return owner(slot) == owner && !expired(slot, now);
+    }
+
+    private boolean expired(int slot, long now) {
+        long expiresAt = getLong(slot, EXPIRES_AT);
+        return expiresAt > 0 && expiresAt <= now;
+    }
+
+    private void insert(int slot, long postId, long authorId) {
+        int count = count(slot);
+        int index = search(slot, count, postId);
+        if (index >= 0) {
+            putLong(slot, entry(index) + 8, authorId);
+            return;
+        }
+
+        int position = -(index + 1);
+        if (count == maxEntries) {
+            // Older than everything in a full feed, it would be trimmed right away
+            if (position == 0)
+                return;
+
+            for (int i = 0; i < position - 1; i++)
+                copyEntry(slot, i + 1, i);
+            position--;
+        } else {
+            for (int i = count; i > position; i--)
+                copyEntry(slot, i - 1, i);
+            putInt(slot, COUNT, count + 1);
+        }
+        putLong(slot, entry(position), postId);
+        putLong(slot, entry(position) + 8, authorId);
+    }
+
+    private int search(int slot, int count, long postId) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = postId(slot, middle);
+            if (current < postId)
+                low = middle + 1;
+            else if (current > postId)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -(low + 1);
+    }
+
+    private void copyEntry(int slot, int from, int to) {
+        putLong(slot, entry(to), postId(slot, from));
+        putLong(slot, entry(to) + 8, authorId(slot, from));
+    }
+
+    private int home(long owner) {
+        long hash = owner;
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) Math.floorMod(hash, (long) capacity);
+    }
+
+    private long owner(int slot) {
+        return (long) LONGS.getVolatile(buffer(slot), base(slot) + OWNER);
+    }
+
+    private int count(int slot) {
+        return buffer(slot).getInt(base(slot) + COUNT);
+    }
+
+    private long postId(int slot, int index) {
+        return getLong(slot, entry(index));
+    }
+
+    private long authorId(int slot, int index) {
+        return getLong(slot, entry(index) + 8);
+    }
+
+    private static int entry(int index) {
+        return ENTRIES + index * ENTRY_SIZE;
+    }
+
+    private long getLong(int slot, int offset) {
+        return buffer(slot).getLong(base(slot) + offset);
+    }
+
+    private void putLong(int slot, int offset, long value) {
+        buffer(slot).putLong(base(slot) + offset, value);
+    }
+
+    private void putInt(int slot, int offset, int value) {
+        buffer(slot).putInt(base(slot) + offset, value);
+    }
+
+    private ByteBuffer buffer(int slot) {
+        return segments[slot / slotsPerSegment];
+    }
+
+    private int base(int slot) {
+        return (slot % slotsPerSegment) * slotSize;
+    }
+
+    private Object stripe(int slot) {
+        return stripes[slot % stripes.length];
+    }
+
+    @Override
+    public void close() {
+        header.force();
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+    }
+}
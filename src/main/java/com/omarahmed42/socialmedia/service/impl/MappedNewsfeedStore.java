@@ -0,0 +1,241 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.service.NewsfeedStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps newsfeeds and timelines off-heap in memory-mapped files under
+ * {@code newsfeed.store.mapped.directory}, for single node deployments that do
+ * not run Redis for newsfeeds. Selected with {@code newsfeed.store.type=mapped}.
+ * <p>
+ * Every feed is a fixed-size slot of primitive (post id, author id) pairs, see
+ * {@link MappedFeedTable}, so feeds add no garbage collection pressure and
+ * survive restarts. Expiration, trimming and the add-if-exists fanout
+ * semantics are the same as {@link RedisNewsfeedStore}. The files are sized
+ * for {@code capacity} feeds up front; once every slot holds a live feed,
+ * feeds of further users are not stored and are rebuilt from the database on
+ * every read.
+ */
+@Service
+@ConditionalOnProperty(name = "newsfeed.store.type", havingValue = "mapped")
+@Slf4j
+public class MappedNewsfeedStore implements NewsfeedStore, DisposableBean {
+
+    private static final String NEWSFEEDS_FILE = "newsfeeds.dat";
+    private static final String TIMELINES_FILE = "timelines.dat";
+
+    private static final String BATCH_TIMER = "newsfeed.store.batch";
+    private static final String WRITE_TIMER = "newsfeed.store.write";
+
+    private final MappedFeedTable newsfeeds;
+    private final MappedFeedTable timelines;
+    private final MeterRegistry meterRegistry;
+    private final Duration timeToLive;
+    private final boolean slidingExpiration;
+
+    public MappedNewsfeedStore(MeterRegistry meterRegistry,
+            @Value("${newsfeed.max-size:250}") int maxNewsfeedSize,
+            @Value("${newsfeed.store.time-to-live:7d}") Duration timeToLive,
+            @Value("${newsfeed.store.sliding-expiration:true}") boolean slidingExpiration,
+            @Value("${newsfeed.store.mapped.directory:data/newsfeed}") String directory,
+            @Value("${newsfeed.store.mapped.capacity:65536}") int capacity,
+            @Value("${newsfeed.store.mapped.timeline-capacity:16384}") int timelineCapacity) {
+        this.meterRegistry = meterRegistry;
+        this.timeToLive = timeToLive;
+        this.slidingExpiration = slidingExpiration;
+        try {
+            this.newsfeeds = new MappedFeedTable(Path.of(directory, NEWSFEEDS_FILE), capacity, maxNewsfeedSize);
+            this.timelines = new MappedFeedTable(Path.of(directory, TIMELINES_FILE), timelineCapacity,
+                    maxNewsfeedSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map newsfeed store files in " + directory, e);
+        }
+        log.info("Mapped newsfeed store in {} with room for {} newsfeeds and {} timelines", directory, capacity,
+                timelineCapacity);
+    }
+
+    @Override
+    public void add(Long userId, Newsfeed newsfeed) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        checkEntry(newsfeed);
+        writeTimer("add").record(() -> addTo(newsfeeds, userId, newsfeed, false));
+    }
+
+    @Override
+    public void addToTimeline(Long authorId, Newsfeed newsfeed) {
+        if (authorId == null)
+            throw new IllegalArgumentException("Author id cannot be null");
+
+        checkEntry(newsfeed);
+        writeTimer("add-timeline").record(() -> addTo(timelines, authorId, newsfeed, true));
+    }
+
+    private void addTo(MappedFeedTable table, Long ownerId, Newsfeed newsfeed, boolean create) {
+        long now = System.currentTimeMillis();
+        if (!table.add(ownerId, newsfeed.getPostId(), newsfeed.getUserId(), create, expiresAt(now), now)
+                && create)
+            log.warn("Mapped newsfeed store is full, dropping post {} of {}", newsfeed.getPostId(), ownerId);
+    }
+
+    private Timer writeTimer(String operation) {
+        return Timer.builder(WRITE_TIMER)
+                .description("Latency of a single newsfeed store write")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void addAll(Collection<Long> userIds, Newsfeed newsfeed) {
+        checkEntry(newsfeed);
+        forEachUser("add", userIds, userId -> addTo(newsfeeds, userId, newsfeed, false));
+    }
+
+    @Override
+    public void merge(Long userId, Collection<Newsfeed> newsfeed) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        if (newsfeed == null)
+            newsfeed = List.of();
+
+        // An empty rebuild still creates the feed, so readers without posts do not rebuild on every read
+        List<Newsfeed> entries = newsfeed.stream()
+                .filter(entry -> entry != null && entry.getPostId() != null && entry.getUserId() != null)
+                .toList();
+        writeTimer("merge").record(() -> {
+            long now = System.currentTimeMillis();
+            if (!newsfeeds.merge(userId, entries, expiresAt(now), now))
+                log.warn("Mapped newsfeed store is full, newsfeed of user {} is not stored", userId);
+        });
+    }
+
+    @Override
+    public boolean exists(Long userId) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        return newsfeeds.exists(userId, System.currentTimeMillis());
+    }
+
+    @Override
+    public List<Newsfeed> findLatest(Long userId, Long beforePostId, int limit) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        long now = System.currentTimeMillis();
+        // Reading the first page keeps the newsfeed of an active reader from expiring
+        long expiresAt = slidingExpiration && beforePostId == null ? expiresAt(now) : 0;
+        return newsfeeds.findLatest(userId, beforePostId, limit, expiresAt, now);
+    }
+
+    @Override
+    public List<Newsfeed> findLatestFromTimelines(Collection<Long> authorIds, Long beforePostId, int limit) {
+        List<Newsfeed> newsfeed = new ArrayList<>();
+        if (authorIds == null || authorIds.isEmpty() || limit < 1)
+            return newsfeed;
+
+        long now = System.currentTimeMillis();
+        authorIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .forEach(authorId -> newsfeed.addAll(timelines.findLatest(authorId, beforePostId, limit, 0, now)));
+        return newsfeed;
+    }
+
+    @Override
+    public void removePost(Long userId, Long postId) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        if (postId == null)
+            throw new IllegalArgumentException("Post id cannot be null");
+
+        newsfeeds.removePost(userId, postId, System.currentTimeMillis());
+    }
+
+    @Override
+    public void removePost(Collection<Long> userIds, Long postId) {
+        if (postId == null)
+            throw new IllegalArgumentException("Post id cannot be null");
+
+        forEachUser("remove-post", userIds,
+                userId -> newsfeeds.removePost(userId, postId, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void removeFromTimeline(Long authorId, Long postId) {
+        if (authorId == null)
+            throw new IllegalArgumentException("Author id cannot be null");
+
+        if (postId == null)
+            throw new IllegalArgumentException("Post id cannot be null");
+
+        timelines.removePost(authorId, postId, System.currentTimeMillis());
+    }
+
+    @Override
+    public void removeByAuthor(Long userId, Long authorId) {
+        if (userId == null || authorId == null)
+            throw new IllegalArgumentException("User/Author id cannot be null");
+
+        newsfeeds.removeByAuthor(userId, authorId, System.currentTimeMillis());
+    }
+
+    @Override
+    public void removeByAuthor(Collection<Long> userIds, Long authorId) {
+        if (authorId == null)
+            throw new IllegalArgumentException("Author id cannot be null");
+
+        forEachUser("remove-author", userIds,
+                userId -> newsfeeds.removeByAuthor(userId, authorId, System.currentTimeMillis()));
+    }
+
+    private void forEachUser(String operation, Collection<Long> userIds, Consumer<Long> action) {
+        if (userIds == null || userIds.isEmpty())
+            return;
+
+        Timer.builder(BATCH_TIMER)
+                .description("Latency of a single pipelined newsfeed store batch")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(() -> userIds.stream().filter(Objects::nonNull).forEach(action));
+    }
+
+    private long expiresAt(long now) {
+        return timeToLive.isZero() || timeToLive.isNegative() ? 0 : now + timeToLive.toMillis();
+    }
+
+    private static void checkEntry(Newsfeed newsfeed) {
+        if (newsfeed == null || newsfeed.getPostId() == null || newsfeed.getUserId() == null)
+            throw new IllegalArgumentException("Newsfeed post/user cannot be null");
+    }
+
+    @Override
+    public void destroy() {
+        newsfeeds.close();
+        timelines.close();
+    }
+}
@@ -0,0 +1,138 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.model.graph.UserNode;
+import com.omarahmed42.socialmedia.repository.PostRepository;
+import com.omarahmed42.socialmedia.repository.graph.UserNodeRepository;
+import com.omarahmed42.socialmedia.service.NewsfeedRebuildService;
+import com.omarahmed42.socialmedia.service.NewsfeedStore;
+import com.omarahmed42.socialmedia.util.SingleFlight;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rebuilds missing newsfeeds from the friend graph and the latest published
+ * posts of those friends.
+ * <p>
+ * Rebuilds run on a bounded pool, and concurrent reads of the same missing
+ * newsfeed wait on a single rebuild. Readers give up after
+ * {@code newsfeed.rebuild.timeout} and get whatever the store has, the rebuild
+ * still completes in the background.
+ * <p>
+ * The empty newsfeed is created before the posts are queried, so fanout keeps
+ * appending to it during the rebuild. Reads that start after that point see
+ * the feed fill up instead of waiting on the rebuild.
+ */
+@Service
+@Slf4j
+public class NewsfeedRebuildServiceImpl implements NewsfeedRebuildService {
+
+    // Keeps the IN clause of the recent posts query bounded for users with many friends
+    private static final int AUTHORS_PER_QUERY = 1000;
+
+    private final NewsfeedStore newsfeedStore;
+    private final PostRepository postRepository;
+    private final UserNodeRepository userNodeRepository;
+    private final int maxNewsfeedSize;
+    private final Duration timeout;
+
+    private final ThreadPoolExecutor executor;
+    private final SingleFlight<Long, Integer> rebuilds = new SingleFlight<>();
+
+    public NewsfeedRebuildServiceImpl(NewsfeedStore newsfeedStore, PostRepository postRepository,
+            UserNodeRepository userNodeRepository,
+            @Value("${newsfeed.max-size:250}") int maxNewsfeedSize,
+            @Value("${newsfeed.rebuild.concurrency:4}") int concurrency,
+            @Value("${newsfeed.rebuild.queue-capacity:256}") int queueCapacity,
+            @Value("${newsfeed.rebuild.timeout:2s}") Duration timeout) {
+        if (concurrency < 1 || queueCapacity < 1)
+            throw new IllegalArgumentException("Newsfeed rebuild concurrency and queue capacity must be at least 1");
+
+        this.newsfeedStore = newsfeedStore;
+        this.postRepository = postRepository;
+        this.userNodeRepository = userNodeRepository;
+        this.maxNewsfeedSize = maxNewsfeedSize;
+        this.timeout = timeout;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("newsfeed-rebuild-"));
+    }
+
+    @Override
+    public boolean rebuildIfAbsent(Long userId) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        if (newsfeedStore.exists(userId))
+            return false;
+
+        try {
+            rebuilds.execute(userId, () -> rebuild(userId), executor)
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Newsfeed rebuild queue is full, skipping rebuild for user {}", userId);
+        } catch (TimeoutException e) {
+            log.warn("Newsfeed rebuild for user {} did not finish within {} ms", userId, timeout.toMillis());
+        } catch (ExecutionException e) {
+            log.error("Newsfeed rebuild for user {} failed", userId, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public int rebuild(Long userId) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        long start = System.nanoTime();
+        // Fanout only appends to existing newsfeeds, creating the feed first keeps the posts
+        // published while the database is queried
+        newsfeedStore.merge(userId, List.of());
+        List<Long> friendIds = userNodeRepository.findAllFriendsById(userId).stream()
+                .map(UserNode::getUserId)
+                .filter(Objects::nonNull)
+                .toList();
+
+        List<Newsfeed> newsfeed = new ArrayList<>();
+        for (int i = 0; i < friendIds.size(); i += AUTHORS_PER_QUERY) {
+            List<Long> authors = friendIds.subList(i, Math.min(i + AUTHORS_PER_QUERY, friendIds.size()));
+            newsfeed.addAll(postRepository.findLatestNewsfeedByUserIds(authors, PostStatus.PUBLISHED, maxNewsfeedSize));
+        }
+
+        List<Newsfeed> latest = newsfeed.stream()
+                .sorted(Comparator.comparing(Newsfeed::getPostId).reversed())
+                .limit(maxNewsfeedSize)
+                .toList();
+
+        // Merged rather than replaced, fanout has been appending since the feed was created
+        newsfeedStore.merge(userId, latest);
+        log.debug("Rebuilt newsfeed of user {} with {} posts from {} friends in {} ms", userId, latest.size(),
+                friendIds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return latest.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
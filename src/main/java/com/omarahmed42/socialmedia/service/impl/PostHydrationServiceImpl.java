@@ -0,0 +1,141 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.stereotype.Service;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.model.Post;
+import com.omarahmed42.socialmedia.repository.PostRepository;
+import com.omarahmed42.socialmedia.service.PostHydrationService;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads many posts at once through the "posts" cache: one MGET for every id,
+ * one query for the misses and one pipeline to write the misses back.
+ * <p>
+ * Entries are read and written with the same key prefix and serializer as the
+ * cache manager, so they stay interchangeable with {@code @Cacheable} entries.
+ */
+@Service
+@Slf4j
+public class PostHydrationServiceImpl implements PostHydrationService {
+
+    private static final String POSTS_CACHE = "posts";
+
+    private final RedisTemplate<String, Object> cacheRedisTemplate;
+    private final RedisCacheConfiguration redisCacheConfiguration;
+    private final Duration timeToLive;
+    private final PostRepository postRepository;
+
+    private final DistributionSummary hitsSummary;
+    private final DistributionSummary missesSummary;
+
+    public PostHydrationServiceImpl(RedisTemplate<String, Object> cacheRedisTemplate,
+            RedisCacheConfiguration redisCacheConfiguration, CachingProperties cachingProperties,
+            PostRepository postRepository, MeterRegistry meterRegistry) {
+        this.cacheRedisTemplate = cacheRedisTemplate;
+        this.redisCacheConfiguration = redisCacheConfiguration;
+        this.timeToLive = cachingProperties.timeToLive(POSTS_CACHE);
+        this.postRepository = postRepository;
+        this.hitsSummary = DistributionSummary.builder("posts.hydration.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missesSummary = DistributionSummary.builder("posts.hydration.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public PostHydration hydrate(Collection<Long> postIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(postIds));
+        if (ids.isEmpty())
+            return new PostHydration(Map.of(), 0, 0);
+
+        Map<Long, Post> postsById = new HashMap<>();
+        List<Long> missingIds = new ArrayList<>();
+
+        List<Object> cached = multiGet(ids);
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = cached.get(i);
+            if (value instanceof Post post) {
+                postsById.put(ids.get(i), post);
+            } else if (value == null) {
+                missingIds.add(ids.get(i));
+            }
+            // Any other value is a cached null: the post is known not to exist
+        }
+
+        if (!missingIds.isEmpty()) {
+            List<Post> loadedPosts = postRepository.findAllById(missingIds);
+            loadedPosts.forEach(post -> postsById.put(post.getId(), post));
+            writeBack(loadedPosts);
+        }
+
+        int hits = ids.size() - missingIds.size();
+        hitsSummary.record(hits);
+        missesSummary.record(missingIds.size());
+        log.debug("Hydrated {} posts, cache hits: {}, misses: {}", ids.size(), hits, missingIds.size());
+        return new PostHydration(postsById, hits, missingIds.size());
+    }
+
+    private List<Object> multiGet(List<Long> ids) {
+        List<String> keys = ids.stream().map(this::toKey).toList();
+        try {
+            List<Object> values = cacheRedisTemplate.opsForValue().multiGet(keys);
+            if (values != null && values.size() == keys.size())
+                return values;
+        } catch (SerializationException e) {
+            log.warn("Could not read cached posts, loading all of them from the database", e);
+        }
+        return new ArrayList<>(Collections.nCopies(keys.size(), null));
+    }
+
+    private void writeBack(List<Post> posts) {
+        if (posts.isEmpty())
+            return;
+
+        try {
+            cacheRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    ValueOperations<String, Object> valueOperations = (ValueOperations<String, Object>) operations
+                            .opsForValue();
+                    for (Post post : posts) {
+                        if (timeToLive == null || timeToLive.isZero() || timeToLive.isNegative()) {
+                            valueOperations.set(toKey(post.getId()), post);
+                        } else {
+                            valueOperations.set(toKey(post.getId()), post, timeToLive);
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            // The posts were already loaded, a failed write back only costs a miss next time
+            log.warn("Could not cache {} hydrated posts", posts.size(), e);
+        }
+    }
+
+    private String toKey(Long postId) {
+        return redisCacheConfiguration.getKeyPrefixFor(POSTS_CACHE) + postId;
+    }
+}
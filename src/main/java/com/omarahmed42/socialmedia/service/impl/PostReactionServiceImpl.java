@@ -2,10 +2,12 @@ package com.omarahmed42.socialmedia.service.impl;
 
 import java.util.Optional;
 
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.hibernate.Hibernate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
 import com.omarahmed42.socialmedia.exception.ForbiddenPostAccessException;
 import com.omarahmed42.socialmedia.exception.InvalidInputException;
 import com.omarahmed42.socialmedia.exception.PostNotFoundException;
@@ -21,7 +23,7 @@ import com.omarahmed42.socialmedia.repository.UserRepository;
 import com.omarahmed42.socialmedia.service.BlockingService;
 import com.omarahmed42.socialmedia.service.FriendService;
 import com.omarahmed42.socialmedia.service.PostReactionService;
-import com.omarahmed42.socialmedia.service.StatisticsService;
+import com.omarahmed42.socialmedia.service.ReactionDeltaService;
 import com.omarahmed42.socialmedia.util.SecurityUtils;
 
 import lombok.extern.slf4j.Slf4j;
@@ -39,22 +41,24 @@ public class PostReactionServiceImpl implements PostReactionService {
     private final BlockingService blockingService;
     private final FriendService friendService;
 
-    private final StatisticsService statisticsService;
+    private final ReactionDeltaService reactionDeltaService;
 
     public PostReactionServiceImpl(UserRepository userRepository, PostRepository postRepository,
             ReactionRepository reactionRepository, PostReactionRepository postReactionRepository,
             BlockingService blockingService, FriendService friendService,
-            @Qualifier("postReactionsStatisticsService") StatisticsService statisticsService) {
+            ReactionDeltaService reactionDeltaService) {
         this.userRepository = userRepository;
         this.postRepository = postRepository;
         this.reactionRepository = reactionRepository;
         this.postReactionRepository = postReactionRepository;
         this.blockingService = blockingService;
         this.friendService = friendService;
-        this.statisticsService = statisticsService;
+        this.reactionDeltaService = reactionDeltaService;
     }
 
+    // Counter deltas are published once the reaction committed
     @Override
+    @Transactional
     public PostReaction savePostReaction(Integer reactionId, Long postId) {
         SecurityUtils.throwIfNotAuthenticated();
 
@@ -94,20 +98,20 @@ public class PostReactionServiceImpl implements PostReactionService {
         if (retrievedPostReaction != null && (oldReactionId == null && reactionId == null))
             return retrievedPostReaction;
 
+        Reaction reaction = reactionId == null ? null
+                : reactionRepository.findById(reactionId).orElseThrow(
+                        () -> new ReactionNotFoundException("Reaction with id " + reactionId + " not found"));
         PostReaction postReaction = new PostReaction(postReactionId);
-        postReaction.setReaction(reactionId == null ? null : reactionRepository.getReferenceById(reactionId));
+        postReaction.setReaction(reaction);
         postReaction = postReactionRepository.save(postReaction);
         if (oldReactionId != null) {
-            Reaction reaction = reactionRepository.findById(oldReactionId).orElseThrow(
+            Reaction oldReaction = resolve(retrievedPostReaction.getReaction()).orElseThrow(
                     () -> new ReactionNotFoundException("Reaction with id " + oldReactionId + " not found"));
-            statisticsService.decrement(postId.toString(), reaction.getName());
+            reactionDeltaService.publish(ReactionOwnerType.POST, postId, oldReaction.getName(), -1);
         }
 
-        if (reactionId != null) {
-            Reaction reaction = reactionRepository.findById(reactionId).orElseThrow(
-                    () -> new ReactionNotFoundException("Reaction with id " + reactionId + " not found"));
-            statisticsService.increment(postId.toString(), reaction.getName());
-        }
+        if (reaction != null)
+            reactionDeltaService.publish(ReactionOwnerType.POST, postId, reaction.getName(), 1);
 
         return postReaction;
     }
@@ -134,7 +138,17 @@ public class PostReactionServiceImpl implements PostReactionService {
         postReactionId.setUser(userRepository.getReferenceById(authenticatedUserId));
         Optional<PostReaction> postReaction = postReactionRepository.findById(postReactionId);
         
-        return postReaction.isPresent() ? postReaction.get().getReaction() : null;
+        if (postReaction.isEmpty() || postReaction.get().getReaction() == null)
+            return null;
+
+        return resolve(postReaction.get().getReaction()).orElse(null);
+    }
+
+    // Cached reactions only carry the reaction name when it was loaded before caching
+    private Optional<Reaction> resolve(Reaction reaction) {
+        if (Hibernate.isInitialized(reaction) && reaction.getName() != null)
+            return Optional.of(reaction);
+        return reactionRepository.findById(reaction.getId());
     }
 
     
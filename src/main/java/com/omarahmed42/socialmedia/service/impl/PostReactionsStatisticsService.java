@@ -3,24 +3,28 @@ package com.omarahmed42.socialmedia.service.impl;
 import java.time.Duration;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.configuration.ReactionShardingProperties;
 import com.omarahmed42.socialmedia.dto.response.ReactionStatistics;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
 import com.omarahmed42.socialmedia.exception.InvalidInputException;
+import com.omarahmed42.socialmedia.metrics.HotCounter;
 import com.omarahmed42.socialmedia.model.Reaction;
-import com.omarahmed42.socialmedia.repository.PostReactionRepository;
 import com.omarahmed42.socialmedia.repository.ReactionRepository;
-import com.omarahmed42.socialmedia.service.AsyncService;
 import com.omarahmed42.socialmedia.service.StatisticsService;
+import com.omarahmed42.socialmedia.util.RedisKeys;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -28,23 +32,17 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class PostReactionsStatisticsService implements StatisticsService {
 
-    private final PostReactionRepository postReactionRepository;
     private final ReactionRepository reactionRepository;
-    private final RedisTemplate<String, Long> redisTemplate;
-    private final AsyncService asyncService;
+    private final ReactionCounters reactionCounters;
 
-    private static final String POST_PREFIX = "post";
-    private static final String KEY_DELIMITER = ":";
+    private static final Duration COUNT_TIME_TO_LIVE = Duration.ofHours(12);
 
     private Set<String> validActivityTypes;
 
-    public PostReactionsStatisticsService(PostReactionRepository postReactionRepository,
-            ReactionRepository reactionRepository, RedisTemplate<String, Long> redisTemplate,
-            AsyncService asyncService) {
-        this.postReactionRepository = postReactionRepository;
+    public PostReactionsStatisticsService(ReactionRepository reactionRepository, StringRedisTemplate redisTemplate,
+            ReactionCountWriteBehind writeBehind, CachingProperties cachingProperties,
+            ReactionShardingProperties shardingProperties, MeterRegistry meterRegistry) {
         this.reactionRepository = reactionRepository;
-        this.redisTemplate = redisTemplate;
-        this.asyncService = asyncService;
 
         this.validActivityTypes = new HashSet<>();
 
@@ -55,6 +53,9 @@ public class PostReactionsStatisticsService implements StatisticsService {
                 .map(Reaction::getName)
                 .filter(StringUtils::isNotBlank).distinct()
                 .collect(Collectors.toSet());
+        this.reactionCounters = new ReactionCounters(redisTemplate, writeBehind, ReactionOwnerType.POST,
+                validActivityTypes, RedisKeys::postReactions, COUNT_TIME_TO_LIVE, cachingProperties.getLock(),
+                shardingProperties, meterRegistry);
     }
 
     @Override
@@ -65,15 +66,7 @@ public class PostReactionsStatisticsService implements StatisticsService {
         if (StringUtils.isBlank(activityType))
             throw new IllegalArgumentException("Activity type cannot be empty");
 
-        final String key = key(postId, activityType);
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        Long count = ops.get(key);
-        if (count == null)
-            count = postReactionRepository.countByReactionNameAndPostReactionId_Post_id(activityType,
-                    Long.parseLong(postId));
-
-        ops.set(key, count, Duration.ofHours(12));
-        return count;
+        return reactionCounters.get(Long.parseLong(postId)).getOrDefault(activityType, 0L);
     }
 
     @Override
@@ -93,12 +86,7 @@ public class PostReactionsStatisticsService implements StatisticsService {
         if (!isValid(activityType))
             throw new IllegalArgumentException("Invalid activity type");
 
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        final String key = key(postId, activityType);
-
-        ops.setIfAbsent(key, postReactionRepository.countByReactionNameAndPostReactionId_Post_id(activityType,
-                Long.parseLong(postId)), Duration.ofHours(12));
-        ops.increment(key, value);
+        reactionCounters.add(Long.parseLong(postId), activityType, value);
     }
 
     @Override
@@ -112,18 +100,7 @@ public class PostReactionsStatisticsService implements StatisticsService {
         if (!isValid(activityType))
             throw new IllegalArgumentException("Invalid activity type");
 
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        final String key = key(postId, activityType);
-
-        Long count = postReactionRepository.countByReactionNameAndPostReactionId_Post_id(activityType,
-                Long.parseLong(postId));
-        log.info("COUNT: {}", count);
-        ops.setIfAbsent(key, count - 1, Duration.ofHours(12));
-        ops.increment(key);
-    }
-
-    private String key(String postId, String activityType) {
-        return POST_PREFIX + KEY_DELIMITER + postId + KEY_DELIMITER + activityType;
+        reactionCounters.add(Long.parseLong(postId), activityType, 1);
     }
 
     private boolean isValid(String activityType) {
@@ -147,12 +124,7 @@ public class PostReactionsStatisticsService implements StatisticsService {
         if (!isValid(activityType))
             throw new IllegalArgumentException("Invalid activity type");
 
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        final String key = key(postId, activityType);
-
-        ops.setIfAbsent(key, postReactionRepository.countByReactionNameAndPostReactionId_Post_id(activityType,
-                Long.parseLong(postId)), Duration.ofHours(12));
-        ops.decrement(key, value);
+        reactionCounters.add(Long.parseLong(postId), activityType, -value);
     }
 
     @Override
@@ -166,12 +138,7 @@ public class PostReactionsStatisticsService implements StatisticsService {
         if (!isValid(activityType))
             throw new IllegalArgumentException("Invalid activity type");
 
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        final String key = key(postId, activityType);
-
-        ops.setIfAbsent(key, postReactionRepository.countByReactionNameAndPostReactionId_Post_id(activityType,
-                Long.parseLong(postId)), Duration.ofHours(12));
-        ops.decrement(key);
+        reactionCounters.add(Long.parseLong(postId), activityType, -1);
     }
 
     @Override
@@ -179,41 +146,32 @@ public class PostReactionsStatisticsService implements StatisticsService {
         if (postId == null)
             throw new InvalidInputException("Post id cannot be null");
 
-        CompletableFuture<Long> likeCountFuture = asyncService.getCompletable(() -> getCountAsync(postId, "like"));
-        CompletableFuture<Long> loveCountFuture = asyncService.getCompletable(() -> getCountAsync(postId, "love"));
-        CompletableFuture<Long> angryCountFuture = asyncService.getCompletable(() -> getCountAsync(postId, "angry"));
-        CompletableFuture<Long> sadCountFuture = asyncService.getCompletable(() -> getCountAsync(postId, "sad"));
-        CompletableFuture<Long> laughCountFuture = asyncService.getCompletable(() -> getCountAsync(postId, "laugh"));
-
-        CompletableFuture.allOf(likeCountFuture, loveCountFuture, angryCountFuture, sadCountFuture, laughCountFuture)
-                .join();
-
+        Map<String, Long> counters = reactionCounters.get(Long.parseLong(postId));
         ReactionStatistics reactionStatistics = new ReactionStatistics();
-        reactionStatistics.setLikeCount(likeCountFuture.join());
-        reactionStatistics.setLoveCount(loveCountFuture.join());
-        reactionStatistics.setAngryCount(angryCountFuture.join());
-        reactionStatistics.setSadCount(sadCountFuture.join());
-        reactionStatistics.setLaughCount(laughCountFuture.join());
+        reactionStatistics.setLikeCount(counters.getOrDefault("like", 0L));
+        reactionStatistics.setLoveCount(counters.getOrDefault("love", 0L));
+        reactionStatistics.setAngryCount(counters.getOrDefault("angry", 0L));
+        reactionStatistics.setSadCount(counters.getOrDefault("sad", 0L));
+        reactionStatistics.setLaughCount(counters.getOrDefault("laugh", 0L));
 
         return reactionStatistics;
     }
 
-    private Future<Long> getCountAsync(String postId, String activityType) {
-        if (postId == null)
-            throw new IllegalArgumentException("Post id cannot be null");
-
-        if (StringUtils.isBlank(activityType))
-            throw new IllegalArgumentException("Activity type cannot be empty");
-
-        final String key = key(postId, activityType);
-        ValueOperations<String, Long> ops = redisTemplate.opsForValue();
-        Long count = ops.get(key);
-        if (count == null)
-            count = postReactionRepository.countByReactionNameAndPostReactionId_Post_id(activityType,
-                    Long.parseLong(postId));
+    @Scheduled(fixedDelayString = "${reactions.sharding.check-interval:PT1S}")
+    public void rebalanceCounters() {
+        reactionCounters.rebalance();
+    }
 
-        ops.set(key, count, Duration.ofHours(12));
-        return CompletableFuture.completedFuture(count);
+    /**
+     * Returns the posts whose reactions this node saw incremented the most in
+     * the last measurement window.
+     */
+    public List<HotCounter> getHotCounters(int limit) {
+        return reactionCounters.hotCounters(limit);
     }
 
+    // Lets the reaction delta listener record its deltas itself and only update the counters
+    ReactionCounters reactionCounters() {
+        return reactionCounters;
+    }
 }
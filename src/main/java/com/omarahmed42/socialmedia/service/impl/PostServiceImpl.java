@@ -20,6 +20,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.omarahmed42.socialmedia.dto.PaginationInfo;
 import com.omarahmed42.socialmedia.dto.event.AttachmentDeletionEvent;
+import com.omarahmed42.socialmedia.dto.event.NewsfeedEvent;
+import com.omarahmed42.socialmedia.enums.NewsfeedEventType;
 import com.omarahmed42.socialmedia.enums.PostStatus;
 import com.omarahmed42.socialmedia.exception.ForbiddenPostAccessException;
 import com.omarahmed42.socialmedia.exception.InvalidInputException;
@@ -28,15 +30,16 @@ import com.omarahmed42.socialmedia.model.Comment;
 import com.omarahmed42.socialmedia.model.Post;
 import com.omarahmed42.socialmedia.model.PostAttachment;
 import com.omarahmed42.socialmedia.model.User;
-import com.omarahmed42.socialmedia.model.cache.Newsfeed;
 import com.omarahmed42.socialmedia.projection.PostInputProjection;
 import com.omarahmed42.socialmedia.repository.PostAttachmentRepository;
 import com.omarahmed42.socialmedia.repository.PostRepository;
 import com.omarahmed42.socialmedia.repository.UserRepository;
+import com.omarahmed42.socialmedia.service.DeletedPostFilter;
 import com.omarahmed42.socialmedia.service.FileService;
 import com.omarahmed42.socialmedia.service.FriendService;
 import com.omarahmed42.socialmedia.service.PostService;
 import com.omarahmed42.socialmedia.util.SecurityUtils;
+import com.omarahmed42.socialmedia.util.TransactionUtils;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -51,6 +54,7 @@ public class PostServiceImpl implements PostService {
     private final UserRepository userRepository;
     private final FriendService friendService;
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final DeletedPostFilter deletedPostFilter;
     private final CacheManager cacheManager;
     private final FileService fileService;
 
@@ -178,7 +182,7 @@ public class PostServiceImpl implements PostService {
                     userRepository.getReferenceById(userId));
             validateAndSetParentPost(userId, postInputProjection, post);
             post = postRepository.save(post);
-            kafkaTemplate.send("newsfeed", new Newsfeed(userId, post.getId()));
+            sendNewsfeedEvent(NewsfeedEventType.PUBLISHED, userId, post.getId());
             return post;
         }
 
@@ -200,7 +204,7 @@ public class PostServiceImpl implements PostService {
         post.setPostStatus(PostStatus.PUBLISHED);
         post = postRepository.save(post);
         if (wasDraft)
-            kafkaTemplate.send("newsfeed", new Newsfeed(userId, post.getId()));
+            sendNewsfeedEvent(NewsfeedEventType.PUBLISHED, userId, post.getId());
 
         cache(post);
 
@@ -271,10 +275,17 @@ public class PostServiceImpl implements PostService {
         }
 
         evictCache(postId);
-        kafkaTemplate.send("newsfeed-post-eviction", new Newsfeed(authenticatedUserId, postId));
+        // A rolled back delete must keep showing the post
+        TransactionUtils.afterCommit(() -> deletedPostFilter.markDeleted(authenticatedUserId, postId));
+        sendNewsfeedEvent(NewsfeedEventType.DELETED, authenticatedUserId, postId);
         return postId;
     }
 
+    // Keyed by author so that all events of an author land on one partition and keep their order
+    private void sendNewsfeedEvent(NewsfeedEventType type, Long userId, Long postId) {
+        kafkaTemplate.send("newsfeed", userId.toString(), new NewsfeedEvent(type, userId, postId));
+    }
+
     private void evictCache(Long postId) {
         Cache postsCache = cacheManager.getCache("posts");
         if (postsCache == null) {
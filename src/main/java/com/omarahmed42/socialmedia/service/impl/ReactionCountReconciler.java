@@ -0,0 +1,141 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Recounts the reactions of posts and comments from {@code post_reaction} and
+ * {@code comment_reaction}, and corrects the durable counts of
+ * {@link ReactionCountWriteBehind} that drifted from them.
+ * <p>
+ * Runs on {@code reactions.reconciliation.cron}, on one instance at a time.
+ * Only owners whose reactions did not change for
+ * {@code reactions.reconciliation.settle} are reconciled, so the deltas of
+ * their last changes are recorded already. The settle time has to outlast the
+ * lag of the reaction delta listener. An owner whose reactions change while it
+ * is recounted is left for the next run. The difference is recorded like any
+ * other change of the counts, and the counters of the owner are dropped.
+ */
+@Component
+@ConditionalOnProperty(name = "reactions.reconciliation.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class ReactionCountReconciler {
+
+    private static final String LOCK_KEY = "reaction-count-reconciliation:lock";
+    // Only keeps instances that run on the same schedule from reconciling at the same time
+    private static final Duration LOCK_TIME_TO_LIVE = Duration.ofMinutes(30);
+
+    // %1$s is the reaction table and %2$s its owner column
+    private static final String QUIET_OWNERS = """
+            SELECT %2$s FROM %1$s WHERE %2$s > ? GROUP BY %2$s
+            HAVING MAX(COALESCE(last_modified_at, created_at)) < ? ORDER BY %2$s LIMIT ?
+            """;
+    private static final String RECOUNT = """
+            SELECT r.name, COUNT(*) AS total FROM %1$s owned JOIN reaction r ON r.id = owned.reaction_id
+            WHERE owned.%2$s = ? GROUP BY r.name
+            """;
+    private static final String LAST_CHANGE = """
+            SELECT MAX(COALESCE(last_modified_at, created_at)) FROM %1$s WHERE %2$s = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final PostReactionsStatisticsService postReactionsStatisticsService;
+    private final CommentReactionsStatisticsService commentReactionsStatisticsService;
+    private final Duration settle;
+    private final int pageSize;
+
+    public ReactionCountReconciler(JdbcTemplate jdbcTemplate, StringRedisTemplate redisTemplate,
+            PostReactionsStatisticsService postReactionsStatisticsService,
+            CommentReactionsStatisticsService commentReactionsStatisticsService,
+            @Value("${reactions.reconciliation.settle:30m}") Duration settle,
+            @Value("${reactions.reconciliation.page-size:500}") int pageSize) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Reaction reconciliation page size must be at least 1");
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.redisTemplate = redisTemplate;
+        this.postReactionsStatisticsService = postReactionsStatisticsService;
+        this.commentReactionsStatisticsService = commentReactionsStatisticsService;
+        this.settle = settle;
+        this.pageSize = pageSize;
+    }
+
+    @Scheduled(cron = "${reactions.reconciliation.cron:0 30 3 * * *}")
+    public void reconcile() {
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "1", LOCK_TIME_TO_LIVE)))
+            return;
+
+        LocalDateTime settledBefore = LocalDateTime.now().minus(settle);
+        int corrected = reconcile(ReactionOwnerType.POST, "post_reaction", "post_id",
+                postReactionsStatisticsService.reactionCounters(), settledBefore);
+        corrected += reconcile(ReactionOwnerType.COMMENT, "comment_reaction", "comment_id",
+                commentReactionsStatisticsService.reactionCounters(), settledBefore);
+        log.info("Reconciled the reaction counts, corrected {} of them", corrected);
+    }
+
+    // Returns how many counts were corrected
+    private int reconcile(ReactionOwnerType ownerType, String table, String ownerColumn, ReactionCounters counters,
+            LocalDateTime settledBefore) {
+        String quietOwners = QUIET_OWNERS.formatted(table, ownerColumn);
+        int corrected = 0;
+        long after = 0;
+        List<Long> ownerIds;
+        do {
+            ownerIds = jdbcTemplate.queryForList(quietOwners, Long.class, after, Timestamp.valueOf(settledBefore),
+                    pageSize);
+            for (Long ownerId : ownerIds) {
+                try {
+                    corrected += reconcileOwner(ownerType, table, ownerColumn, counters, ownerId, settledBefore);
+                } catch (RuntimeException e) {
+                    log.error("Could not reconcile the reaction counts of {} {}", ownerType, ownerId, e);
+                }
+            }
+            if (!ownerIds.isEmpty())
+                after = ownerIds.get(ownerIds.size() - 1);
+        } while (ownerIds.size() == pageSize);
+        return corrected;
+    }
+
+    // The durable counts are read first, a change recorded after that shows up in the last change time
+    private int reconcileOwner(ReactionOwnerType ownerType, String table, String ownerColumn,
+            ReactionCounters counters, Long ownerId, LocalDateTime settledBefore) {
+        Map<String, Long> observed = counters.durableCounts(ownerId);
+        Map<String, Long> actual = new HashMap<>();
+        jdbcTemplate.query(RECOUNT.formatted(table, ownerColumn), rs -> {
+            actual.put(rs.getString("name"), rs.getLong("total"));
+        }, ownerId);
+        Timestamp lastChange = jdbcTemplate.queryForObject(LAST_CHANGE.formatted(table, ownerColumn),
+                Timestamp.class, ownerId);
+        if (lastChange == null || !lastChange.toLocalDateTime().isBefore(settledBefore))
+            return 0;
+
+        Map<String, Long> corrections = new HashMap<>();
+        observed.forEach((reaction, count) -> {
+            long delta = actual.getOrDefault(reaction, 0L) - count;
+            if (delta != 0)
+                corrections.put(reaction, delta);
+        });
+        if (corrections.isEmpty())
+            return 0;
+
+        log.warn("Correcting the reaction counts of {} {} by {}", ownerType, ownerId, corrections);
+        counters.correct(ownerId, corrections);
+        return corrections.size();
+    }
+}
@@ -0,0 +1,398 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+import com.omarahmed42.socialmedia.model.ReactionCount;
+import com.omarahmed42.socialmedia.model.ReactionCountFlush;
+import com.omarahmed42.socialmedia.util.RedisKeys;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the reaction counts of posts and comments in the
+ * {@code reaction_count} table, so counters missing from Redis are read back
+ * instead of counted over {@code post_reaction} and {@code comment_reaction}.
+ * <p>
+ * Counts are not written through. Deltas are added to Redis hashes, sharded
+ * by owner id, and every {@code reactions.write-behind.interval} each shard is
+ * flushed to the table in one transaction. A flush renames the shard to its
+ * flushing key first, so deltas recorded meanwhile start a new hash, and only
+ * deletes it after the transaction committed. A failed flush is retried from
+ * the same key. The deltas of a sharded counter are spread over as many shards
+ * as the counter, so they do not turn a delta shard into the next hot key.
+ * <p>
+ * Every claim of a shard takes a new flush generation, which the flush commits
+ * to {@code reaction_count_flush} in the same transaction as the counts. A
+ * flush whose generation is already committed only deletes its flushing key,
+ * so a retry or a second flusher never applies the deltas twice. Reads add the
+ * deltas that are not flushed yet to the counts of the table, and compare the
+ * committed generation they read with the table against the one in Redis: if a
+ * flush committed in between, the read is repeated.
+ * <p>
+ * Every read of the unflushed deltas of a shard takes the next number of the
+ * shard's read sequence, and every recorded change returns the number the
+ * sequence was at, both atomically with the deltas. A change belongs to a read
+ * exactly when its number is lower than the read's.
+ * <p>
+ * Changes read from a log, such as a topic partition, can be recorded together
+ * with the offset they were read up to, which each shard keeps per source. A
+ * record made from an outdated offset is refused, so changes read again after
+ * a failure, or by a second reader of the source, are never recorded twice.
+ * <p>
+ * The tables are mapped by {@link ReactionCount} and
+ * {@link ReactionCountFlush}. Counts that drift from the reaction tables, such
+ * as deltas lost with Redis before they were flushed, are corrected through
+ * {@link #record} by {@link ReactionCountReconciler}, which also fills the
+ * table of an existing database.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class ReactionCountWriteBehind {
+
+    private static final String FLUSHING_SUFFIX = ":flushing";
+    private static final String LOCK_SUFFIX = ":lock";
+    private static final String READS_SUFFIX = ":reads";
+    private static final String GENERATION_SUFFIX = ":generation";
+    private static final String OFFSETS_SUFFIX = ":offsets";
+    private static final int MAX_READ_ATTEMPTS = 3;
+    private static final String FIELD_DELIMITER = ":";
+
+    private static final String UPSERT_COUNT = """
+            INSERT INTO reaction_count (owner_type, owner_id, reaction, count) VALUES (?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE count = count + VALUES(count)
+            """;
+
+    private static final String INSERT_SHARD = """
+            INSERT IGNORE INTO reaction_count_flush (shard, generation) VALUES (?, 0)
+            """;
+
+    private static final String ADVANCE_GENERATION = """
+            UPDATE reaction_count_flush SET generation = ? WHERE shard = ? AND generation < ?
+            """;
+
+    // Returns the generation of the flushing key, or 0 when there is nothing to flush
+    private static final RedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            local generation = tonumber(redis.call('GET', KEYS[3]) or '0')
+            if redis.call('EXISTS', KEYS[2]) == 1 then
+                if generation == 0 then
+                    generation = tonumber(ARGV[1]) + 1
+                    redis.call('SET', KEYS[3], generation)
+                end
+                return generation
+            end
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            generation = math.max(generation, tonumber(ARGV[1])) + 1
+            redis.call('SET', KEYS[3], generation)
+            redis.call('RENAME', KEYS[1], KEYS[2])
+            return generation
+            """, Long.class);
+
+    private static final RedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+            return tonumber(redis.call('GET', KEYS[2]) or '0')
+            """, Long.class);
+
+    // ARGV[1] is the source, ARGV[2] the offset it was recorded through when the changes were read and ARGV[3] the
+    // offset they take it to, followed by field and delta pairs. Returns -1 when the source was recorded meanwhile
+    private static final RedisScript<Long> RECORD_THROUGH_SCRIPT = new DefaultRedisScript<>("""
+            if (redis.call('HGET', KEYS[3], ARGV[1]) or '-1') ~= ARGV[2] then
+                return -1
+            end
+            for i = 4, #ARGV, 2 do
+                redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            redis.call('HSET', KEYS[3], ARGV[1], ARGV[3])
+            return tonumber(redis.call('GET', KEYS[2]) or '0')
+            """, Long.class);
+
+    // ARGV[1] is the generation committed when the table was read. Returns the read sequence followed by the
+    // delta of every field, or only 0 when a flush committed after the table was read
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> UNFLUSHED_SCRIPT = new DefaultRedisScript<>("""
+            local generation = tonumber(redis.call('GET', KEYS[4]) or '0')
+            local committed = tonumber(ARGV[1])
+            local claimed = redis.call('EXISTS', KEYS[2]) == 1
+            if committed < generation - 1 or (committed < generation and not claimed) then
+                return { 0 }
+            end
+            local recorded = redis.call('HMGET', KEYS[1], unpack(ARGV, 2))
+            local flushing = {}
+            if claimed and committed < generation then
+                flushing = redis.call('HMGET', KEYS[2], unpack(ARGV, 2))
+            end
+            local deltas = { redis.call('INCR', KEYS[3]) }
+            for i = 2, #ARGV do
+                deltas[i] = (tonumber(recorded[i - 1]) or 0) + (tonumber(flushing[i - 1]) or 0)
+            end
+            return deltas
+            """, List.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTransactionTemplate;
+    private final int shards;
+    private final int batchSize;
+    private final Duration lockLease;
+
+    public ReactionCountWriteBehind(StringRedisTemplate redisTemplate, JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            @Value("${reactions.write-behind.shards:16}") int shards,
+            @Value("${reactions.write-behind.batch-size:500}") int batchSize,
+            @Value("${reactions.write-behind.lock-lease:30s}") Duration lockLease) {
+        this.redisTemplate = redisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.readTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readTransactionTemplate.setReadOnly(true);
+        this.readTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.shards = shards;
+        this.batchSize = batchSize;
+        this.lockLease = lockLease;
+    }
+
+    /**
+     * Records a change of a reaction count, to be written to the table with the
+     * next flush.
+     *
+     * @param spread offsets the shard of the owner, so the changes of a hot
+     *               counter are spread over several shards
+     * @return the read sequence of the shard, {@link #counts} results with a
+     *         higher sequence include the change
+     */
+    public long record(ReactionOwnerType ownerType, Long ownerId, String reaction, long delta, int spread) {
+        String key = RedisKeys.reactionDeltas(shard(ownerId, spread));
+        Long sequence = redisTemplate.execute(RECORD_SCRIPT, List.of(key, key + READS_SUFFIX),
+                field(ownerType, ownerId, reaction), String.valueOf(delta));
+        return sequence == null ? 0 : sequence;
+    }
+
+    /**
+     * Returns the shard the unsharded changes of the owner are recorded in.
+     */
+    public int shardOf(Long ownerId) {
+        return shard(ownerId, 0);
+    }
+
+    /**
+     * Returns the offset the changes of a source were recorded through in the
+     * shard, or -1 if none were.
+     */
+    public long recordedThrough(int shard, String source) {
+        Object through = redisTemplate.opsForHash().get(RedisKeys.reactionDeltas(shard) + OFFSETS_SUFFIX, source);
+        return through == null ? -1 : Long.parseLong((String) through);
+    }
+
+    /**
+     * Records the changes read from a source up to an offset, together with
+     * that offset.
+     *
+     * @param shard           the shard of the owners of every change
+     * @param recordedThrough the offset the source was recorded through when the
+     *                        changes were read, see {@link #recordedThrough}
+     * @return the read sequence of the shard, as for {@link #record(ReactionOwnerType, Long, String, long, int)}
+     * @throws IllegalStateException when changes of the source were recorded in
+     *                               the meantime
+     */
+    public long record(int shard, String source, long recordedThrough, long through, Collection<Change> changes) {
+        List<String> args = new ArrayList<>(3 + changes.size() * 2);
+        args.add(source);
+        args.add(String.valueOf(recordedThrough));
+        args.add(String.valueOf(through));
+        for (Change change : changes) {
+            if (shardOf(change.ownerId()) != shard)
+                throw new IllegalArgumentException("Change of " + change.ownerType() + " " + change.ownerId()
+                        + " does not belong to shard " + shard);
+
+            args.add(field(change.ownerType(), change.ownerId(), change.reaction()));
+            args.add(String.valueOf(change.delta()));
+        }
+
+        String key = RedisKeys.reactionDeltas(shard);
+        Long sequence = redisTemplate.execute(RECORD_THROUGH_SCRIPT,
+                List.of(key, key + READS_SUFFIX, key + OFFSETS_SUFFIX), args.toArray());
+        if (sequence != null && sequence < 0)
+            throw new IllegalStateException("Changes of " + source + " were recorded in shard " + shard
+                    + " while these were read");
+        return sequence == null ? 0 : sequence;
+    }
+
+    /**
+     * Returns the count of every given reaction of the owner, including the
+     * changes that are not flushed yet.
+     *
+     * @param spreads how many shard offsets the changes of the owner may have
+     *                been recorded with
+     * @return the counts, with the read sequence of the shard the unsharded
+     *         changes of the owner are recorded in
+     */
+    public Snapshot counts(ReactionOwnerType ownerType, Long ownerId, Collection<String> reactions,
+            int spreads) {
+        Set<Integer> shardsOfOwner = new TreeSet<>();
+        for (int spread = 0; spread < Math.max(spreads, 1); spread++)
+            shardsOfOwner.add(shard(ownerId, spread));
+
+        for (int attempt = 1; attempt <= MAX_READ_ATTEMPTS; attempt++) {
+            Snapshot snapshot = tryCounts(ownerType, ownerId, reactions, shardsOfOwner);
+            if (snapshot != null)
+                return snapshot;
+            log.debug("Deltas of {} {} were flushed while reading its counts, reading again", ownerType, ownerId);
+        }
+        throw new IllegalStateException("Reaction counts of " + ownerType + " " + ownerId
+                + " kept changing while being read");
+    }
+
+    // Returns null when a flush committed between reading the table and reading the unflushed deltas
+    @SuppressWarnings("unchecked")
+    private Snapshot tryCounts(ReactionOwnerType ownerType, Long ownerId, Collection<String> reactions,
+            Set<Integer> shardsOfOwner) {
+        Map<String, Long> counts = new HashMap<>();
+        for (String reaction : reactions)
+            counts.put(reaction, 0L);
+        Map<Integer, Long> committed = new HashMap<>();
+        readTransactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.query("SELECT reaction, count FROM reaction_count WHERE owner_type = ? AND owner_id = ?",
+                    rs -> {
+                        counts.put(rs.getString("reaction"), rs.getLong("count"));
+                    }, ownerType.name(), ownerId);
+            jdbcTemplate.query("SELECT shard, generation FROM reaction_count_flush", rs -> {
+                committed.put(rs.getInt("shard"), rs.getLong("generation"));
+            });
+        });
+
+        if (reactions.isEmpty())
+            return new Snapshot(counts, 0);
+
+        List<String> args = new ArrayList<>(1 + reactions.size());
+        args.add("");
+        reactions.forEach(reaction -> args.add(field(ownerType, ownerId, reaction)));
+        long sequence = 0;
+        for (int shard : shardsOfOwner) {
+            String key = RedisKeys.reactionDeltas(shard);
+            args.set(0, String.valueOf(committed.getOrDefault(shard, 0L)));
+            List<Object> deltas = redisTemplate.execute(UNFLUSHED_SCRIPT,
+                    List.of(key, key + FLUSHING_SUFFIX, key + READS_SUFFIX, key + GENERATION_SUFFIX),
+                    args.toArray());
+            if (deltas == null)
+                continue;
+            if (((Number) deltas.get(0)).longValue() == 0)
+                return null;
+
+            if (shard == shard(ownerId, 0))
+                sequence = ((Number) deltas.get(0)).longValue();
+            int i = 1;
+            for (String reaction : reactions)
+                counts.merge(reaction, ((Number) deltas.get(i++)).longValue(), Long::sum);
+        }
+        return new Snapshot(counts, sequence);
+    }
+
+    @Scheduled(fixedDelayString = "${reactions.write-behind.interval:PT5S}")
+    public void flush() {
+        int flushed = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            try {
+                flushed += flush(shard);
+            } catch (RuntimeException e) {
+                log.error("Could not flush the reaction count deltas of shard {}", shard, e);
+            }
+        }
+
+        if (flushed > 0)
+            log.debug("Flushed {} reaction count deltas", flushed);
+    }
+
+    private int flush(int shard) {
+        String key = RedisKeys.reactionDeltas(shard);
+        String lockKey = key + LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, token, lockLease)))
+            return 0;
+
+        try {
+            String flushingKey = key + FLUSHING_SUFFIX;
+            List<Long> committed = jdbcTemplate.queryForList(
+                    "SELECT generation FROM reaction_count_flush WHERE shard = ?", Long.class, shard);
+            // The row of a new shard, which ADVANCE_GENERATION only updates
+            if (committed.isEmpty())
+                jdbcTemplate.update(INSERT_SHARD, shard);
+            Long claimed = redisTemplate.execute(CLAIM_SCRIPT, List.of(key, flushingKey, key + GENERATION_SUFFIX),
+                    String.valueOf(committed.isEmpty() ? 0 : committed.get(0)));
+            if (claimed == null || claimed == 0)
+                return 0;
+
+            long generation = claimed;
+            List<Object[]> rows = new ArrayList<>();
+            redisTemplate.<String, String>opsForHash().entries(flushingKey).forEach((field, delta) -> {
+                if (Long.parseLong(delta) != 0)
+                    rows.add(row(field, Long.parseLong(delta)));
+            });
+            Boolean applied = transactionTemplate.execute(status -> {
+                // Also waits for, and then skips, a flusher of the same generation that holds the row
+                if (jdbcTemplate.update(ADVANCE_GENERATION, generation, shard, generation) == 0)
+                    return false;
+
+                for (int from = 0; from < rows.size(); from += batchSize)
+                    jdbcTemplate.batchUpdate(UPSERT_COUNT, rows.subList(from, Math.min(from + batchSize, rows.size())));
+                return true;
+            });
+            redisTemplate.delete(flushingKey);
+            return Boolean.TRUE.equals(applied) ? rows.size() : 0;
+        } finally {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey), token);
+        }
+    }
+
+    private int shard(Long ownerId, int spread) {
+        return (int) Math.floorMod(ownerId + spread, (long) shards);
+    }
+
+    private static String field(ReactionOwnerType ownerType, Long ownerId, String reaction) {
+        return ownerType.name() + FIELD_DELIMITER + ownerId + FIELD_DELIMITER + reaction;
+    }
+
+    private static Object[] row(String field, long delta) {
+        String[] parts = field.split(FIELD_DELIMITER, 3);
+        return new Object[] { parts[0], Long.parseLong(parts[1]), parts[2], delta };
+    }
+
+    public record Change(ReactionOwnerType ownerType, Long ownerId, String reaction, long delta) {
+    }
+
+    /**
+     * @param sequence the changes recorded with a lower read sequence are part
+     *                 of the counts
+     */
+    public record Snapshot(Map<String, Long> counts, long sequence) {
+    }
+}
@@ -0,0 +1,609 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.omarahmed42.socialmedia.cache.CoalescingLoader;
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.configuration.ReactionShardingProperties;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+import com.omarahmed42.socialmedia.metrics.HotCounter;
+import com.omarahmed42.socialmedia.metrics.IncrementRates;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reaction counters of posts or comments, kept as one Redis hash per owner
+ * with a field per reaction.
+ * <p>
+ * A hash is always created with a field for every reaction, so an existing
+ * hash holds all the counters of its owner and a missing one is a cold miss.
+ * Cold misses are read from the durable counts of
+ * {@link ReactionCountWriteBehind}, once for concurrent misses of the same
+ * owner on every node, and only written if no other writer created the hash in
+ * the meantime.
+ * <p>
+ * Every update is recorded for the durable counts first, which tells it
+ * whether a cold read already saw it, see {@link ReactionCountWriteBehind}. A
+ * hash remembers the read sequence it was created from and ignores the updates
+ * that read saw. An update that finds no hash while a read is running is
+ * parked in a pending hash with its sequence, and the script that creates the
+ * counters folds in only the parked updates the read did not see. Any other
+ * update that finds no hash is dropped, it is part of the next cold read.
+ * <p>
+ * Counters a node sees incremented faster than
+ * {@code reactions.sharding.threshold} are sharded by that node: the hash is
+ * marked with a number of shards and an epoch, writers increment a random shard
+ * key instead, each in its own cluster slot, and reads add the shards up. Once
+ * the rate stays below half the threshold for the cooldown, the mark is
+ * flipped to draining so writers go back to the hash, and the shards are
+ * folded into it after every node had time to notice.
+ * <p>
+ * The node that sharded a counter owns it and keeps a lease on it in the hash,
+ * renewed on every check for as long as the cooldown. Nodes that read or write
+ * a counter whose lease lapsed, because its owner stopped or restarted, take
+ * it over on their next check and collapse it or finish folding it in turn.
+ */
+@Slf4j
+class ReactionCounters {
+
+    private static final String SHARDS_FIELD = "#shards";
+    private static final String EPOCH_FIELD = "#epoch";
+    private static final String OWNER_FIELD = "#owner";
+    private static final String LEASE_FIELD = "#lease";
+    private static final String SNAPSHOT_FIELD = "#snapshot";
+    private static final String SHARD_DELIMITER = "#";
+
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> READ_SCRIPT = new DefaultRedisScript<>("""
+            local counters = redis.call('HGETALL', KEYS[1])
+            if #counters > 0 then
+                redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            end
+            return counters
+            """, List.class);
+
+    // Pending fields are <read sequence>:<reaction>
+    private static final RedisScript<Long> INITIALIZE_SCRIPT = new DefaultRedisScript<>("""
+            local initialized = 0
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                for i = 3, #ARGV, 2 do
+                    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+                end
+                redis.call('HSET', KEYS[1], '#snapshot', ARGV[2])
+                local pending = redis.call('HGETALL', KEYS[3])
+                for i = 1, #pending, 2 do
+                    local separator = string.find(pending[i], ':', 1, true)
+                    if separator and tonumber(string.sub(pending[i], 1, separator - 1)) >= tonumber(ARGV[2]) then
+                        redis.call('HINCRBY', KEYS[1], string.sub(pending[i], separator + 1), pending[i + 1])
+                    end
+                end
+                redis.call('PEXPIRE', KEYS[1], ARGV[1])
+                initialized = 1
+            end
+            redis.call('DEL', KEYS[2], KEYS[3])
+            return initialized
+            """, Long.class);
+
+    // A sharded counter is not incremented, its shards, epoch and lease are returned instead, as for a draining one
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ADD_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                redis.call('PEXPIRE', KEYS[1], ARGV[3])
+                if tonumber(ARGV[5]) < tonumber(redis.call('HGET', KEYS[1], '#snapshot') or '0') then
+                    return {}
+                end
+                local shards = tonumber(redis.call('HGET', KEYS[1], '#shards') or '0')
+                local state = {}
+                if shards ~= 0 then
+                    state = { shards, tonumber(redis.call('HGET', KEYS[1], '#epoch')),
+                        tonumber(redis.call('HGET', KEYS[1], '#lease') or '0') }
+                end
+                if shards <= 0 then
+                    redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+                end
+                return state
+            end
+            if redis.call('EXISTS', KEYS[2]) == 1 then
+                redis.call('HINCRBY', KEYS[3], ARGV[5] .. ':' .. ARGV[1], ARGV[2])
+                redis.call('PEXPIRE', KEYS[3], ARGV[4])
+            end
+            return {}
+            """, List.class);
+
+    private static final RedisScript<Long> ADD_TO_SHARD_SCRIPT = new DefaultRedisScript<>("""
+            local count = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            return count
+            """, Long.class);
+
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> SHARD_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return {}
+            end
+            local shards = redis.call('HGET', KEYS[1], '#shards')
+            if shards then
+                return { tonumber(shards), tonumber(redis.call('HGET', KEYS[1], '#epoch')) }
+            end
+            redis.call('HSET', KEYS[1], '#shards', ARGV[1], '#epoch', ARGV[2], '#owner', ARGV[3], '#lease', ARGV[4])
+            return { tonumber(ARGV[1]), tonumber(ARGV[2]) }
+            """, List.class);
+
+    // Renews the lease of the owner, or takes the counter over once the lease lapsed
+    static final RedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], '#epoch') ~= ARGV[1] then
+                return 0
+            end
+            if redis.call('HGET', KEYS[1], '#owner') ~= ARGV[2]
+                    and tonumber(redis.call('HGET', KEYS[1], '#lease') or '0') >= tonumber(ARGV[3]) then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], '#owner', ARGV[2], '#lease', ARGV[4])
+            return 1
+            """, Long.class);
+
+    static final RedisScript<Long> DRAIN_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], '#shards') == ARGV[1] and redis.call('HGET', KEYS[1], '#epoch') == ARGV[2]
+                    and redis.call('HGET', KEYS[1], '#owner') == ARGV[3] then
+                redis.call('HSET', KEYS[1], '#shards', -tonumber(ARGV[1]))
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> TAKE_SHARD_SCRIPT = new DefaultRedisScript<>("""
+            local counters = redis.call('HGETALL', KEYS[1])
+            redis.call('DEL', KEYS[1])
+            return counters
+            """, List.class);
+
+    // A hash that expired meanwhile is read back from the durable counts, which already hold the shards
+    static final RedisScript<Long> FOLD_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], '#epoch') ~= ARGV[1] then
+                return 0
+            end
+            for i = 2, #ARGV, 2 do
+                redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            redis.call('HDEL', KEYS[1], '#shards', '#epoch', '#owner', '#lease')
+            return 1
+            """, Long.class);
+
+    private static final String LOADING_SUFFIX = ":loading";
+    private static final String PENDING_SUFFIX = ":pending";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ReactionCountWriteBehind writeBehind;
+    private final ReactionOwnerType ownerType;
+    private final Set<String> reactions;
+    private final Function<Object, String> keys;
+    private final Duration timeToLive;
+    private final Duration loadTimeout;
+    private final ReactionShardingProperties sharding;
+
+    private final CoalescingLoader countLoader;
+    private final IncrementRates rates = new IncrementRates();
+    private final long nodeId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+    // Sharded counters this node writes to, as last seen in Redis
+    private final Map<Long, Shards> shards = new ConcurrentHashMap<>();
+
+    // Sharded or draining counters this node saw with a lapsed lease, taken over by rebalance()
+    private final Map<Long, Shards> orphaned = new ConcurrentHashMap<>();
+
+    // Only used by rebalance(), which is never run concurrently
+    private final Map<Long, Shards> shardedHere = new HashMap<>();
+    private final Map<Long, Long> coolingSince = new HashMap<>();
+    private final Map<Long, Shards> draining = new HashMap<>();
+
+    /**
+     * @param reactions  the names of every reaction
+     * @param keys       the Redis key of the counters of an owner
+     * @param timeToLive how long counters are kept after their last use
+     * @param lock       how cold misses are coalesced across nodes, its lease also
+     *                   bounds how long updates are parked for a running count
+     */
+    ReactionCounters(StringRedisTemplate redisTemplate, ReactionCountWriteBehind writeBehind,
+            ReactionOwnerType ownerType, Set<String> reactions, Function<Object, String> keys, Duration timeToLive,
+            CachingProperties.Lock lock, ReactionShardingProperties sharding, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.writeBehind = writeBehind;
+        this.ownerType = ownerType;
+        this.reactions = Set.copyOf(reactions);
+        this.keys = keys;
+        this.timeToLive = timeToLive;
+        this.loadTimeout = lock.getLeaseTime();
+        this.sharding = sharding;
+        this.countLoader = new CoalescingLoader(redisTemplate, lock);
+
+        Gauge.builder("reactions.counters.sharded", shards, Map::size)
+                .description("Sharded reaction counters this node writes to")
+                .tag("owner", ownerType.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the count of every reaction of the owner.
+     */
+    Map<String, Long> get(Long ownerId) {
+        String key = keys.apply(ownerId);
+        Map<String, Long> counters = read(key);
+        if (counters != null)
+            return addShards(ownerId, counters);
+
+        return countLoader.load(key, () -> {
+            Map<String, Long> cached = read(key);
+            return cached == null ? null
+                    : new SimpleValueWrapper(new ReactionCountWriteBehind.Snapshot(addShards(ownerId, cached), 0));
+        }, () -> count(key, ownerId), loaded -> initialize(key, loaded)).counts();
+    }
+
+    /**
+     * Adds the delta to the counter of a reaction, and records it for the durable
+     * counts.
+     */
+    void add(Long ownerId, String reaction, long delta) {
+        long now = System.nanoTime();
+        Shards known = track(ownerId, delta, now);
+        if (known != null) {
+            int shard = known.pick();
+            writeBehind.record(ownerType, ownerId, reaction, delta, shard);
+            addToShard(ownerId, known, shard, reaction, delta);
+            return;
+        }
+
+        addToHash(ownerId, reaction, delta, writeBehind.record(ownerType, ownerId, reaction, delta, 0), now);
+    }
+
+    /**
+     * Adds a delta that was already recorded for the durable counts, in the
+     * unsharded shard of the owner, to the counter of a reaction.
+     *
+     * @param sequence the read sequence the change was recorded with
+     */
+    void addRecorded(Long ownerId, String reaction, long delta, long sequence) {
+        long now = System.nanoTime();
+        Shards known = track(ownerId, delta, now);
+        if (known != null)
+            addToShard(ownerId, known, known.pick(), reaction, delta);
+        else
+            addToHash(ownerId, reaction, delta, sequence, now);
+    }
+
+    /**
+     * Drops the counters of the owner, so they are read back from the durable
+     * counts on their next use.
+     */
+    void evict(Long ownerId) {
+        shards.remove(ownerId);
+        redisTemplate.delete(keys.apply(ownerId));
+    }
+
+    /**
+     * Returns the durable count of every reaction of the owner, without
+     * touching its counters.
+     */
+    Map<String, Long> durableCounts(Long ownerId) {
+        return writeBehind.counts(ownerType, ownerId, reactions, spreads()).counts();
+    }
+
+    /**
+     * Records corrections of the durable counts of the owner, and drops its
+     * counters so they are read back with the corrections.
+     */
+    void correct(Long ownerId, Map<String, Long> corrections) {
+        corrections.forEach((reaction, delta) -> writeBehind.record(ownerType, ownerId, reaction, delta, 0));
+        evict(ownerId);
+    }
+
+    boolean isCounted(String reaction) {
+        return reaction != null && reactions.contains(reaction);
+    }
+
+    // Returns the shards of the counter if this node knows them and they are recent enough to write to
+    private Shards track(Long ownerId, long delta, long now) {
+        // Updates arrive aggregated, so their size is what tracks how hot the counter is
+        if (sharding.isEnabled())
+            rates.record(ownerId, Math.abs(delta));
+
+        Shards known = shards.get(ownerId);
+        return known != null && now - known.seenAt() < sharding.getStateRefresh().toNanos() ? known : null;
+    }
+
+    private void addToHash(Long ownerId, String reaction, long delta, long sequence, long now) {
+        String key = keys.apply(ownerId);
+        List<?> state = redisTemplate.execute(ADD_SCRIPT, List.of(key, key + LOADING_SUFFIX, key + PENDING_SUFFIX),
+                reaction, String.valueOf(delta), String.valueOf(timeToLive.toMillis()),
+                String.valueOf(loadTimeout.toMillis()), String.valueOf(sequence));
+        if (state != null && state.size() > 2)
+            noteLease(ownerId, ((Number) state.get(0)).intValue(), ((Number) state.get(1)).longValue(),
+                    ((Number) state.get(2)).longValue(), now);
+
+        Shards current = Shards.of(state, now);
+        if (current == null) {
+            shards.remove(ownerId);
+            return;
+        }
+
+        shards.put(ownerId, current);
+        addToShard(ownerId, current, current.pick(), reaction, delta);
+    }
+
+    /**
+     * Closes the current measurement window, shards the counters that got hot on
+     * this node, takes over the ones whose owner let its lease lapse and
+     * collapses the ones it owns that cooled down.
+     */
+    void rebalance() {
+        if (!sharding.isEnabled())
+            return;
+
+        long now = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        Map<Long, Double> measured = rates.rotate();
+        foldDrained(now);
+        takeOverOrphans(now, nowMillis);
+
+        measured.forEach((ownerId, rate) -> {
+            if (rate >= sharding.getThreshold() && !shardedHere.containsKey(ownerId)
+                    && !draining.containsKey(ownerId))
+                shard(ownerId, rate, now, nowMillis);
+        });
+
+        for (Iterator<Map.Entry<Long, Shards>> iterator = shardedHere.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<Long, Shards> sharded = iterator.next();
+            Long ownerId = sharded.getKey();
+            if (!holdLease(ownerId, sharded.getValue(), nowMillis)) {
+                iterator.remove();
+                coolingSince.remove(ownerId);
+                continue;
+            }
+
+            if (measured.getOrDefault(ownerId, 0d) >= sharding.getThreshold() / 2d) {
+                coolingSince.remove(ownerId);
+                continue;
+            }
+
+            long since = coolingSince.computeIfAbsent(ownerId, id -> now);
+            if (now - since >= sharding.getCooldown().toNanos()) {
+                iterator.remove();
+                coolingSince.remove(ownerId);
+                drain(ownerId, sharded.getValue(), now);
+            }
+        }
+
+        // Counters sharded by other nodes are forgotten once this node stops writing to them
+        shards.values().removeIf(known -> now - known.seenAt() > sharding.getCooldown().toNanos());
+    }
+
+    /**
+     * Returns the counters with the most increments per second in the last
+     * measurement window of this node.
+     */
+    List<HotCounter> hotCounters(int limit) {
+        return rates.lastRates().entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .map(rate -> {
+                    Shards known = shards.get(rate.getKey());
+                    return new HotCounter(rate.getKey(), rate.getValue(), known == null ? 0 : known.count());
+                })
+                .toList();
+    }
+
+    private void addToShard(Long ownerId, Shards sharded, int shard, String reaction, long delta) {
+        redisTemplate.execute(ADD_TO_SHARD_SCRIPT, List.of(shardKey(ownerId, sharded.epoch(), shard)), reaction,
+                String.valueOf(delta), String.valueOf(timeToLive.toMillis()));
+    }
+
+    private void shard(Long ownerId, double rate, long now, long nowMillis) {
+        try {
+            long epoch = nowMillis;
+            Shards sharded = Shards.of(redisTemplate.execute(SHARD_SCRIPT, List.of(keys.apply(ownerId)),
+                    String.valueOf(sharding.getShards()), String.valueOf(epoch), String.valueOf(nodeId),
+                    String.valueOf(nowMillis + sharding.getCooldown().toMillis())), now);
+            if (sharded == null)
+                return;
+
+            shards.put(ownerId, sharded);
+            if (sharded.epoch() == epoch) {
+                shardedHere.put(ownerId, sharded);
+                log.info("Sharded the reaction counters of {} {} over {} keys at {} increments per second",
+                        ownerType, ownerId, sharded.count(), Math.round(rate));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not shard the reaction counters of {} {}", ownerType, ownerId, e);
+        }
+    }
+
+    // A counter whose lease this node could not renew has been taken over by another node
+    private boolean holdLease(Long ownerId, Shards sharded, long nowMillis) {
+        try {
+            return Long.valueOf(1).equals(redisTemplate.execute(LEASE_SCRIPT, List.of(keys.apply(ownerId)),
+                    String.valueOf(sharded.epoch()), String.valueOf(nodeId), String.valueOf(nowMillis),
+                    String.valueOf(nowMillis + sharding.getCooldown().toMillis())));
+        } catch (RuntimeException e) {
+            log.warn("Could not renew the lease on the reaction counters of {} {}", ownerType, ownerId, e);
+            return false;
+        }
+    }
+
+    private void takeOverOrphans(long now, long nowMillis) {
+        for (Iterator<Map.Entry<Long, Shards>> iterator = orphaned.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<Long, Shards> orphan = iterator.next();
+            iterator.remove();
+            Long ownerId = orphan.getKey();
+            Shards state = orphan.getValue();
+            if (shardedHere.containsKey(ownerId) || draining.containsKey(ownerId)
+                    || !holdLease(ownerId, state, nowMillis))
+                continue;
+
+            log.info("Took over the reaction counters of {} {}", ownerType, ownerId);
+            if (state.count() > 0)
+                shardedHere.put(ownerId, state);
+            else
+                // Its owner may have drained it just before it stopped, so nodes may still write to the shards
+                draining.put(ownerId, new Shards(-state.count(), state.epoch(),
+                        now + sharding.getStateRefresh().toNanos() * 2));
+        }
+    }
+
+    // Counters are only taken over while sharding, so a node with sharding disabled leaves them to the others
+    private void noteLease(Long ownerId, int shardCount, long epoch, long lease, long now) {
+        if (sharding.isEnabled() && lease < System.currentTimeMillis())
+            orphaned.put(ownerId, new Shards(shardCount, epoch, now));
+    }
+
+    private void drain(Long ownerId, Shards sharded, long now) {
+        try {
+            Long drained = redisTemplate.execute(DRAIN_SCRIPT, List.of(keys.apply(ownerId)),
+                    String.valueOf(sharded.count()), String.valueOf(sharded.epoch()), String.valueOf(nodeId));
+            shards.remove(ownerId);
+            // Nodes that still know the counter as sharded check it again within the state refresh
+            if (Long.valueOf(1).equals(drained))
+                draining.put(ownerId, new Shards(sharded.count(), sharded.epoch(),
+                        now + sharding.getStateRefresh().toNanos() * 2));
+        } catch (RuntimeException e) {
+            log.warn("Could not collapse the reaction counters of {} {}", ownerType, ownerId, e);
+        }
+    }
+
+    private void foldDrained(long now) {
+        for (Iterator<Map.Entry<Long, Shards>> iterator = draining.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<Long, Shards> drained = iterator.next();
+            if (drained.getValue().seenAt() > now)
+                continue;
+
+            iterator.remove();
+            try {
+                fold(drained.getKey(), drained.getValue());
+            } catch (RuntimeException e) {
+                log.warn("Could not fold the shards of the reaction counters of {} {}", ownerType,
+                        drained.getKey(), e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fold(Long ownerId, Shards drained) {
+        Map<String, Long> totals = new HashMap<>();
+        for (int shard = 0; shard < drained.count(); shard++) {
+            List<String> fields = redisTemplate.execute(TAKE_SHARD_SCRIPT,
+                    List.of(shardKey(ownerId, drained.epoch(), shard)));
+            for (int i = 0; fields != null && i + 1 < fields.size(); i += 2)
+                totals.merge(fields.get(i), Long.valueOf(fields.get(i + 1)), Long::sum);
+        }
+
+        List<String> args = new ArrayList<>(1 + totals.size() * 2);
+        args.add(String.valueOf(drained.epoch()));
+        totals.forEach((reaction, count) -> {
+            args.add(reaction);
+            args.add(String.valueOf(count));
+        });
+        redisTemplate.execute(FOLD_SCRIPT, List.of(keys.apply(ownerId)), args.toArray());
+        log.info("Collapsed the reaction counters of {} {}", ownerType, ownerId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> read(String key) {
+        List<String> fields = redisTemplate.execute(READ_SCRIPT, List.of(key), String.valueOf(timeToLive.toMillis()));
+        if (fields == null || fields.isEmpty())
+            return null;
+
+        Map<String, Long> counters = new HashMap<>();
+        for (int i = 0; i + 1 < fields.size(); i += 2)
+            counters.put(fields.get(i), Long.valueOf(fields.get(i + 1)));
+        counters.remove(SNAPSHOT_FIELD);
+        return counters;
+    }
+
+    // Draining shards are still added up, they are only folded once nobody writes to them
+    private Map<String, Long> addShards(Long ownerId, Map<String, Long> counters) {
+        Long shardCount = counters.remove(SHARDS_FIELD);
+        Long epoch = counters.remove(EPOCH_FIELD);
+        counters.remove(OWNER_FIELD);
+        Long lease = counters.remove(LEASE_FIELD);
+        if (shardCount == null || epoch == null)
+            return counters;
+
+        noteLease(ownerId, shardCount.intValue(), epoch, lease == null ? 0 : lease, System.nanoTime());
+
+        List<Object> shardCounters = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int shard = 0; shard < Math.abs(shardCount); shard++)
+                connection.hashCommands().hGetAll(shardKey(ownerId, epoch, shard).getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+        for (Object shardCounter : shardCounters) {
+            if (shardCounter instanceof Map<?, ?> fields)
+                fields.forEach((reaction, count) -> counters.merge((String) reaction, Long.valueOf((String) count),
+                        Long::sum));
+        }
+        return counters;
+    }
+
+    // The shard id is the hash tag, so the shards of one counter spread over the cluster
+    private String shardKey(Long ownerId, long epoch, int shard) {
+        return keys.apply(ownerId + SHARD_DELIMITER + epoch + SHARD_DELIMITER + shard);
+    }
+
+    private ReactionCountWriteBehind.Snapshot count(String key, Long ownerId) {
+        // Updates from here on are parked until the counters are created, the ones the read saw are dropped then
+        redisTemplate.opsForValue().set(key + LOADING_SUFFIX, "1", loadTimeout);
+        return writeBehind.counts(ownerType, ownerId, reactions, spreads());
+    }
+
+    // How many write-behind shards the changes of one owner may be spread over
+    private int spreads() {
+        return sharding.isEnabled() ? sharding.getShards() : 1;
+    }
+
+    private void initialize(String key, ReactionCountWriteBehind.Snapshot snapshot) {
+        Map<String, Long> counters = snapshot.counts();
+        Object[] args = new Object[2 + counters.size() * 2];
+        args[0] = String.valueOf(timeToLive.toMillis());
+        args[1] = String.valueOf(snapshot.sequence());
+        int i = 2;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            args[i++] = counter.getKey();
+            args[i++] = String.valueOf(counter.getValue());
+        }
+        redisTemplate.execute(INITIALIZE_SCRIPT, List.of(key, key + LOADING_SUFFIX, key + PENDING_SUFFIX), args);
+    }
+
+    /**
+     * @param seenAt when the state was read from Redis, or for draining counters
+     *               when their shards can be folded
+     */
+    private record Shards(int count, long epoch, long seenAt) {
+
+        static Shards of(List<?> state, long seenAt) {
+            if (state == null || state.size() < 2 || ((Number) state.get(0)).intValue() <= 0)
+                return null;
+            return new Shards(((Number) state.get(0)).intValue(), ((Number) state.get(1)).longValue(), seenAt);
+        }
+
+        int pick() {
+            return ThreadLocalRandom.current().nextInt(count);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Service;
+
+import com.omarahmed42.socialmedia.dto.event.ReactionDeltaEvent;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+import com.omarahmed42.socialmedia.service.ReactionDeltaService;
+import com.omarahmed42.socialmedia.util.TransactionUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves reaction counter updates off the request thread. Reactions publish
+ * their deltas to the {@code reaction-deltas} topic, keyed by owner so every
+ * delta of a post or comment lands on one partition, and the listener applies
+ * one net delta per owner and reaction for each batch it polls. Deltas are
+ * sent once the transaction that saved the reaction committed, so a reaction
+ * that rolls back is never counted and the request does not wait for the
+ * broker. A delta whose send fails is logged and lost.
+ * <p>
+ * Batches are the aggregation windows: the listener container waits up to
+ * {@code reactions.aggregation.window} for records before returning a poll,
+ * so a burst of reactions on one post within a window becomes a single
+ * counter update. Offsets are committed once the batch is applied.
+ * <p>
+ * Records are grouped by their partition and the write-behind shard of their
+ * owner, see {@link ReactionCountWriteBehind}. Each group records its net
+ * deltas together with the offset of its last record, and then adds them to
+ * the counters. Records at or below the offset a shard already holds for the
+ * partition were recorded before, by an earlier delivery on this or another
+ * instance. They are skipped, and the counters of their owners are dropped,
+ * since a failure may have stopped them from being updated.
+ * <p>
+ * Groups are applied in the order of their first record. When one fails, the
+ * listener reports that first record, so the offsets before it are committed
+ * and the rest of the batch is redelivered. Once the retries are exhausted,
+ * the failed record is published to {@code reaction-deltas.DLT} and the rest
+ * is applied.
+ */
+@Service
+@Slf4j
+public class ReactionDeltaServiceImpl implements ReactionDeltaService {
+
+    static final String TOPIC = "reaction-deltas";
+
+    private static final String KEY_DELIMITER = ":";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final PostReactionsStatisticsService postReactionsStatisticsService;
+    private final CommentReactionsStatisticsService commentReactionsStatisticsService;
+    private final ReactionCountWriteBehind writeBehind;
+
+    public ReactionDeltaServiceImpl(KafkaTemplate<String, Object> kafkaTemplate,
+            PostReactionsStatisticsService postReactionsStatisticsService,
+            CommentReactionsStatisticsService commentReactionsStatisticsService,
+            ReactionCountWriteBehind writeBehind) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.postReactionsStatisticsService = postReactionsStatisticsService;
+        this.commentReactionsStatisticsService = commentReactionsStatisticsService;
+        this.writeBehind = writeBehind;
+    }
+
+    @Override
+    public void publish(ReactionOwnerType ownerType, Long ownerId, String reaction, long delta) {
+        TransactionUtils.afterCommit(() -> kafkaTemplate.send(TOPIC, ownerType.name() + KEY_DELIMITER + ownerId,
+                new ReactionDeltaEvent(ownerType, ownerId, reaction, delta))
+                .whenComplete((result, e) -> {
+                    if (e != null)
+                        log.error("Could not publish reaction delta {} of {} {} for {}", delta, ownerType, ownerId,
+                                reaction, e);
+                }));
+    }
+
+    @Override
+    @KafkaListener(topics = TOPIC, groupId = "${reactions.aggregation.group-id:reaction-deltas}", containerFactory = "reactionDeltaKafkaListenerContainerFactory")
+    public void consumeReactionDeltas(List<ConsumerRecord<String, ReactionDeltaEvent>> consumerRecords) {
+        Map<DeltaGroup, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < consumerRecords.size(); i++) {
+            ConsumerRecord<String, ReactionDeltaEvent> consumerRecord = consumerRecords.get(i);
+            ReactionDeltaEvent event = consumerRecord.value();
+            if (event == null || event.getOwnerType() == null || event.getOwnerId() == null) {
+                log.error("Reaction delta event with key " + consumerRecord.key() + " is empty");
+                continue;
+            }
+
+            groups.computeIfAbsent(new DeltaGroup(source(consumerRecord), writeBehind.shardOf(event.getOwnerId())),
+                    group -> new ArrayList<>()).add(i);
+        }
+
+        int updates = 0;
+        for (Map.Entry<DeltaGroup, List<Integer>> group : groups.entrySet()) {
+            try {
+                updates += apply(group.getKey(), group.getValue().stream().map(consumerRecords::get).toList());
+            } catch (RuntimeException e) {
+                throw new BatchListenerFailedException("Could not apply the reaction deltas of " + group.getKey(), e,
+                        group.getValue().get(0));
+            }
+        }
+        log.debug("Applied {} reaction deltas as {} counter updates", consumerRecords.size(), updates);
+    }
+
+    // Returns how many counters were updated
+    private int apply(DeltaGroup group, List<ConsumerRecord<String, ReactionDeltaEvent>> consumerRecords) {
+        long recordedThrough = writeBehind.recordedThrough(group.shard(), group.source());
+        long through = recordedThrough;
+        Map<ReactionDeltaKey, Long> netDeltas = new LinkedHashMap<>();
+        Set<ReactionOwner> recordedOwners = new HashSet<>();
+        for (ConsumerRecord<String, ReactionDeltaEvent> consumerRecord : consumerRecords) {
+            ReactionDeltaEvent event = consumerRecord.value();
+            if (consumerRecord.offset() <= recordedThrough) {
+                recordedOwners.add(new ReactionOwner(event.getOwnerType(), event.getOwnerId()));
+                continue;
+            }
+
+            through = Math.max(through, consumerRecord.offset());
+            // Retrying the batch would not make the reaction known
+            if (!counters(event.getOwnerType()).isCounted(event.getReaction())) {
+                log.error("Dropping reaction delta {} of {} {} for unknown reaction {}", event.getDelta(),
+                        event.getOwnerType(), event.getOwnerId(), event.getReaction());
+                continue;
+            }
+
+            netDeltas.merge(new ReactionDeltaKey(event.getOwnerType(), event.getOwnerId(), event.getReaction()),
+                    event.getDelta(), Long::sum);
+        }
+
+        recordedOwners.forEach(owner -> counters(owner.ownerType()).evict(owner.ownerId()));
+        if (through == recordedThrough)
+            return 0;
+
+        List<ReactionCountWriteBehind.Change> changes = netDeltas.entrySet().stream()
+                .filter(netDelta -> netDelta.getValue() != 0)
+                .map(netDelta -> new ReactionCountWriteBehind.Change(netDelta.getKey().ownerType(),
+                        netDelta.getKey().ownerId(), netDelta.getKey().reaction(), netDelta.getValue()))
+                .toList();
+        // Also moves the offset when every delta cancelled out, a redelivery could split them differently
+        long sequence = writeBehind.record(group.shard(), group.source(), recordedThrough, through, changes);
+        for (ReactionCountWriteBehind.Change change : changes)
+            counters(change.ownerType()).addRecorded(change.ownerId(), change.reaction(), change.delta(), sequence);
+        return changes.size();
+    }
+
+    private static String source(ConsumerRecord<?, ?> consumerRecord) {
+        return consumerRecord.topic() + "-" + consumerRecord.partition();
+    }
+
+    private ReactionCounters counters(ReactionOwnerType ownerType) {
+        return ownerType == ReactionOwnerType.POST
+                ? postReactionsStatisticsService.reactionCounters()
+                : commentReactionsStatisticsService.reactionCounters();
+    }
+
+    private record ReactionDeltaKey(ReactionOwnerType ownerType, Long ownerId, String reaction) {
+    }
+
+    private record ReactionOwner(ReactionOwnerType ownerType, Long ownerId) {
+    }
+
+    // The records of one partition whose owners share a write-behind shard
+    private record DeltaGroup(String source, int shard) {
+    }
+}
@@ -0,0 +1,226 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.service.DeletedPostFilter;
+import com.omarahmed42.socialmedia.util.BloomFilterIndexes;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers deleted posts so that readers can drop them from their newsfeeds
+ * without the delete rewriting every friend's newsfeed.
+ * <p>
+ * A Bloom filter kept in a Redis bitmap answers "certainly not deleted" for
+ * almost every post with one pipeline of GETBITs; only its positives are
+ * checked against the exact set of recent deletes. Deletes are also queued for
+ * compaction, which removes them from the newsfeeds in the background after
+ * {@code newsfeed.deleted-posts.compaction.delay}.
+ * <p>
+ * Recent deletes are kept for {@code newsfeed.deleted-posts.retention}; after
+ * that the post is expected to be compacted away, and hydration drops it
+ * anyway because it is no longer published. The Bloom filter is rebuilt from
+ * the recent deletes once it has taken more than the expected insertions.
+ */
+@Service
+@Slf4j
+public class RedisDeletedPostFilter implements DeletedPostFilter {
+
+    private static final String BLOOM_KEY = "deleted-posts:bloom";
+    private static final String BLOOM_COUNT_KEY = "deleted-posts:bloom:count";
+    private static final String BLOOM_REBUILD_KEY = "deleted-posts:bloom:rebuild";
+    private static final String RECENT_KEY = "deleted-posts:recent";
+    private static final String PENDING_KEY = "deleted-posts:pending";
+    private static final String MEMBER_DELIMITER = ":";
+
+    private static final Duration BLOOM_REBUILD_LOCK_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+    private final StringRedisTemplate redisTemplate;
+    private final BloomFilterIndexes bloomFilterIndexes;
+    private final long expectedInsertions;
+    private final Duration retention;
+    private final Duration compactionDelay;
+
+    public RedisDeletedPostFilter(StringRedisTemplate redisTemplate,
+            @Value("${newsfeed.deleted-posts.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${newsfeed.deleted-posts.false-positive-probability:0.01}") double falsePositiveProbability,
+            @Value("${newsfeed.deleted-posts.retention:1d}") Duration retention,
+            @Value("${newsfeed.deleted-posts.compaction.delay:1m}") Duration compactionDelay) {
+        this.redisTemplate = redisTemplate;
+        this.bloomFilterIndexes = new BloomFilterIndexes(expectedInsertions, falsePositiveProbability);
+        this.expectedInsertions = expectedInsertions;
+        this.retention = retention;
+        this.compactionDelay = compactionDelay;
+    }
+
+    @Override
+    public void markDeleted(Long authorId, Long postId) {
+        if (authorId == null || postId == null)
+            throw new IllegalArgumentException("Author/Post id cannot be null");
+
+        long now = System.currentTimeMillis();
+        byte[] bloomKey = bytes(BLOOM_KEY);
+        long[] indexes = bloomFilterIndexes.indexes(postId);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long index : indexes) {
+                connection.stringCommands().setBit(bloomKey, index, true);
+            }
+            connection.stringCommands().incr(bytes(BLOOM_COUNT_KEY));
+            connection.zSetCommands().zAdd(bytes(RECENT_KEY), now, bytes(postId.toString()));
+            connection.zSetCommands().zAdd(bytes(PENDING_KEY), now, bytes(postId + MEMBER_DELIMITER + authorId));
+            return null;
+        });
+    }
+
+    @Override
+    public Set<Long> findDeleted(Collection<Long> postIds) {
+        Set<Long> deleted = new HashSet<>();
+        if (postIds == null || postIds.isEmpty())
+            return deleted;
+
+        List<Long> ids = postIds.stream().filter(Objects::nonNull).distinct().toList();
+        byte[] bloomKey = bytes(BLOOM_KEY);
+        List<Object> bits = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                for (long index : bloomFilterIndexes.indexes(id)) {
+                    connection.stringCommands().getBit(bloomKey, index);
+                }
+            }
+            return null;
+        });
+
+        List<Long> candidates = new ArrayList<>();
+        int hashes = bloomFilterIndexes.getHashes();
+        for (int i = 0; i < ids.size(); i++) {
+            if (allSet(bits, i * hashes, hashes))
+                candidates.add(ids.get(i));
+        }
+
+        if (candidates.isEmpty())
+            return deleted;
+
+        List<Object> scores = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : candidates) {
+                connection.zSetCommands().zScore(bytes(RECENT_KEY), bytes(id.toString()));
+            }
+            return null;
+        });
+        for (int i = 0; i < candidates.size(); i++) {
+            if (scores.get(i) != null)
+                deleted.add(candidates.get(i));
+        }
+        return deleted;
+    }
+
+    private boolean allSet(List<Object> bits, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            if (!Boolean.TRUE.equals(bits.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public List<Newsfeed> claimPendingCompaction(int limit) {
+        List<Newsfeed> claimed = new ArrayList<>();
+        if (limit < 1)
+            return claimed;
+
+        // Deletes are left alone for a while so that a fanout still in flight has landed before they are compacted
+        long maxScore = System.currentTimeMillis() - compactionDelay.toMillis();
+        Set<String> members = redisTemplate.opsForZSet().rangeByScore(PENDING_KEY, Double.NEGATIVE_INFINITY,
+                maxScore, 0, limit);
+        if (members == null || members.isEmpty())
+            return claimed;
+
+        List<String> candidates = new ArrayList<>(members);
+        List<Object> removed = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String member : candidates) {
+                connection.zSetCommands().zRem(bytes(PENDING_KEY), bytes(member));
+            }
+            return null;
+        });
+
+        // Only the node whose ZREM removed the member compacts it
+        for (int i = 0; i < candidates.size(); i++) {
+            if (removed.get(i) instanceof Long count && count > 0) {
+                Newsfeed newsfeed = fromMember(candidates.get(i));
+                if (newsfeed != null)
+                    claimed.add(newsfeed);
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public void expire() {
+        redisTemplate.opsForZSet().removeRangeByScore(RECENT_KEY, Double.NEGATIVE_INFINITY,
+                System.currentTimeMillis() - retention.toMillis());
+
+        String count = redisTemplate.opsForValue().get(BLOOM_COUNT_KEY);
+        if (count == null || Long.parseLong(count) <= expectedInsertions)
+            return;
+
+        if (!Boolean.TRUE.equals(
+                redisTemplate.opsForValue().setIfAbsent(BLOOM_REBUILD_KEY, "1", BLOOM_REBUILD_LOCK_TIME_TO_LIVE)))
+            return;
+
+        try {
+            rebuildBloomFilter();
+        } finally {
+            redisTemplate.delete(BLOOM_REBUILD_KEY);
+        }
+    }
+
+    // Deletes marked between reading the recent set and the rename are missed by the new filter, hydration
+    // still drops them once they are no longer published
+    private void rebuildBloomFilter() {
+        Set<String> recent = redisTemplate.opsForZSet().range(RECENT_KEY, 0, -1);
+        List<Long> ids = recent == null ? List.of() : recent.stream().map(Long::valueOf).toList();
+        String rebuildKey = BLOOM_KEY + MEMBER_DELIMITER + "next";
+
+        redisTemplate.delete(rebuildKey);
+        byte[] key = bytes(rebuildKey);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            // Sizes the bitmap up front even when there is nothing to add
+            connection.stringCommands().setBit(key, bloomFilterIndexes.getBits() - 1, false);
+            for (Long id : ids) {
+                for (long index : bloomFilterIndexes.indexes(id)) {
+                    connection.stringCommands().setBit(key, index, true);
+                }
+            }
+            return null;
+        });
+        redisTemplate.rename(rebuildKey, BLOOM_KEY);
+        redisTemplate.opsForValue().set(BLOOM_COUNT_KEY, String.valueOf(ids.size()));
+        log.info("Rebuilt deleted posts Bloom filter with {} recent deletes", ids.size());
+    }
+
+    private Newsfeed fromMember(String member) {
+        int delimiterIndex = member.indexOf(MEMBER_DELIMITER);
+        try {
+            return new Newsfeed(Long.parseLong(member.substring(delimiterIndex + 1)),
+                    Long.parseLong(member.substring(0, delimiterIndex)));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            log.warn("Skipping malformed pending delete {}", member);
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,496 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.service.NewsfeedStore;
+import com.omarahmed42.socialmedia.util.RedisKeys;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps every newsfeed as a sorted set scored by the snowflake post id.
+ * <p>
+ * Members are {@code <zero padded post id>:<author id>}, so entries whose ids
+ * collapse to the same double score are still ordered by post id, and removals
+ * by author can be done without another lookup.
+ * <p>
+ * Writes that target many feeds at once (fanout and fanout eviction) are split
+ * into chunks of {@code newsfeed.fanout.batch-size} feeds, and every chunk is
+ * sent as a single pipeline of {@code EVALSHA} calls. Feeds on a node that has
+ * not cached the script yet are retried with the full script.
+ * <p>
+ * Posts of authors that are not fanned out are kept in the author's own
+ * timeline ({@code timeline:{<authorId>}}) with the same layout, and merged into
+ * the readers' newsfeeds at read time.
+ * <p>
+ * Fanout only appends to newsfeeds that already exist. A missing newsfeed
+ * (expired, evicted or never built) is rebuilt from the database on read and
+ * written back with {@link #merge(Long, Collection)}, together with a marker
+ * member scored below every post, so a rebuild that found no posts still
+ * leaves a feed behind until it expires. The marker is trimmed like any other
+ * member once the feed is full.
+ * <p>
+ * This is the default newsfeed store. Setting
+ * {@code newsfeed.store.type=mapped} selects {@link MappedNewsfeedStore} instead.
+ */
+@Service
+@ConditionalOnProperty(name = "newsfeed.store.type", havingValue = "redis", matchIfMissing = true)
+@Slf4j
+public class RedisNewsfeedStore implements NewsfeedStore {
+
+    private static final String MEMBER_DELIMITER = ":";
+    private static final String POST_ID_FORMAT = "%019d";
+    // Scored below every post id, it keeps a rebuilt feed without posts from being rebuilt on every read
+    private static final String BUILT_MEMBER = "~";
+    private static final String BUILT_SCORE = "-1";
+
+    private static final RedisScript<Long> ADD_AND_TRIM_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[3]) + 1))
+            redis.call('PEXPIRE', KEYS[1], ARGV[4])
+            return 1
+            """, Long.class);
+
+    // Feeds that are not built yet are left alone, they are rebuilt from the database when read
+    private static final RedisScript<Long> ADD_IF_EXISTS_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[3]) + 1))
+            redis.call('PEXPIRE', KEYS[1], ARGV[4])
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> MERGE_AND_TRIM_SCRIPT = new DefaultRedisScript<>("""
+            for i = 3, #ARGV, 2 do
+                redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[1]) + 1))
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> REMOVE_POST_SCRIPT = new DefaultRedisScript<>("""
+            local members = redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[1], ARGV[1])
+            local removed = 0
+            for _, member in ipairs(members) do
+                if string.sub(member, 1, string.len(ARGV[2])) == ARGV[2] then
+                    removed = removed + redis.call('ZREM', KEYS[1], member)
+                end
+            end
+            return removed
+            """, Long.class);
+
+    private static final RedisScript<Long> REMOVE_BY_AUTHOR_SCRIPT = new DefaultRedisScript<>("""
+            local members = redis.call('ZRANGE', KEYS[1], 0, -1)
+            local removed = 0
+            for _, member in ipairs(members) do
+                if string.sub(member, -string.len(ARGV[1])) == ARGV[1] then
+                    removed = removed + redis.call('ZREM', KEYS[1], member)
+                end
+            end
+            return removed
+            """, Long.class);
+
+    private static final String BATCH_TIMER = "newsfeed.store.batch";
+    private static final String WRITE_TIMER = "newsfeed.store.write";
+
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxNewsfeedSize;
+    private final Duration timeToLive;
+    private final boolean slidingExpiration;
+    private final int batchSize;
+
+    public RedisNewsfeedStore(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+            @Value("${newsfeed.max-size:250}") int maxNewsfeedSize,
+            @Value("${newsfeed.store.time-to-live:7d}") Duration timeToLive,
+            @Value("${newsfeed.store.sliding-expiration:true}") boolean slidingExpiration,
+            @Value("${newsfeed.fanout.batch-size:500}") int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Newsfeed fanout batch size must be at least 1");
+
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.maxNewsfeedSize = maxNewsfeedSize;
+        this.timeToLive = timeToLive;
+        this.slidingExpiration = slidingExpiration;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void add(Long userId, Newsfeed newsfeed) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        addTo("add", key(userId), newsfeed, ADD_IF_EXISTS_SCRIPT);
+    }
+
+    @Override
+    public void addToTimeline(Long authorId, Newsfeed newsfeed) {
+        if (authorId == null)
+            throw new IllegalArgumentException("Author id cannot be null");
+
+        addTo("add-timeline", timelineKey(authorId), newsfeed, ADD_AND_TRIM_SCRIPT);
+    }
+
+    private void addTo(String operation, String key, Newsfeed newsfeed, RedisScript<Long> script) {
+        if (newsfeed == null || newsfeed.getPostId() == null || newsfeed.getUserId() == null)
+            throw new IllegalArgumentException("Newsfeed post/user cannot be null");
+
+        writeTimer(operation).record(() -> redisTemplate.execute(script, List.of(key),
+                newsfeed.getPostId().toString(),
+                member(newsfeed),
+                String.valueOf(maxNewsfeedSize),
+                String.valueOf(timeToLive.toMillis())));
+    }
+
+    private Timer writeTimer(String operation) {
+        return Timer.builder(WRITE_TIMER)
+                .description("Latency of a single newsfeed store write")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void addAll(Collection<Long> userIds, Newsfeed newsfeed) {
+        if (newsfeed == null || newsfeed.getPostId() == null || newsfeed.getUserId() == null)
+            throw new IllegalArgumentException("Newsfeed post/user cannot be null");
+
+        executeInBatches("add", userIds, ADD_IF_EXISTS_SCRIPT,
+                newsfeed.getPostId().toString(),
+                member(newsfeed),
+                String.valueOf(maxNewsfeedSize),
+                String.valueOf(timeToLive.toMillis()));
+    }
+
+    @Override
+    public void merge(Long userId, Collection<Newsfeed> newsfeed) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        if (newsfeed == null)
+            newsfeed = List.of();
+
+        List<String> args = new ArrayList<>(4 + newsfeed.size() * 2);
+        args.add(String.valueOf(maxNewsfeedSize));
+        args.add(String.valueOf(timeToLive.toMillis()));
+        args.add(BUILT_SCORE);
+        args.add(BUILT_MEMBER);
+        for (Newsfeed entry : newsfeed) {
+            if (entry == null || entry.getPostId() == null || entry.getUserId() == null)
+                continue;
+
+            args.add(entry.getPostId().toString());
+            args.add(member(entry));
+        }
+
+        writeTimer("merge").record(
+                () -> redisTemplate.execute(MERGE_AND_TRIM_SCRIPT, List.of(key(userId)), args.toArray()));
+    }
+
+    @Override
+    public boolean exists(Long userId) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        return Boolean.TRUE.equals(redisTemplate.hasKey(key(userId)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Newsfeed> findLatest(Long userId, Long beforePostId, int limit) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        if (!slidingExpiration || beforePostId != null || limit < 1)
+            return findLatest(key(userId), beforePostId, limit);
+
+        // Reading the first page keeps the newsfeed of an active reader from expiring
+        byte[] key = key(userId).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.zSetCommands().zRevRange(key, 0, limit - 1L);
+            connection.keyCommands().pExpire(key, timeToLive.toMillis());
+            return null;
+        });
+        return toNewsfeed((Set<String>) results.get(0), null, limit);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Newsfeed> findLatestFromTimelines(Collection<Long> authorIds, Long beforePostId, int limit) {
+        List<Newsfeed> newsfeed = new ArrayList<>();
+        if (authorIds == null || authorIds.isEmpty() || limit < 1)
+            return newsfeed;
+
+        List<Long> authors = authorIds.stream().filter(Objects::nonNull).distinct().toList();
+        List<Object> timelines = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long authorId : authors) {
+                byte[] key = timelineKey(authorId).getBytes(StandardCharsets.UTF_8);
+                if (beforePostId == null)
+                    connection.zSetCommands().zRevRange(key, 0, limit - 1L);
+                else
+                    connection.zSetCommands().zRevRangeByScore(key, Double.NEGATIVE_INFINITY,
+                            beforePostId.doubleValue(), 0, limit);
+            }
+            return null;
+        });
+
+        for (int i = 0; i < authors.size(); i++) {
+            Set<String> members = (Set<String>) timelines.get(i);
+            List<Newsfeed> entries = toNewsfeed(members, beforePostId, limit);
+            // Only hit when the cursor's score bucket swallowed part of the page
+            if (members != null && members.size() == limit && entries.size() < limit)
+                entries = findLatest(timelineKey(authors.get(i)), beforePostId, limit);
+            newsfeed.addAll(entries);
+        }
+        return newsfeed;
+    }
+
+    private List<Newsfeed> findLatest(String key, Long beforePostId, int limit) {
+        if (limit < 1)
+            return new ArrayList<>();
+
+        if (beforePostId == null) {
+            Set<String> members = redisTemplate.opsForZSet().reverseRange(key, 0, limit - 1L);
+            return toNewsfeed(members, null, limit);
+        }
+
+        // Several snowflake ids can map to the same double score, so the cursor's own bucket is
+        // fetched inclusively and filtered by the exact post id
+        List<Newsfeed> result = new ArrayList<>(limit);
+        long offset = 0;
+        while (result.size() < limit) {
+            Set<String> members = redisTemplate.opsForZSet().reverseRangeByScore(key, Double.NEGATIVE_INFINITY,
+                    beforePostId.doubleValue(), offset, limit);
+            if (members == null || members.isEmpty())
+                break;
+
+            result.addAll(toNewsfeed(members, beforePostId, limit - result.size()));
+            if (members.size() < limit)
+                break;
+            offset += members.size();
+        }
+        return result;
+    }
+
+    @Override
+    public void removePost(Long userId, Long postId) {
+        if (userId == null)
+            throw new IllegalArgumentException("User id cannot be null");
+
+        if (postId == null)
+            throw new IllegalArgumentException("Post id cannot be null");
+
+        redisTemplate.execute(REMOVE_POST_SCRIPT, List.of(key(userId)), postId.toString(),
+                formatPostId(postId) + MEMBER_DELIMITER);
+    }
+
+    @Override
+    public void removePost(Collection<Long> userIds, Long postId) {
+        if (postId == null)
+            throw new IllegalArgumentException("Post id cannot be null");
+
+        executeInBatches("remove-post", userIds, REMOVE_POST_SCRIPT, postId.toString(),
+                formatPostId(postId) + MEMBER_DELIMITER);
+    }
+
+    @Override
+    public void removeFromTimeline(Long authorId, Long postId) {
+        if (authorId == null)
+            throw new IllegalArgumentException("Author id cannot be null");
+
+        if (postId == null)
+            throw new IllegalArgumentException("Post id cannot be null");
+
+        redisTemplate.execute(REMOVE_POST_SCRIPT, List.of(timelineKey(authorId)), postId.toString(),
+                formatPostId(postId) + MEMBER_DELIMITER);
+    }
+
+    @Override
+    public void removeByAuthor(Long userId, Long authorId) {
+        if (userId == null || authorId == null)
+            throw new IllegalArgumentException("User/Author id cannot be null");
+
+        redisTemplate.execute(REMOVE_BY_AUTHOR_SCRIPT, List.of(key(userId)), MEMBER_DELIMITER + authorId);
+    }
+
+    @Override
+    public void removeByAuthor(Collection<Long> userIds, Long authorId) {
+        if (authorId == null)
+            throw new IllegalArgumentException("Author id cannot be null");
+
+        executeInBatches("remove-author", userIds, REMOVE_BY_AUTHOR_SCRIPT, MEMBER_DELIMITER + authorId);
+    }
+
+    private void executeInBatches(String operation, Collection<Long> userIds, RedisScript<Long> script,
+            String... args) {
+        if (userIds == null || userIds.isEmpty())
+            return;
+
+        PipelinedScript pipelinedScript = new PipelinedScript(script.getSha1().getBytes(StandardCharsets.UTF_8),
+                script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+        byte[][] encodedArgs = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            encodedArgs[i] = args[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        Timer batchTimer = Timer.builder(BATCH_TIMER)
+                .description("Latency of a single pipelined newsfeed store batch")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        List<Long> batch = new ArrayList<>(Math.min(batchSize, userIds.size()));
+        for (Long userId : userIds) {
+            if (userId == null)
+                continue;
+
+            batch.add(userId);
+            if (batch.size() == batchSize) {
+                executeBatch(operation, batch, pipelinedScript, encodedArgs, batchTimer);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty())
+            executeBatch(operation, batch, pipelinedScript, encodedArgs, batchTimer);
+    }
+
+    private void executeBatch(String operation, List<Long> userIds, PipelinedScript script, byte[][] args,
+            Timer batchTimer) {
+        long start = System.nanoTime();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long userId : userIds) {
+                    connection.scriptingCommands().evalSha(script.sha1(), ReturnType.INTEGER, 1,
+                            keysAndArgs(key(userId), args));
+                }
+                return null;
+            });
+        } catch (RedisPipelineException e) {
+            // Nodes that do not have the script cached get its body once, later batches send the digest again
+            List<Long> uncached = withoutCachedScript(userIds, e);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long userId : uncached) {
+                    connection.scriptingCommands().eval(script.body(), ReturnType.INTEGER, 1,
+                            keysAndArgs(key(userId), args));
+                }
+                return null;
+            });
+        }
+        long elapsed = System.nanoTime() - start;
+        batchTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.debug("Newsfeed {} batch of {} feeds took {} ms", operation, userIds.size(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    // Rethrows the failure unless every failed command only missed the script
+    private static List<Long> withoutCachedScript(List<Long> userIds, RedisPipelineException e) {
+        List<Object> results = e.getPipelineResult();
+        if (results == null || results.size() != userIds.size())
+            throw e;
+
+        List<Long> uncached = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (!(results.get(i) instanceof Throwable failure))
+                continue;
+            if (!isNoScript(failure))
+                throw e;
+            uncached.add(userIds.get(i));
+        }
+        return uncached;
+    }
+
+    private static boolean isNoScript(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT"))
+                return true;
+        }
+        return false;
+    }
+
+    private static byte[][] keysAndArgs(String key, byte[][] args) {
+        byte[][] keysAndArgs = new byte[args.length + 1][];
+        keysAndArgs[0] = key.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(args, 0, keysAndArgs, 1, args.length);
+        return keysAndArgs;
+    }
+
+    private List<Newsfeed> toNewsfeed(Set<String> members, Long beforePostId, int limit) {
+        List<Newsfeed> newsfeed = new ArrayList<>();
+        if (members == null)
+            return newsfeed;
+
+        for (String member : members) {
+            if (newsfeed.size() >= limit)
+                break;
+
+            if (BUILT_MEMBER.equals(member))
+                continue;
+
+            Newsfeed entry = fromMember(member);
+            if (entry == null || (beforePostId != null && entry.getPostId() >= beforePostId))
+                continue;
+            newsfeed.add(entry);
+        }
+        return newsfeed;
+    }
+
+    private String key(Long userId) {
+        return RedisKeys.newsfeed(userId);
+    }
+
+    private String timelineKey(Long authorId) {
+        return RedisKeys.timeline(authorId);
+    }
+
+    private String member(Newsfeed newsfeed) {
+        return formatPostId(newsfeed.getPostId()) + MEMBER_DELIMITER + newsfeed.getUserId();
+    }
+
+    private String formatPostId(Long postId) {
+        return String.format(POST_ID_FORMAT, postId);
+    }
+
+    private Newsfeed fromMember(String member) {
+        int delimiterIndex = member.indexOf(MEMBER_DELIMITER);
+        if (delimiterIndex < 0) {
+            log.warn("Skipping malformed newsfeed member {}", member);
+            return null;
+        }
+        try {
+            Long postId = Long.parseLong(member.substring(0, delimiterIndex));
+            Long userId = Long.parseLong(member.substring(delimiterIndex + 1));
+            return new Newsfeed(userId, postId);
+        } catch (NumberFormatException e) {
+            log.warn("Skipping malformed newsfeed member {}", member);
+            return null;
+        }
+    }
+
+    private record PipelinedScript(byte[] sha1, byte[] body) {
+    }
+}
@@ -3,6 +3,7 @@ package com.omarahmed42.socialmedia.service.impl;
 import java.io.File;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -146,7 +147,12 @@ public class UserServiceImpl implements UserService {
     @KafkaListener(topics = "graph-user-deletion")
     public void removeUserFromGraph(ConsumerRecord<String, Long> consumerRecord) {
         Long userId = consumerRecord.value();
+        List<Long> friendIds = userNodeRepository.findAllFriendsById(userId).stream()
+                .map(UserNode::getUserId)
+                .toList();
         userNodeRepository.deleteById(userId);
+        if (!friendIds.isEmpty())
+            userNodeRepository.refreshFriendCounts(friendIds);
     }
 
     @Override
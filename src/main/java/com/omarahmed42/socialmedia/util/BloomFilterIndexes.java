@@ -0,0 +1,55 @@
+package com.omarahmed42.socialmedia.util;
+
+/**
+ * Bit positions of a Bloom filter over {@code long} keys, sized from the
+ * expected number of insertions and the acceptable false positive rate.
+ * <p>
+ * Positions are derived from two 64 bit mixes of the key (double hashing), so
+ * every node computes the same positions for a key.
+ */
+public class BloomFilterIndexes {
+
+    private final long bits;
+    private final int hashes;
+
+    public BloomFilterIndexes(long expectedInsertions, double falsePositiveProbability) {
+        if (expectedInsertions < 1)
+            throw new IllegalArgumentException("Expected insertions must be at least 1");
+
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1");
+
+        double ln2 = Math.log(2);
+        this.bits = Math.max(64L, (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (ln2 * ln2)));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * ln2));
+    }
+
+    public long[] indexes(long key) {
+        long first = mix(key);
+        long second = mix(first ^ 0x9E3779B97F4A7C15L) | 1L;
+
+        long[] indexes = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            indexes[i] = Math.floorMod(first + i * second, bits);
+        }
+        return indexes;
+    }
+
+    public long getBits() {
+        return bits;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    // Final mix of MurmurHash3's 64 bit variant
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,39 @@
+package com.omarahmed42.socialmedia.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.omarahmed42.socialmedia.exception.InvalidInputException;
+
+public class CursorUtils {
+    private static final String CURSOR_PREFIX = "cursor:";
+
+    private CursorUtils() {
+
+    }
+
+    public static String encode(Long id) {
+        if (id == null)
+            return null;
+
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Long decode(String cursor) {
+        if (StringUtils.isBlank(cursor))
+            return null;
+
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(CURSOR_PREFIX))
+                throw new InvalidInputException("Invalid cursor");
+
+            return Long.parseLong(decoded.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.omarahmed42.socialmedia.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out permits evenly spaced at a fixed rate, callers block until their
+ * permits are due. Unused time is not saved up, so there are no bursts after
+ * idle periods.
+ */
+public class RateLimiter {
+
+    private final long nanosPerPermit;
+    private final LongSupplier nanoClock;
+    private long nextFreeNanos;
+
+    public RateLimiter(int permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    RateLimiter(int permitsPerSecond, LongSupplier nanoClock) {
+        if (permitsPerSecond < 1)
+            throw new IllegalArgumentException("Permits per second must be at least 1");
+
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.nanoClock = nanoClock;
+        this.nextFreeNanos = nanoClock.getAsLong();
+    }
+
+    public void acquire(int permits) throws InterruptedException {
+        long wait = reserve(permits);
+        if (wait > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    /**
+     * Reserves the permits and returns how long the caller has to wait for them, in nanoseconds.
+     */
+    synchronized long reserve(int permits) {
+        if (permits < 1)
+            throw new IllegalArgumentException("Permits must be at least 1");
+
+        long now = nanoClock.getAsLong();
+        long start = Math.max(now, nextFreeNanos);
+        nextFreeNanos = start + permits * nanosPerPermit;
+        return start - now;
+    }
+}
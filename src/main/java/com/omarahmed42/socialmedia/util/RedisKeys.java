@@ -0,0 +1,49 @@
+package com.omarahmed42.socialmedia.util;
+
+/**
+ * Keys of the per-user and per-post data kept in Redis outside the Spring
+ * caches. The owner id is a hash tag, so in cluster mode every key of a user,
+ * or every counter of a post, lives in one slot and can be read or written by
+ * a single multi-key command or script.
+ */
+public class RedisKeys {
+    private static final String NEWSFEED_PREFIX = "newsfeed";
+    private static final String TIMELINE_PREFIX = "timeline";
+    private static final String POST_PREFIX = "post";
+    private static final String COMMENT_PREFIX = "comment";
+    private static final String REACTIONS_SUFFIX = "reactions";
+    private static final String REACTION_DELTAS_PREFIX = "reaction-deltas";
+    private static final String KEY_DELIMITER = ":";
+
+    private RedisKeys() {
+
+    }
+
+    public static String newsfeed(Object userId) {
+        return NEWSFEED_PREFIX + KEY_DELIMITER + hashTag(userId);
+    }
+
+    public static String timeline(Object authorId) {
+        return TIMELINE_PREFIX + KEY_DELIMITER + hashTag(authorId);
+    }
+
+    public static String postReactions(Object postId) {
+        return POST_PREFIX + KEY_DELIMITER + hashTag(postId) + KEY_DELIMITER + REACTIONS_SUFFIX;
+    }
+
+    public static String commentReactions(Object commentId) {
+        return COMMENT_PREFIX + KEY_DELIMITER + hashTag(commentId) + KEY_DELIMITER + REACTIONS_SUFFIX;
+    }
+
+    /**
+     * Reaction count deltas waiting to be written to the database, spread over
+     * shards so they do not all land on one cluster node.
+     */
+    public static String reactionDeltas(int shard) {
+        return REACTION_DELTAS_PREFIX + KEY_DELIMITER + hashTag(shard);
+    }
+
+    private static String hashTag(Object id) {
+        return "{" + id + "}";
+    }
+}
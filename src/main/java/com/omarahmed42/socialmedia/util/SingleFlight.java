@@ -0,0 +1,62 @@
+package com.omarahmed42.socialmedia.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent loads of the same key into one: callers that ask for a
+ * key while it is being loaded get the future of the load already running.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public CompletableFuture<V> execute(K key, Supplier<V> loader, Executor executor) {
+        CompletableFuture<V> future = inFlight.computeIfAbsent(key,
+                k -> CompletableFuture.supplyAsync(loader, executor));
+        future.whenComplete((value, throwable) -> inFlight.remove(key, future));
+        return future;
+    }
+
+    /**
+     * Loads the key on the calling thread, or waits for the load another thread
+     * is already running and returns its result.
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null)
+            return await(running);
+
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
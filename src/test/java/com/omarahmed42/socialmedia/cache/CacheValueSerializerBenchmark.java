@@ -0,0 +1,63 @@
+package com.omarahmed42.socialmedia.cache;
+
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties.SerializationFormat;
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+
+/**
+ * Compares value size and serialization time of the cache value formats.
+ * Run with {@code mvn test -Dtest=CacheValueSerializerBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CacheValueSerializerBenchmark {
+
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 200_000;
+
+    @Test
+    @DisplayName("JSON vs protobuf on posts and newsfeed entries")
+    void compareFormats() {
+        RedisSerializer<Object> json = ProtobufCacheValueSerializerTest.serializer(SerializationFormat.JSON);
+        RedisSerializer<Object> protobuf = ProtobufCacheValueSerializerTest.serializer(SerializationFormat.PROTOBUF);
+
+        System.out.printf("%-14s %-9s %8s %12s %12s%n", "payload", "format", "bytes", "ser ns/op", "de ns/op");
+        for (SerializationFormat format : SerializationFormat.values()) {
+            RedisSerializer<Object> serializer = format == SerializationFormat.JSON ? json : protobuf;
+            run("short post", format, serializer, () -> ProtobufCacheValueSerializerTest.post(
+                    "Just landed, the view from up here is amazing"));
+            run("long post", format, serializer, () -> ProtobufCacheValueSerializerTest.post(
+                    "Some thoughts on caching after this week's incident. ".repeat(4)));
+            run("newsfeed", format, serializer, () -> new Newsfeed(1163401234567890000L, 1163401234567890123L));
+        }
+    }
+
+    private static void run(String name, SerializationFormat format, RedisSerializer<Object> serializer,
+            Supplier<Object> payload) {
+        Object value = payload.get();
+        byte[] bytes = serializer.serialize(value);
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++)
+            sink += serializer.serialize(value).length + (serializer.deserialize(bytes) == null ? 0 : 1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            sink += serializer.serialize(value).length;
+        long serialize = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            sink += serializer.deserialize(bytes) == null ? 0 : 1;
+        long deserialize = (System.nanoTime() - start) / ITERATIONS;
+
+        System.out.printf("%-14s %-9s %8d %12d %12d%n", name, format, bytes.length, serialize, deserialize);
+        if (sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,88 @@
+package com.omarahmed42.socialmedia.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+
+class CoalescingLoaderTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+    private final CachingProperties.Lock lock = new CachingProperties.Lock();
+    private final CoalescingLoader loader = new CoalescingLoader(redisTemplate, lock);
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<String> writes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        lock.setWaitTime(Duration.ofMillis(200));
+        lock.setRetryInterval(Duration.ofMillis(5));
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    @DisplayName("The lock holder loads and caches the value, then releases the lock")
+    void lockAcquired_loadsAndReleases() {
+        when(valueOperations.setIfAbsent(eq("lock:posts::1"), anyString(), any(Duration.class))).thenReturn(true);
+
+        assertEquals("post", loader.load("posts::1", () -> null, this::load, writes::add));
+
+        assertEquals(1, loads.get());
+        assertEquals(List.of("post"), writes);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("lock:posts::1")), anyString());
+    }
+
+    @Test
+    @DisplayName("Other nodes wait for the value cached by the lock holder")
+    void lockHeldElsewhere_waitsForValue() {
+        when(valueOperations.setIfAbsent(eq("lock:posts::1"), anyString(), any(Duration.class))).thenReturn(false);
+        AtomicInteger reads = new AtomicInteger();
+
+        String value = loader.load("posts::1",
+                () -> reads.incrementAndGet() < 3 ? null : new SimpleValueWrapper("cached"), this::load, writes::add);
+
+        assertEquals("cached", value);
+        assertEquals(0, loads.get());
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), anyString());
+    }
+
+    @Test
+    @DisplayName("Other nodes load the value themselves once the wait time is up")
+    void lockHeldElsewhere_loadsAfterWaitTime() {
+        when(valueOperations.setIfAbsent(eq("lock:posts::1"), anyString(), any(Duration.class))).thenReturn(false);
+        ValueWrapper missing = null;
+
+        assertEquals("post", loader.load("posts::1", () -> missing, this::load, writes::add));
+        assertEquals(1, loads.get());
+        assertEquals(List.of("post"), writes);
+    }
+
+    private String load() {
+        loads.incrementAndGet();
+        return "post";
+    }
+}
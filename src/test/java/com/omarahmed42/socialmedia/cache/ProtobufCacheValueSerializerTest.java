@@ -0,0 +1,103 @@
+package com.omarahmed42.socialmedia.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.configuration.CachingProperties.SerializationFormat;
+import com.omarahmed42.socialmedia.configuration.RedisConfiguration;
+import com.omarahmed42.socialmedia.enums.CommentStatus;
+import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.model.Post;
+import com.omarahmed42.socialmedia.model.cache.CommentSnapshot;
+import com.omarahmed42.socialmedia.model.cache.ConversationSnapshot;
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.model.cache.PostReactionSnapshot;
+import com.omarahmed42.socialmedia.model.cache.PostSnapshot;
+
+class ProtobufCacheValueSerializerTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 3, 1, 10, 15, 30, 123_456_000);
+
+    private final RedisSerializer<Object> json = serializer(SerializationFormat.JSON);
+    private final RedisSerializer<Object> protobuf = serializer(SerializationFormat.PROTOBUF);
+
+    static RedisSerializer<Object> serializer(SerializationFormat format) {
+        CachingProperties properties = new CachingProperties();
+        properties.getSerialization().setFormat(format);
+        return new RedisConfiguration().cacheValueSerializer(new Jackson2ObjectMapperBuilder().build(), properties);
+    }
+
+    static Post post(String content) {
+        PostSnapshot snapshot = new PostSnapshot(1163401234567890123L, content, PostStatus.PUBLISHED,
+                1163401234567890000L, null, CREATED_AT, CREATED_AT.plusMinutes(5));
+        return snapshot.toEntity();
+    }
+
+    @Test
+    @DisplayName("Snapshots survive a round trip unchanged")
+    void snapshots_roundTrip() {
+        RedisSerializer<Object> raw = new ProtobufCacheValueSerializer(null, 512);
+
+        PostSnapshot post = new PostSnapshot(1L, "content", PostStatus.TOMBSTONE, 2L, 3L, CREATED_AT, null);
+        CommentSnapshot comment = new CommentSnapshot(4L, null, CommentStatus.PUBLISHED, 1L, 2L, CREATED_AT,
+                CREATED_AT);
+        ConversationSnapshot conversation = new ConversationSnapshot(5L, "group", true, CREATED_AT, null);
+        PostReactionSnapshot postReaction = new PostReactionSnapshot(2L, 1L, 3, null, CREATED_AT, null);
+
+        assertEquals(post, raw.deserialize(raw.serialize(post)));
+        assertEquals(comment, raw.deserialize(raw.serialize(comment)));
+        assertEquals(conversation, raw.deserialize(raw.serialize(conversation)));
+        assertEquals(postReaction, raw.deserialize(raw.serialize(postReaction)));
+        assertEquals(new Newsfeed(2L, 1L), raw.deserialize(raw.serialize(new Newsfeed(2L, 1L))));
+    }
+
+    @Test
+    @DisplayName("Large values are deflated and read back")
+    void largeValues_areCompressed() {
+        Post post = post("lorem ipsum dolor sit amet ".repeat(40));
+
+        byte[] bytes = protobuf.serialize(post);
+        assertTrue((bytes[0] & 0x80) != 0);
+        assertTrue(bytes.length < post.getContent().length());
+
+        Post cached = assertInstanceOf(Post.class, protobuf.deserialize(bytes));
+        assertEquals(post.getContent(), cached.getContent());
+    }
+
+    @Test
+    @DisplayName("Entries written as JSON are still read")
+    void legacyJson_isRead() {
+        Post post = post("content");
+
+        Post cached = assertInstanceOf(Post.class, protobuf.deserialize(json.serialize(post)));
+        assertEquals(post.getId(), cached.getId());
+        assertEquals(post.getCreatedAt(), cached.getCreatedAt());
+    }
+
+    @Test
+    @DisplayName("Values without a schema fall back to JSON")
+    void otherValues_useJson() {
+        assertEquals(42L, protobuf.deserialize(protobuf.serialize(42L)));
+        assertNull(protobuf.deserialize(protobuf.serialize(null)));
+    }
+
+    @Test
+    @DisplayName("Protobuf values are much smaller than JSON values")
+    void protobuf_isSmallerThanJson() {
+        Post post = post("Just landed, the view from up here is amazing");
+        Newsfeed newsfeed = new Newsfeed(1163401234567890000L, 1163401234567890123L);
+
+        assertTrue(protobuf.serialize(post).length * 3 < json.serialize(post).length);
+        assertTrue(protobuf.serialize(newsfeed).length * 3 < json.serialize(newsfeed).length);
+    }
+}
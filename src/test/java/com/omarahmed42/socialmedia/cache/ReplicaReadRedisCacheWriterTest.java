@@ -0,0 +1,66 @@
+package com.omarahmed42.socialmedia.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+class ReplicaReadRedisCacheWriterTest {
+
+    private static final byte[] KEY = { 1 };
+    private static final byte[] VALUE = { 2 };
+
+    private final RedisCacheWriter primary = mock(RedisCacheWriter.class);
+    private final RedisCacheWriter replica = mock(RedisCacheWriter.class);
+    private final ReplicaReadRedisCacheWriter writer = new ReplicaReadRedisCacheWriter(primary, replica,
+            Set.of("reactions"));
+
+    @Test
+    @DisplayName("Should read caches opted into replica reads from the replica")
+    void get_replicaReadCache_readsReplica() {
+        when(replica.get("reactions", KEY)).thenReturn(VALUE);
+
+        assertArrayEquals(VALUE, writer.get("reactions", KEY));
+        verifyNoInteractions(primary);
+    }
+
+    @Test
+    @DisplayName("Should read other caches from the primary")
+    void get_otherCache_readsPrimary() {
+        when(primary.get("posts", KEY)).thenReturn(VALUE);
+
+        assertArrayEquals(VALUE, writer.get("posts", KEY));
+        verifyNoInteractions(replica);
+    }
+
+    @Test
+    @DisplayName("Should read from the primary when the lookup also resets time to idle")
+    void get_withTimeToIdle_readsPrimary() {
+        Duration ttl = Duration.ofMinutes(5);
+        when(primary.get("reactions", KEY, ttl)).thenReturn(VALUE);
+
+        assertArrayEquals(VALUE, writer.get("reactions", KEY, ttl));
+        verifyNoInteractions(replica);
+    }
+
+    @Test
+    @DisplayName("Should always write to the primary")
+    void put_replicaReadCache_writesPrimary() {
+        Duration ttl = Duration.ofDays(1);
+
+        writer.put("reactions", KEY, VALUE, ttl);
+        writer.remove("reactions", KEY);
+
+        verify(primary).put("reactions", KEY, VALUE, ttl);
+        verify(primary).remove("reactions", KEY);
+        verifyNoInteractions(replica);
+    }
+}
@@ -0,0 +1,92 @@
+package com.omarahmed42.socialmedia.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.configuration.RedisConfiguration;
+import com.omarahmed42.socialmedia.enums.PostStatus;
+import com.omarahmed42.socialmedia.model.Post;
+import com.omarahmed42.socialmedia.model.PostReaction;
+import com.omarahmed42.socialmedia.model.PostReactionId;
+import com.omarahmed42.socialmedia.model.Reaction;
+import com.omarahmed42.socialmedia.model.User;
+
+class SnapshotRedisSerializerTest {
+
+    private final RedisSerializer<Object> serializer = new RedisConfiguration()
+            .cacheValueSerializer(new Jackson2ObjectMapperBuilder().build(), new CachingProperties());
+
+    @Test
+    @DisplayName("Post is cached as a flat snapshot and read back as a detached entity")
+    void post_roundTrip() {
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("author");
+        user.setPassword("secret");
+
+        Post parent = new Post("parent", PostStatus.PUBLISHED, user);
+        parent.setId(1L);
+
+        Post post = new Post("content", PostStatus.PUBLISHED, user);
+        post.setId(2L);
+        post.setParent(parent);
+        post.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+
+        byte[] bytes = serializer.serialize(post);
+        String payload = new String(bytes, StandardCharsets.UTF_8);
+        assertFalse(payload.contains("secret"));
+        assertFalse(payload.contains("parent\""));
+
+        Post cached = assertInstanceOf(Post.class, serializer.deserialize(bytes));
+        assertEquals(2L, cached.getId());
+        assertEquals("content", cached.getContent());
+        assertEquals(PostStatus.PUBLISHED, cached.getPostStatus());
+        assertEquals(7L, cached.getUser().getId());
+        assertNull(cached.getUser().getUsername());
+        assertEquals(1L, cached.getParent().getId());
+        assertNull(cached.getParent().getContent());
+        assertEquals(post.getCreatedAt(), cached.getCreatedAt());
+    }
+
+    @Test
+    @DisplayName("Post reaction keeps its composite id and reaction")
+    void postReaction_roundTrip() {
+        User user = new User();
+        user.setId(7L);
+        Post post = new Post();
+        post.setId(2L);
+        Reaction reaction = new Reaction();
+        reaction.setId(3);
+        reaction.setName("LIKE");
+
+        PostReactionId id = new PostReactionId();
+        id.setUser(user);
+        id.setPost(post);
+        PostReaction postReaction = new PostReaction(id);
+        postReaction.setReaction(reaction);
+
+        PostReaction cached = assertInstanceOf(PostReaction.class,
+                serializer.deserialize(serializer.serialize(postReaction)));
+        assertEquals("7:2", cached.getPostReactionId().toString());
+        assertEquals(3, cached.getReaction().getId());
+        assertEquals("LIKE", cached.getReaction().getName());
+    }
+
+    @Test
+    @DisplayName("Values without a snapshot are cached as they are")
+    void otherValues_passThrough() {
+        assertEquals(42L, serializer.deserialize(serializer.serialize(42L)));
+        assertNull(serializer.deserialize(serializer.serialize(null)));
+    }
+}
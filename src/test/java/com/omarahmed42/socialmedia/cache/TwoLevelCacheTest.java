@@ -0,0 +1,172 @@
+package com.omarahmed42.socialmedia.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.omarahmed42.socialmedia.metrics.CacheMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TwoLevelCacheTest {
+
+    private final ConcurrentMapCache redisCache = new ConcurrentMapCache("posts");
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final List<String> invalidations = new ArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CacheMetrics cacheMetrics = new CacheMetrics(meterRegistry);
+
+    private TwoLevelCache cache(RefreshAhead refreshAhead) {
+        return cache(refreshAhead, null);
+    }
+
+    private TwoLevelCache cache(RefreshAhead refreshAhead, RedisSerializer<Object> serializer) {
+        return new TwoLevelCache("posts", Caffeine.newBuilder().build(), redisCache, true, serializer,
+                invalidations::add, new CoalescingLoader(), refreshAhead, cacheMetrics);
+    }
+
+    @Test
+    @DisplayName("Entries read from Redis are served in process afterwards")
+    void redisHit_fillsLocalCache() {
+        TwoLevelCache cache = cache(null);
+        redisCache.put(1L, "post");
+
+        assertEquals("post", cache.get(1L).get());
+        redisCache.evict(1L);
+        assertEquals("post", cache.get(1L).get());
+
+        assertEquals(1, lookups("hit"));
+        assertEquals(1, lookups("miss"));
+    }
+
+    @Test
+    @DisplayName("In-process entries are shared by reference unless the cache stores them by value")
+    void localHit_storeByValue_returnsCopy() {
+        List<String> post = new ArrayList<>(List.of("post"));
+        TwoLevelCache byReference = cache(null);
+        byReference.put(1L, post);
+        assertSame(post, byReference.get(1L).get());
+
+        TwoLevelCache byValue = cache(null, RedisSerializer.java());
+        byValue.put(2L, post);
+        assertEquals(post, byValue.get(2L).get());
+        assertNotSame(post, byValue.get(2L).get());
+    }
+
+    @Test
+    @DisplayName("Concurrent misses of a key share a single load")
+    void concurrentMisses_loadOnce() throws Exception {
+        TwoLevelCache cache = cache(null);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(1L, () -> {
+                        Thread.sleep(100);
+                        return "post-" + loads.incrementAndGet();
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<Object> result : results)
+                assertEquals("post-1", result.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, meterRegistry.get("cache.load").tag("cache", "posts").timer().count());
+    }
+
+    @Test
+    @DisplayName("Lookups that found nothing are cached")
+    void nullValue_isCached() {
+        TwoLevelCache cache = cache(null);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertNull(cache.get(1L, () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get(1L, () -> "post"));
+        assertEquals(1, loads.get());
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("cache.lookups").tag("cache", "posts").tag("level", CacheMetrics.LOCAL)
+                .tag("result", result).counter().count();
+    }
+
+    @Test
+    @DisplayName("Writes and evictions are announced to the other nodes")
+    void writes_publishInvalidation() {
+        TwoLevelCache cache = cache(null);
+
+        cache.put(1L, "post");
+        cache.evict(1L);
+
+        assertEquals(List.of("1", "1"), invalidations);
+        assertNull(cache.get(1L));
+    }
+
+    @Test
+    @DisplayName("Entries close to expiring are reloaded in the background")
+    void expiringEntry_isRefreshed() {
+        TwoLevelCache cache = cache(new RefreshAhead(redisTemplate, "posts::", Duration.ofMinutes(5), Runnable::run));
+        redisCache.put(1L, "stale");
+        when(redisTemplate.getExpire("posts::1", TimeUnit.MILLISECONDS)).thenReturn(1_000L);
+
+        assertEquals("stale", cache.get(1L, () -> "fresh"));
+        assertEquals("fresh", redisCache.get(1L).get());
+        assertEquals("fresh", cache.get(1L).get());
+    }
+
+    @Test
+    @DisplayName("Entries with enough time to live left are not reloaded")
+    void freshEntry_isNotRefreshed() {
+        TwoLevelCache cache = cache(new RefreshAhead(redisTemplate, "posts::", Duration.ofMinutes(5), Runnable::run));
+        redisCache.put(1L, "post");
+        when(redisTemplate.getExpire("posts::1", TimeUnit.MILLISECONDS)).thenReturn(Duration.ofMinutes(20).toMillis());
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("post", cache.get(1L, () -> "reloaded-" + loads.incrementAndGet()));
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    @DisplayName("Misses are loaded in the caller without checking the time to live")
+    void miss_isLoadedSynchronously() {
+        TwoLevelCache cache = cache(new RefreshAhead(redisTemplate, "posts::", Duration.ofMinutes(5), Runnable::run));
+
+        assertEquals("loaded", cache.get(1L, () -> "loaded"));
+        assertEquals("loaded", redisCache.get(1L).get());
+        verify(redisTemplate, never()).getExpire(any(), eq(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,48 @@
+package com.omarahmed42.socialmedia.importer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ImportCheckpointTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Should start from the beginning when there is no checkpoint")
+    void load_missingFile_startsFromBeginning() {
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(directory.resolve("checkpoint.json"), objectMapper);
+
+        assertEquals(0L, checkpoint.position(ImportPhase.USERS));
+        assertFalse(checkpoint.isCompleted(ImportPhase.USERS));
+    }
+
+    @Test
+    @DisplayName("Should resume from the saved positions and completed phases")
+    void load_savedCheckpoint_resumes() {
+        Path file = directory.resolve("checkpoint.json");
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(file, objectMapper);
+        checkpoint.save(ImportPhase.USERS, 3000L);
+        checkpoint.complete(ImportPhase.USERS);
+        checkpoint.save(ImportPhase.FRIENDSHIPS, 1000L);
+
+        ImportCheckpoint resumed = ImportCheckpoint.load(file, objectMapper);
+
+        assertTrue(resumed.isCompleted(ImportPhase.USERS));
+        assertFalse(resumed.isCompleted(ImportPhase.FRIENDSHIPS));
+        assertEquals(3000L, resumed.position(ImportPhase.USERS));
+        assertEquals(1000L, resumed.position(ImportPhase.FRIENDSHIPS));
+        assertEquals(0L, resumed.position(ImportPhase.POSTS));
+    }
+}
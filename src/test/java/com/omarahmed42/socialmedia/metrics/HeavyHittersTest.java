@@ -0,0 +1,75 @@
+package com.omarahmed42.socialmedia.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.omarahmed42.socialmedia.metrics.HeavyHitters.HeavyHitter;
+
+class HeavyHittersTest {
+
+    private static final Duration HALF_LIFE = Duration.ofMinutes(1);
+
+    @Test
+    @DisplayName("Should find the hottest keys among a long tail of cold ones")
+    void top_hotKeysInLongTail_rankedFirst() {
+        HeavyHitters heavyHitters = new HeavyHitters(20, HALF_LIFE, 1, () -> 0L);
+
+        for (int i = 0; i < 10_000; i++) {
+            heavyHitters.record("cold-" + i);
+            if (i % 4 == 0)
+                heavyHitters.record("viral");
+            if (i % 10 == 0)
+                heavyHitters.record("trending");
+        }
+
+        List<HeavyHitter> top = heavyHitters.top(2);
+        assertEquals(List.of("viral", "trending"), top.stream().map(HeavyHitter::key).toList());
+        assertTrue(top.get(0).count() - top.get(0).error() <= 2_500 && top.get(0).count() >= 2_500);
+    }
+
+    @Test
+    @DisplayName("Should count tracked keys exactly while there is room for them")
+    void top_fewerKeysThanCapacity_exactCounts() {
+        HeavyHitters heavyHitters = new HeavyHitters(10, HALF_LIFE, 1, () -> 0L);
+
+        heavyHitters.record("a");
+        heavyHitters.record("b");
+        heavyHitters.record("a");
+
+        assertEquals(List.of(new HeavyHitter("a", 2, 0), new HeavyHitter("b", 1, 0)), heavyHitters.top(10));
+    }
+
+    @Test
+    @DisplayName("Should halve counts every half life so past traffic fades out")
+    void top_afterHalfLives_countsDecayed() {
+        AtomicLong clock = new AtomicLong();
+        HeavyHitters heavyHitters = new HeavyHitters(10, HALF_LIFE, 1, clock::get);
+        for (int i = 0; i < 8; i++)
+            heavyHitters.record("old");
+        heavyHitters.record("once");
+
+        clock.set(HALF_LIFE.toNanos() * 2);
+        heavyHitters.record("new");
+
+        assertEquals(List.of(new HeavyHitter("old", 2, 0), new HeavyHitter("new", 1, 0)), heavyHitters.top(10));
+    }
+
+    @Test
+    @DisplayName("Should scale sampled counts back up to the number of recorded keys")
+    void top_sampled_countsScaled() {
+        HeavyHitters heavyHitters = new HeavyHitters(10, HALF_LIFE, 8, () -> 0L);
+
+        for (int i = 0; i < 80_000; i++)
+            heavyHitters.record("viral");
+
+        long count = heavyHitters.top(1).get(0).count();
+        assertTrue(count > 72_000 && count < 88_000, "Estimated " + count);
+    }
+}
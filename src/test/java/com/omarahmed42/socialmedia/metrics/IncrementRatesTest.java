@@ -0,0 +1,57 @@
+package com.omarahmed42.socialmedia.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class IncrementRatesTest {
+
+    @Test
+    @DisplayName("Should measure the increments per second of every counter incremented in the window")
+    void rotate_measuresRatesOfWindow() {
+        AtomicLong clock = new AtomicLong();
+        IncrementRates rates = new IncrementRates(clock::get);
+
+        for (int i = 0; i < 1_000; i++)
+            rates.record(1L);
+        rates.record(2L);
+        clock.addAndGet(Duration.ofSeconds(2).toNanos());
+
+        assertEquals(Map.of(1L, 500d, 2L, 0.5d), rates.rotate());
+        assertEquals(Map.of(1L, 500d, 2L, 0.5d), rates.lastRates());
+    }
+
+    @Test
+    @DisplayName("Should count an aggregated update as all the increments it holds")
+    void record_aggregated_countsIncrements() {
+        AtomicLong clock = new AtomicLong();
+        IncrementRates rates = new IncrementRates(clock::get);
+
+        rates.record(1L, 600);
+        rates.record(1L);
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        assertEquals(Map.of(1L, 601d), rates.rotate());
+    }
+
+    @Test
+    @DisplayName("Should start a new window and forget counters that were not incremented in it")
+    void rotate_startsNewWindow() {
+        AtomicLong clock = new AtomicLong();
+        IncrementRates rates = new IncrementRates(clock::get);
+        rates.record(1L);
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        rates.rotate();
+
+        rates.record(2L);
+        rates.record(2L);
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        assertEquals(Map.of(2L, 2d), rates.rotate());
+    }
+}
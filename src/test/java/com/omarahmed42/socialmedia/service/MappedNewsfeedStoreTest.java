@@ -0,0 +1,209 @@
+package com.omarahmed42.socialmedia.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.service.impl.MappedNewsfeedStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MappedNewsfeedStoreTest {
+
+    private static final int MAX_SIZE = 5;
+    private static final Long USER_ID = 1L;
+    private static final Long AUTHOR_ID = 2L;
+
+    @TempDir
+    Path directory;
+
+    private MappedNewsfeedStore newsfeedStore;
+
+    @BeforeEach
+    void setUp() {
+        newsfeedStore = store(Duration.ofDays(7));
+    }
+
+    @AfterEach
+    void tearDown() {
+        newsfeedStore.destroy();
+    }
+
+    private MappedNewsfeedStore store(Duration timeToLive) {
+        return new MappedNewsfeedStore(new SimpleMeterRegistry(), MAX_SIZE, timeToLive, true,
+                directory.toString(), 64, 16);
+    }
+
+    private static List<Newsfeed> posts(long... postIds) {
+        List<Newsfeed> newsfeed = new ArrayList<>();
+        for (long postId : postIds)
+            newsfeed.add(new Newsfeed(AUTHOR_ID, postId));
+        return newsfeed;
+    }
+
+    private static List<Long> postIds(List<Newsfeed> newsfeed) {
+        return newsfeed.stream().map(Newsfeed::getPostId).toList();
+    }
+
+    @Test
+    @DisplayName("Should only append to newsfeeds that were already built")
+    void add_missingNewsfeed_isNotCreated() {
+        newsfeedStore.add(USER_ID, new Newsfeed(AUTHOR_ID, 10L));
+
+        assertFalse(newsfeedStore.exists(USER_ID));
+
+        newsfeedStore.merge(USER_ID, posts(5L));
+        newsfeedStore.add(USER_ID, new Newsfeed(AUTHOR_ID, 10L));
+
+        assertTrue(newsfeedStore.exists(USER_ID));
+        assertEquals(List.of(10L, 5L), postIds(newsfeedStore.findLatest(USER_ID, null, 10)));
+    }
+
+    @Test
+    @DisplayName("Should keep a rebuilt newsfeed without posts")
+    void merge_emptyNewsfeed_exists() {
+        newsfeedStore.merge(USER_ID, List.of());
+
+        assertTrue(newsfeedStore.exists(USER_ID));
+        assertEquals(List.of(), newsfeedStore.findLatest(USER_ID, null, 10));
+    }
+
+    @Test
+    @DisplayName("Should keep only the newest posts once the newsfeed is full")
+    void add_fullNewsfeed_dropsOldest() {
+        newsfeedStore.merge(USER_ID, posts(30L, 10L, 50L, 20L, 40L));
+
+        newsfeedStore.add(USER_ID, new Newsfeed(AUTHOR_ID, 60L));
+        newsfeedStore.add(USER_ID, new Newsfeed(AUTHOR_ID, 5L));
+        newsfeedStore.add(USER_ID, new Newsfeed(AUTHOR_ID, 35L));
+
+        assertEquals(List.of(60L, 50L, 40L, 35L, 30L), postIds(newsfeedStore.findLatest(USER_ID, null, 10)));
+    }
+
+    @Test
+    @DisplayName("Should not duplicate a post added twice")
+    void add_samePostTwice_storedOnce() {
+        newsfeedStore.merge(USER_ID, posts(10L));
+
+        newsfeedStore.add(USER_ID, new Newsfeed(AUTHOR_ID, 20L));
+        newsfeedStore.add(USER_ID, new Newsfeed(AUTHOR_ID, 20L));
+
+        assertEquals(List.of(20L, 10L), postIds(newsfeedStore.findLatest(USER_ID, null, 10)));
+    }
+
+    @Test
+    @DisplayName("Should page through the newsfeed with a post id cursor")
+    void findLatest_beforePostId_returnsOlderPosts() {
+        newsfeedStore.merge(USER_ID, posts(10L, 20L, 30L, 40L, 50L));
+
+        assertEquals(List.of(50L, 40L), postIds(newsfeedStore.findLatest(USER_ID, null, 2)));
+        assertEquals(List.of(30L, 20L), postIds(newsfeedStore.findLatest(USER_ID, 40L, 2)));
+        assertEquals(List.of(10L), postIds(newsfeedStore.findLatest(USER_ID, 20L, 2)));
+        assertTrue(newsfeedStore.findLatest(USER_ID, 10L, 2).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should remove a single post and every post of an author")
+    void remove_postAndAuthor_removedFromNewsfeed() {
+        newsfeedStore.merge(USER_ID, List.of(new Newsfeed(AUTHOR_ID, 10L), new Newsfeed(3L, 20L),
+                new Newsfeed(AUTHOR_ID, 30L), new Newsfeed(3L, 40L)));
+
+        newsfeedStore.removePost(USER_ID, 40L);
+        assertEquals(List.of(30L, 20L, 10L), postIds(newsfeedStore.findLatest(USER_ID, null, 10)));
+
+        newsfeedStore.removeByAuthor(List.of(USER_ID), AUTHOR_ID);
+        assertEquals(List.of(20L), postIds(newsfeedStore.findLatest(USER_ID, null, 10)));
+    }
+
+    @Test
+    @DisplayName("Should keep timelines apart from newsfeeds")
+    void addToTimeline_createsTimelineOnly() {
+        newsfeedStore.addToTimeline(AUTHOR_ID, new Newsfeed(AUTHOR_ID, 10L));
+        newsfeedStore.addToTimeline(3L, new Newsfeed(3L, 20L));
+
+        assertFalse(newsfeedStore.exists(AUTHOR_ID));
+        assertEquals(List.of(10L, 20L),
+                postIds(newsfeedStore.findLatestFromTimelines(List.of(AUTHOR_ID, 3L), null, 10)));
+
+        newsfeedStore.removeFromTimeline(AUTHOR_ID, 10L);
+        assertEquals(List.of(20L),
+                postIds(newsfeedStore.findLatestFromTimelines(List.of(AUTHOR_ID, 3L), null, 10)));
+    }
+
+    @Test
+    @DisplayName("Should read newsfeeds written before a restart")
+    void reopen_sameDirectory_keepsNewsfeeds() {
+        newsfeedStore.merge(USER_ID, posts(10L, 20L));
+        newsfeedStore.destroy();
+
+        newsfeedStore = store(Duration.ofDays(7));
+
+        assertEquals(List.of(20L, 10L), postIds(newsfeedStore.findLatest(USER_ID, null, 10)));
+    }
+
+    @Test
+    @DisplayName("Should refuse files created with another newsfeed size")
+    void reopen_differentMaxSize_throwsIllegalStateException() {
+        newsfeedStore.merge(USER_ID, posts(10L));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Duration timeToLive = Duration.ofDays(7);
+        String path = directory.toString();
+        assertThrows(IllegalStateException.class,
+                () -> new MappedNewsfeedStore(meterRegistry, MAX_SIZE + 1, timeToLive, true, path, 64, 16));
+    }
+
+    @Test
+    @DisplayName("Should treat expired newsfeeds as missing and reuse their slots")
+    void expiredNewsfeed_isMissing() throws InterruptedException {
+        newsfeedStore.destroy();
+        newsfeedStore = store(Duration.ofMillis(20));
+        newsfeedStore.merge(USER_ID, posts(10L));
+
+        TimeUnit.MILLISECONDS.sleep(40);
+
+        assertFalse(newsfeedStore.exists(USER_ID));
+        assertTrue(newsfeedStore.findLatest(USER_ID, null, 10).isEmpty());
+
+        newsfeedStore.merge(USER_ID, posts(20L));
+        assertEquals(List.of(20L), postIds(newsfeedStore.findLatest(USER_ID, null, 10)));
+    }
+
+    @Test
+    @DisplayName("Should keep every newsfeed consistent under concurrent fanout")
+    void addAll_concurrentWriters_keepsNewestPosts() throws InterruptedException {
+        List<Long> userIds = new ArrayList<>();
+        for (long userId = 1; userId <= 40; userId++) {
+            userIds.add(userId);
+            newsfeedStore.merge(userId, posts(1L));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (long postId = 2; postId <= 200; postId++) {
+            Newsfeed newsfeed = new Newsfeed(AUTHOR_ID, postId);
+            executor.execute(() -> newsfeedStore.addAll(userIds, newsfeed));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (Long userId : userIds)
+            assertEquals(List.of(200L, 199L, 198L, 197L, 196L),
+                    postIds(newsfeedStore.findLatest(userId, null, 10)));
+    }
+}
@@ -0,0 +1,92 @@
+package com.omarahmed42.socialmedia.service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.service.impl.MappedNewsfeedStore;
+import com.omarahmed42.socialmedia.service.impl.RedisNewsfeedStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Compares fanout and first page reads of the mapped and Redis newsfeed stores.
+ * Run with {@code mvn test -Dtest=NewsfeedStoreBenchmark -Dbenchmark=true}; the
+ * Redis store is measured when {@code -Dredis.host} (default localhost) is
+ * reachable on {@code -Dredis.port} (default 6379). Uses keys of users
+ * {@value #FIRST_USER_ID} and above, run it against a disposable Redis.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class NewsfeedStoreBenchmark {
+
+    private static final long FIRST_USER_ID = 9_000_000_000L;
+    private static final int USERS = 2_000;
+    private static final int POSTS = 300;
+    private static final int MAX_SIZE = 250;
+    private static final int PAGE_SIZE = 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Mapped vs Redis newsfeed store")
+    void compareStores() {
+        System.out.printf("%-8s %14s %14s%n", "store", "fanout us/op", "read us/op");
+
+        MappedNewsfeedStore mapped = new MappedNewsfeedStore(new SimpleMeterRegistry(), MAX_SIZE,
+                Duration.ofDays(7), true, directory.toString(), USERS * 2, 16);
+        try {
+            run("mapped", mapped);
+        } finally {
+            mapped.destroy();
+        }
+
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        try {
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+            redisTemplate.getConnectionFactory().getConnection().ping();
+            run("redis", new RedisNewsfeedStore(redisTemplate, new SimpleMeterRegistry(), MAX_SIZE,
+                    Duration.ofMinutes(5), true, 500));
+        } catch (RuntimeException e) {
+            System.out.printf("%-8s skipped, %s%n", "redis", e.getMessage());
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private static void run(String name, NewsfeedStore newsfeedStore) {
+        List<Long> userIds = new ArrayList<>(USERS);
+        for (long userId = FIRST_USER_ID; userId < FIRST_USER_ID + USERS; userId++) {
+            userIds.add(userId);
+            newsfeedStore.merge(userId, List.of(new Newsfeed(1L, 1L)));
+        }
+
+        long start = System.nanoTime();
+        for (long postId = 2; postId <= POSTS; postId++)
+            newsfeedStore.addAll(userIds, new Newsfeed(1L, postId));
+        long fanout = (System.nanoTime() - start) / ((long) USERS * (POSTS - 1));
+
+        long sink = 0;
+        start = System.nanoTime();
+        for (Long userId : userIds)
+            sink += newsfeedStore.findLatest(userId, null, PAGE_SIZE).size();
+        long read = (System.nanoTime() - start) / USERS;
+
+        System.out.printf("%-8s %14.3f %14.3f%n", name, fanout / 1000.0, read / 1000.0);
+        if (sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,118 @@
+package com.omarahmed42.socialmedia.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.service.impl.RedisNewsfeedStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RedisNewsfeedStoreTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final RedisConnection connection = mock(RedisConnection.class);
+    private final RedisScriptingCommands scriptingCommands = mock(RedisScriptingCommands.class);
+    private final RedisNewsfeedStore newsfeedStore = new RedisNewsfeedStore(redisTemplate, new SimpleMeterRegistry(),
+            250, Duration.ofDays(7), true, 500);
+
+    @Test
+    @DisplayName("Should send pipelined scripts by digest and the full script only to feeds missing it")
+    void addAll_noScript_retriesWithBody() {
+        List<Object> results = new ArrayList<>();
+        results.add(1L);
+        results.add(new RedisSystemException("NOSCRIPT No matching script", null));
+        pipelines(new RedisPipelineException("Pipeline failed", results));
+
+        newsfeedStore.addAll(List.of(1L, 2L), new Newsfeed(3L, 4L));
+
+        verify(scriptingCommands, times(2)).evalSha(any(byte[].class), eq(ReturnType.INTEGER), eq(1),
+                any(byte[][].class));
+        verify(scriptingCommands).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(1),
+                eq(keyAndArgs("newsfeed:{2}")));
+        verify(scriptingCommands, never()).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(1),
+                eq(keyAndArgs("newsfeed:{1}")));
+    }
+
+    @Test
+    @DisplayName("Should not retry a pipeline that failed for another reason")
+    void addAll_otherFailure_rethrown() {
+        List<Object> results = new ArrayList<>();
+        results.add(new RedisSystemException("WRONGTYPE Operation against a key", null));
+        results.add(1L);
+        pipelines(new RedisPipelineException("Pipeline failed", results));
+
+        assertThrows(RedisPipelineException.class,
+                () -> newsfeedStore.addAll(List.of(1L, 2L), new Newsfeed(3L, 4L)));
+        verify(scriptingCommands, never()).eval(any(byte[].class), any(), eq(1), any(byte[][].class));
+    }
+
+    @Test
+    @DisplayName("Should still write a newsfeed when the rebuild found no posts")
+    @SuppressWarnings("unchecked")
+    void merge_emptyNewsfeed_writesMarker() {
+        newsfeedStore.merge(1L, List.of());
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("newsfeed:{1}")), eq("250"),
+                eq(String.valueOf(Duration.ofDays(7).toMillis())), eq("-1"), eq("~"));
+    }
+
+    @Test
+    @DisplayName("Should not return the marker of a rebuilt newsfeed as a post")
+    @SuppressWarnings("unchecked")
+    void findLatest_marker_skipped() {
+        ZSetOperations<String, String> zSetOperations = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.reverseRangeByScore("newsfeed:{1}", Double.NEGATIVE_INFINITY, 10.0, 0, 10))
+                .thenReturn(Set.of("~"));
+
+        assertEquals(List.of(), newsfeedStore.findLatest(1L, 10L, 10));
+    }
+
+    // Runs every pipelined callback against the mocked connection and fails the first pipeline
+    @SuppressWarnings("unchecked")
+    private void pipelines(RedisPipelineException firstFailure) {
+        when(connection.scriptingCommands()).thenReturn(scriptingCommands);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            throw firstFailure;
+        }).thenAnswer(invocation -> {
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            return List.of();
+        });
+    }
+
+    private static byte[][] keyAndArgs(String key) {
+        return new byte[][] { bytes(key), bytes("4"), bytes("0000000000000000004:3"), bytes("250"),
+                bytes(String.valueOf(Duration.ofDays(7).toMillis())) };
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,96 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+class ReactionCountReconcilerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+    private final PostReactionsStatisticsService postReactionsStatisticsService = mock(
+            PostReactionsStatisticsService.class);
+    private final CommentReactionsStatisticsService commentReactionsStatisticsService = mock(
+            CommentReactionsStatisticsService.class);
+    private final ReactionCounters postCounters = mock(ReactionCounters.class);
+    private final ReactionCountReconciler reconciler = new ReactionCountReconciler(jdbcTemplate, redisTemplate,
+            postReactionsStatisticsService, commentReactionsStatisticsService, Duration.ofMinutes(30), 500);
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        when(postReactionsStatisticsService.reactionCounters()).thenReturn(postCounters);
+        when(commentReactionsStatisticsService.reactionCounters()).thenReturn(mock(ReactionCounters.class));
+        when(jdbcTemplate.queryForList(startsWith("SELECT post_id"), eq(Long.class), eq(0L), any(Timestamp.class),
+                eq(500))).thenReturn(List.of(7L));
+        when(postCounters.durableCounts(7L)).thenReturn(Map.of("like", 3L, "love", 1L, "haha", 0L));
+        doAnswer(invocation -> {
+            ResultSet row = mock(ResultSet.class);
+            when(row.getString("name")).thenReturn("like");
+            when(row.getLong("total")).thenReturn(2L);
+            invocation.getArgument(1, RowCallbackHandler.class).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT r.name"), any(RowCallbackHandler.class), eq(7L));
+    }
+
+    @Test
+    @DisplayName("Should correct the durable counts of a quiet owner by the difference to its recount")
+    void reconcile_drifted_corrects() {
+        lastChange(LocalDateTime.now().minusHours(1));
+
+        reconciler.reconcile();
+
+        verify(postCounters).correct(7L, Map.of("like", -1L, "love", -1L));
+    }
+
+    @Test
+    @DisplayName("Should leave an owner whose reactions changed while it was recounted")
+    void reconcile_changedWhileRecounted_skips() {
+        lastChange(LocalDateTime.now());
+
+        reconciler.reconcile();
+
+        verify(postCounters, never()).correct(any(), anyMap());
+    }
+
+    @Test
+    @DisplayName("Should not reconcile while another instance holds the lock")
+    void reconcile_locked_skips() {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+
+        reconciler.reconcile();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private void lastChange(LocalDateTime at) {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT MAX"), eq(Timestamp.class), eq(7L)))
+                .thenReturn(Timestamp.valueOf(at));
+    }
+}
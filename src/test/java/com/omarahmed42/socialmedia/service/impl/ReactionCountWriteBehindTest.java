@@ -0,0 +1,179 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+
+class ReactionCountWriteBehindTest {
+
+    private static final String DELTAS_KEY = "reaction-deltas:{3}";
+    private static final String FLUSHING_KEY = DELTAS_KEY + ":flushing";
+    private static final List<String> CLAIM_KEYS = List.of(DELTAS_KEY, FLUSHING_KEY, DELTAS_KEY + ":generation");
+    private static final List<String> UNFLUSHED_KEYS = List.of("reaction-deltas:{7}", "reaction-deltas:{7}:flushing",
+            "reaction-deltas:{7}:reads", "reaction-deltas:{7}:generation");
+    private static final List<String> OFFSETS_KEYS = List.of("reaction-deltas:{7}", "reaction-deltas:{7}:reads",
+            "reaction-deltas:{7}:offsets");
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+    @SuppressWarnings("unchecked")
+    private final HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ReactionCountWriteBehind writeBehind = new ReactionCountWriteBehind(redisTemplate, jdbcTemplate,
+            new TransactionTemplate(mock(PlatformTransactionManager.class)), 16, 500, Duration.ofSeconds(30));
+
+    @Test
+    @DisplayName("Should claim a shard with the next generation and apply its deltas with that generation")
+    void flush_claimed_appliesDeltas() {
+        claim(5L);
+        when(jdbcTemplate.update(startsWith("UPDATE reaction_count_flush"), eq(5L), eq(3), eq(5L))).thenReturn(1);
+
+        writeBehind.flush();
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(CLAIM_KEYS), eq("4"));
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO reaction_count"),
+                argThat((List<Object[]> rows) -> rows.size() == 1
+                        && Arrays.equals(rows.get(0), new Object[] { "POST", 7L, "like", 3L })));
+        verify(redisTemplate).delete(FLUSHING_KEY);
+    }
+
+    @Test
+    @DisplayName("Should only delete a flushing key whose generation was already committed")
+    void flush_generationCommitted_skipsDeltas() {
+        claim(4L);
+        when(jdbcTemplate.update(startsWith("UPDATE reaction_count_flush"), eq(4L), eq(3), eq(4L))).thenReturn(0);
+
+        writeBehind.flush();
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        verify(redisTemplate).delete(FLUSHING_KEY);
+    }
+
+    @Test
+    @DisplayName("Should keep the flushing key of a failed flush for the next attempt")
+    void flush_transactionFails_keepsFlushingKey() {
+        claim(5L);
+        when(jdbcTemplate.update(startsWith("UPDATE reaction_count_flush"), eq(5L), eq(3), eq(5L))).thenReturn(1);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("Connection refused"));
+
+        writeBehind.flush();
+
+        verify(redisTemplate, never()).delete(FLUSHING_KEY);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of(DELTAS_KEY + ":lock")), any());
+    }
+
+    @Test
+    @DisplayName("Should add the unflushed deltas to the counts of the table")
+    void counts_unflushedDeltas_added() {
+        table(10L, 2L);
+        when(redisTemplate.execute(any(RedisScript.class), eq(UNFLUSHED_KEYS), eq("2"), eq("POST:7:like")))
+                .thenReturn(List.of(9L, 4L));
+
+        ReactionCountWriteBehind.Snapshot snapshot = writeBehind.counts(ReactionOwnerType.POST, 7L, List.of("like"),
+                1);
+
+        assertEquals(Map.of("like", 14L), snapshot.counts());
+        assertEquals(9L, snapshot.sequence());
+    }
+
+    @Test
+    @DisplayName("Should read the table again when a flush committed after it was read")
+    void counts_flushedMeanwhile_readsAgain() {
+        table(10L, 2L);
+        when(redisTemplate.execute(any(RedisScript.class), eq(UNFLUSHED_KEYS), eq("2"), eq("POST:7:like")))
+                .thenReturn(List.of(0L), List.of(9L, 4L));
+
+        ReactionCountWriteBehind.Snapshot snapshot = writeBehind.counts(ReactionOwnerType.POST, 7L, List.of("like"),
+                1);
+
+        assertEquals(Map.of("like", 14L), snapshot.counts());
+        verify(jdbcTemplate, times(2)).query(startsWith("SELECT reaction"), any(RowCallbackHandler.class), any(),
+                any());
+    }
+
+    @Test
+    @DisplayName("Should record the changes of a source together with the offset they were read up to")
+    void record_fromSource_movesOffset() {
+        when(redisTemplate.execute(any(RedisScript.class), eq(OFFSETS_KEYS), any(Object[].class))).thenReturn(9L);
+
+        long sequence = writeBehind.record(7, "reaction-deltas-0", 41, 45,
+                List.of(new ReactionCountWriteBehind.Change(ReactionOwnerType.POST, 7L, "like", 3)));
+
+        assertEquals(9L, sequence);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(OFFSETS_KEYS), eq("reaction-deltas-0"), eq("41"),
+                eq("45"), eq("POST:7:like"), eq("3"));
+    }
+
+    @Test
+    @DisplayName("Should refuse changes of a source that was recorded since they were read")
+    void record_sourceMovedMeanwhile_throws() {
+        when(redisTemplate.execute(any(RedisScript.class), eq(OFFSETS_KEYS), any(Object[].class))).thenReturn(-1L);
+        List<ReactionCountWriteBehind.Change> changes = List.of(
+                new ReactionCountWriteBehind.Change(ReactionOwnerType.POST, 7L, "like", 3));
+
+        assertThrows(IllegalStateException.class,
+                () -> writeBehind.record(7, "reaction-deltas-0", 41, 45, changes));
+    }
+
+    // Shard 3 holds deltas of a sharded counter of post 7, its committed generation is 4
+    private void claim(long generation) {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq(DELTAS_KEY + ":lock"), anyString(), any(Duration.class)))
+                .thenReturn(true);
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(3))).thenReturn(List.of(4L));
+        when(redisTemplate.execute(any(RedisScript.class), eq(CLAIM_KEYS), any())).thenReturn(generation);
+        when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.entries(FLUSHING_KEY)).thenReturn(Map.of("POST:7:like", "3", "POST:7:sad", "0"));
+    }
+
+    // Post 7 has a like count of the given value, and its shard 7 the given committed generation
+    private void table(long count, long generation) {
+        doAnswer(invocation -> {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getString("reaction")).thenReturn("like");
+            when(rs.getLong("count")).thenReturn(count);
+            invocation.<RowCallbackHandler>getArgument(1).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT reaction"), any(RowCallbackHandler.class), any(), any());
+        doAnswer(invocation -> {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getInt("shard")).thenReturn(7);
+            when(rs.getLong("generation")).thenReturn(generation);
+            invocation.<RowCallbackHandler>getArgument(1).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT shard"), any(RowCallbackHandler.class));
+    }
+}
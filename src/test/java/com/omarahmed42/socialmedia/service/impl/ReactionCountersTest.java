@@ -0,0 +1,214 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.configuration.ReactionShardingProperties;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+import com.omarahmed42.socialmedia.util.RedisKeys;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ReactionCountersTest {
+
+    private static final Duration TIME_TO_LIVE = Duration.ofHours(12);
+    private static final List<String> KEYS = List.of("post:{7}:reactions");
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+    private final ReactionCountWriteBehind writeBehind = mock(ReactionCountWriteBehind.class);
+    private final ReactionCounters reactionCounters = counters(new ReactionShardingProperties());
+
+    @Test
+    @DisplayName("Should read every counter of a cached owner without going to the database")
+    void get_cached_readsHash() {
+        when(redisTemplate.execute(any(RedisScript.class), eq(List.of("post:{7}:reactions")), any()))
+                .thenReturn(List.of("like", "4", "love", "0", "sad", "2"));
+
+        assertEquals(Map.of("like", 4L, "love", 0L, "sad", 2L), reactionCounters.get(7L));
+        verifyNoInteractions(writeBehind);
+    }
+
+    @Test
+    @DisplayName("Should record the update for the durable counts and apply it with its read sequence")
+    void add_recordsAndUpdatesHash() {
+        when(writeBehind.record(ReactionOwnerType.POST, 7L, "like", -1, 0)).thenReturn(12L);
+
+        reactionCounters.add(7L, "like", -1);
+
+        verify(writeBehind).record(ReactionOwnerType.POST, 7L, "like", -1, 0);
+
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("post:{7}:reactions", "post:{7}:reactions:loading", "post:{7}:reactions:pending")),
+                eq("like"), eq("-1"), eq(String.valueOf(TIME_TO_LIVE.toMillis())),
+                eq(String.valueOf(new CachingProperties.Lock().getLeaseTime().toMillis())), eq("12"));
+        verifyNoMoreInteractions(writeBehind);
+    }
+
+    @Test
+    @DisplayName("Should apply an update that was already recorded with its read sequence, without recording it")
+    void addRecorded_updatesHashOnly() {
+        reactionCounters.addRecorded(7L, "like", 3, 12L);
+
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("post:{7}:reactions", "post:{7}:reactions:loading", "post:{7}:reactions:pending")),
+                eq("like"), eq("3"), eq(String.valueOf(TIME_TO_LIVE.toMillis())),
+                eq(String.valueOf(new CachingProperties.Lock().getLeaseTime().toMillis())), eq("12"));
+        verifyNoInteractions(writeBehind);
+    }
+
+    @Test
+    @DisplayName("Should read a cold owner from the durable counts and create its hash with every reaction")
+    void get_coldMiss_countsAndInitializes() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any())).thenReturn(List.of());
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("lock:post:{7}:reactions"), any(), any(Duration.class)))
+                .thenReturn(true);
+        when(writeBehind.counts(ReactionOwnerType.POST, 7L, Set.of("like", "love", "sad"), 8))
+                .thenReturn(new ReactionCountWriteBehind.Snapshot(Map.of("like", 3L, "love", 0L, "sad", 1L), 5));
+
+        Map<String, Long> counters = reactionCounters.get(7L);
+
+        assertEquals(Map.of("like", 3L, "love", 0L, "sad", 1L), counters);
+        verify(valueOperations).set("post:{7}:reactions:loading", "1", new CachingProperties.Lock().getLeaseTime());
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("post:{7}:reactions", "post:{7}:reactions:loading", "post:{7}:reactions:pending")),
+                eq(String.valueOf(TIME_TO_LIVE.toMillis())), eq("5"), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should send increments of a sharded counter to its shards until its state is stale")
+    void add_sharded_incrementsShards() {
+        List<String> baseKeys = List.of("post:{7}:reactions", "post:{7}:reactions:loading",
+                "post:{7}:reactions:pending");
+        when(redisTemplate.execute(any(RedisScript.class), eq(baseKeys), any(), any(), any(), any(), any()))
+                .thenReturn(List.of(4L, 99L));
+
+        reactionCounters.add(7L, "like", 1);
+        reactionCounters.add(7L, "like", 1);
+
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), eq(baseKeys), any(), any(), any(), any(),
+                any());
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class),
+                argThat((List<String> keys) -> keys.size() == 1
+                        && keys.get(0).matches("post:\\{7#99#[0-3]\\}:reactions")),
+                eq("like"), eq("1"), eq(String.valueOf(TIME_TO_LIVE.toMillis())));
+    }
+
+    @Test
+    @DisplayName("Should add up the shards of a sharded counter and hide its markers")
+    @SuppressWarnings("unchecked")
+    void get_sharded_sumsShards() {
+        when(redisTemplate.execute(any(RedisScript.class), eq(List.of("post:{7}:reactions")), any()))
+                .thenReturn(List.of("like", "4", "love", "0", "sad", "2", "#shards", "-2", "#epoch", "99",
+                        "#owner", "5", "#lease", String.valueOf(Long.MAX_VALUE), "#snapshot", "3"));
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(List.of(Map.of("like", "3"), Map.of("like", "1", "sad", "5")));
+
+        assertEquals(Map.of("like", 8L, "love", 0L, "sad", 7L), reactionCounters.get(7L));
+    }
+
+    @Test
+    @DisplayName("Should shard a hot counter under a lease and collapse and fold it once it cooled down")
+    void rebalance_cooledDown_drainsAndFolds() {
+        ReactionCounters counters = counters(cooling());
+        when(redisTemplate.execute(same(ReactionCounters.SHARD_SCRIPT), eq(KEYS), eq("2"), any(), any(), any()))
+                .thenAnswer(invocation -> List.of(2L, Long.valueOf(invocation.<String>getArgument(3))));
+        when(redisTemplate.execute(same(ReactionCounters.LEASE_SCRIPT), eq(KEYS), any(), any(), any(), any()))
+                .thenReturn(1L);
+        when(redisTemplate.execute(same(ReactionCounters.DRAIN_SCRIPT), eq(KEYS), eq("2"), any(), any()))
+                .thenReturn(1L);
+        when(redisTemplate.execute(same(ReactionCounters.TAKE_SHARD_SCRIPT), anyList()))
+                .thenReturn(List.of("like", "3"));
+
+        counters.add(7L, "like", 1);
+        counters.rebalance();
+        counters.rebalance();
+        counters.rebalance();
+
+        verify(redisTemplate).execute(same(ReactionCounters.SHARD_SCRIPT), eq(KEYS), eq("2"), any(), any(), any());
+        verify(redisTemplate).execute(same(ReactionCounters.DRAIN_SCRIPT), eq(KEYS), eq("2"), any(), any());
+        verify(redisTemplate, times(2)).execute(same(ReactionCounters.TAKE_SHARD_SCRIPT),
+                argThat((List<String> keys) -> keys.get(0).matches("post:\\{7#\\d+#[01]\\}:reactions")));
+        verify(redisTemplate).execute(same(ReactionCounters.FOLD_SCRIPT), eq(KEYS), any(), eq("like"), eq("6"));
+    }
+
+    @Test
+    @DisplayName("Should take over and collapse a sharded counter whose owner let its lease lapse")
+    void rebalance_leaseLapsed_takesOver() {
+        ReactionCounters counters = counters(cooling());
+        when(redisTemplate.execute(same(ReactionCounters.LEASE_SCRIPT), eq(KEYS), eq("99"), any(), any(), any()))
+                .thenReturn(1L);
+        when(redisTemplate.execute(same(ReactionCounters.DRAIN_SCRIPT), eq(KEYS), eq("2"), eq("99"), any()))
+                .thenReturn(1L);
+        sharded(counters, 0);
+
+        counters.rebalance();
+
+        verify(redisTemplate).execute(same(ReactionCounters.DRAIN_SCRIPT), eq(KEYS), eq("2"), eq("99"), any());
+    }
+
+    @Test
+    @DisplayName("Should leave a sharded counter to its owner while its lease holds")
+    void rebalance_leaseHeld_leftToOwner() {
+        ReactionCounters counters = counters(cooling());
+        sharded(counters, Long.MAX_VALUE);
+
+        counters.rebalance();
+
+        verify(redisTemplate, never()).execute(same(ReactionCounters.LEASE_SCRIPT), anyList(), any(), any(), any(),
+                any());
+        verify(redisTemplate, never()).execute(same(ReactionCounters.DRAIN_SCRIPT), anyList(), any(), any(), any());
+    }
+
+    private ReactionCounters counters(ReactionShardingProperties sharding) {
+        return new ReactionCounters(redisTemplate, writeBehind, ReactionOwnerType.POST,
+                Set.of("like", "love", "sad"), RedisKeys::postReactions, TIME_TO_LIVE, new CachingProperties.Lock(),
+                sharding, new SimpleMeterRegistry());
+    }
+
+    // Every increment makes a counter hot, and counters cool down and fold as soon as they are checked
+    private static ReactionShardingProperties cooling() {
+        ReactionShardingProperties sharding = new ReactionShardingProperties();
+        sharding.setThreshold(1);
+        sharding.setShards(2);
+        sharding.setCooldown(Duration.ZERO);
+        sharding.setStateRefresh(Duration.ZERO);
+        return sharding;
+    }
+
+    // Reads post 7 sharded over 2 keys at epoch 99 by another node, whose lease ends at the given time
+    @SuppressWarnings("unchecked")
+    private void sharded(ReactionCounters counters, long lease) {
+        when(redisTemplate.execute(same(ReactionCounters.READ_SCRIPT), eq(KEYS), any()))
+                .thenReturn(List.of("like", "4", "#shards", "2", "#epoch", "99", "#owner", "5", "#lease",
+                        String.valueOf(lease)));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of());
+        counters.get(7L);
+    }
+}
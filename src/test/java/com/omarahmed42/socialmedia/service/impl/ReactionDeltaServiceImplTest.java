@@ -0,0 +1,176 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.omarahmed42.socialmedia.dto.event.ReactionDeltaEvent;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+
+class ReactionDeltaServiceImplTest {
+
+    private static final String SOURCE = ReactionDeltaServiceImpl.TOPIC + "-0";
+
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+    private final PostReactionsStatisticsService postStatistics = mock(PostReactionsStatisticsService.class);
+    private final CommentReactionsStatisticsService commentStatistics = mock(
+            CommentReactionsStatisticsService.class);
+    private final ReactionCounters postCounters = mock(ReactionCounters.class);
+    private final ReactionCounters commentCounters = mock(ReactionCounters.class);
+    private final ReactionCountWriteBehind writeBehind = mock(ReactionCountWriteBehind.class);
+    private final ReactionDeltaServiceImpl reactionDeltaService = new ReactionDeltaServiceImpl(kafkaTemplate,
+            postStatistics, commentStatistics, writeBehind);
+    private long offset;
+
+    // Owners are in the write-behind shard of their id, and no offset was recorded yet
+    @BeforeEach
+    void setUp() {
+        when(postStatistics.reactionCounters()).thenReturn(postCounters);
+        when(commentStatistics.reactionCounters()).thenReturn(commentCounters);
+        for (ReactionCounters counters : List.of(postCounters, commentCounters))
+            when(counters.isCounted(anyString()))
+                    .thenAnswer(invocation -> !"unknown".equals(invocation.getArgument(0)));
+        when(writeBehind.shardOf(anyLong())).thenAnswer(invocation -> invocation.<Long>getArgument(0).intValue());
+        when(writeBehind.recordedThrough(anyInt(), anyString())).thenReturn(-1L);
+    }
+
+    @Test
+    @DisplayName("Should publish a delta keyed by its owner")
+    void publish_keyedByOwner() {
+        when(kafkaTemplate.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        reactionDeltaService.publish(ReactionOwnerType.POST, 7L, "like", 1);
+
+        verify(kafkaTemplate).send(ReactionDeltaServiceImpl.TOPIC, "POST:7",
+                new ReactionDeltaEvent(ReactionOwnerType.POST, 7L, "like", 1));
+    }
+
+    @Test
+    @DisplayName("Should publish a delta only once the reaction committed")
+    void publish_inTransaction_sentAfterCommit() {
+        when(kafkaTemplate.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            reactionDeltaService.publish(ReactionOwnerType.POST, 7L, "like", 1);
+            verifyNoInteractions(kafkaTemplate);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(kafkaTemplate).send(ReactionDeltaServiceImpl.TOPIC, "POST:7",
+                new ReactionDeltaEvent(ReactionOwnerType.POST, 7L, "like", 1));
+    }
+
+    @Test
+    @DisplayName("Should not fail the reaction when its delta could not be published")
+    void publish_failed_doesNotThrow() {
+        when(kafkaTemplate.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Broker unavailable")));
+
+        assertDoesNotThrow(() -> reactionDeltaService.publish(ReactionOwnerType.POST, 7L, "like", 1));
+    }
+
+    @Test
+    @DisplayName("Should record one net delta per owner and reaction of a batch and add them to the counters")
+    void consume_recordsNetDeltas() {
+        List<ConsumerRecord<String, ReactionDeltaEvent>> batch = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++)
+            batch.add(record(ReactionOwnerType.POST, 7L, "like", 1));
+        batch.add(record(ReactionOwnerType.POST, 7L, "love", 1));
+        batch.add(record(ReactionOwnerType.POST, 7L, "love", -1));
+        batch.add(record(ReactionOwnerType.POST, 7L, "sad", -1));
+        batch.add(record(ReactionOwnerType.COMMENT, 7L, "like", 2));
+        when(writeBehind.record(eq(7), eq(SOURCE), eq(-1L), eq(1_003L), anyList())).thenReturn(12L);
+
+        reactionDeltaService.consumeReactionDeltas(batch);
+
+        verify(writeBehind).record(7, SOURCE, -1L, 1_003L, List.of(
+                new ReactionCountWriteBehind.Change(ReactionOwnerType.POST, 7L, "like", 1_000),
+                new ReactionCountWriteBehind.Change(ReactionOwnerType.POST, 7L, "sad", -1),
+                new ReactionCountWriteBehind.Change(ReactionOwnerType.COMMENT, 7L, "like", 2)));
+        verify(postCounters).addRecorded(7L, "like", 1_000, 12L);
+        verify(postCounters).addRecorded(7L, "sad", -1, 12L);
+        verify(commentCounters).addRecorded(7L, "like", 2, 12L);
+        verify(postCounters, never()).evict(anyLong());
+    }
+
+    @Test
+    @DisplayName("Should drop deltas of unknown reactions and still record the rest of the batch")
+    void consume_unknownReaction_dropped() {
+        reactionDeltaService.consumeReactionDeltas(List.of(record(ReactionOwnerType.POST, 7L, "unknown", 1),
+                record(ReactionOwnerType.COMMENT, 8L, "like", 1)));
+
+        verify(writeBehind).record(7, SOURCE, -1L, 0L, List.of());
+        verify(writeBehind).record(8, SOURCE, -1L, 1L,
+                List.of(new ReactionCountWriteBehind.Change(ReactionOwnerType.COMMENT, 8L, "like", 1)));
+        verify(commentCounters).addRecorded(8L, "like", 1, 0L);
+        verify(postCounters, never()).addRecorded(anyLong(), anyString(), anyLong(), anyLong());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    @DisplayName("Should skip redelivered deltas that were already recorded and drop the counters they may have missed")
+    void consume_redelivered_skipsRecorded() {
+        when(writeBehind.recordedThrough(7, SOURCE)).thenReturn(1L);
+
+        reactionDeltaService.consumeReactionDeltas(List.of(record(ReactionOwnerType.POST, 7L, "like", 1),
+                record(ReactionOwnerType.POST, 7L, "like", 1), record(ReactionOwnerType.POST, 7L, "like", 1)));
+
+        verify(postCounters).evict(7L);
+        verify(writeBehind).record(7, SOURCE, 1L, 2L,
+                List.of(new ReactionCountWriteBehind.Change(ReactionOwnerType.POST, 7L, "like", 1)));
+        verify(postCounters).addRecorded(7L, "like", 1, 0L);
+    }
+
+    @Test
+    @DisplayName("Should report the first record of the shard whose deltas could not be recorded")
+    void consume_recordFails_reportsFirstRecordOfShard() {
+        when(writeBehind.record(eq(8), eq(SOURCE), anyLong(), anyLong(), anyList()))
+                .thenThrow(new RedisConnectionFailureException("Connection refused"));
+        List<ConsumerRecord<String, ReactionDeltaEvent>> batch = List.of(record(ReactionOwnerType.POST, 7L, "like", 1),
+                record(ReactionOwnerType.POST, 8L, "like", 1), record(ReactionOwnerType.POST, 7L, "like", 1));
+
+        BatchListenerFailedException e = assertThrows(BatchListenerFailedException.class,
+                () -> reactionDeltaService.consumeReactionDeltas(batch));
+
+        assertEquals(1, e.getIndex());
+        verify(postCounters).addRecorded(7L, "like", 2, 0L);
+        verify(postCounters, never()).addRecorded(eq(8L), anyString(), anyLong(), anyLong());
+    }
+
+    private ConsumerRecord<String, ReactionDeltaEvent> record(ReactionOwnerType ownerType, Long ownerId,
+            String reaction, long delta) {
+        return new ConsumerRecord<>(ReactionDeltaServiceImpl.TOPIC, 0, offset++, ownerType.name() + ":" + ownerId,
+                new ReactionDeltaEvent(ownerType, ownerId, reaction, delta));
+    }
+}
@@ -0,0 +1,178 @@
+package com.omarahmed42.socialmedia.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.omarahmed42.socialmedia.cache.ReplicaReadRedisCacheWriter;
+import com.omarahmed42.socialmedia.configuration.CachingProperties;
+import com.omarahmed42.socialmedia.configuration.ReactionShardingProperties;
+import com.omarahmed42.socialmedia.enums.ReactionOwnerType;
+import com.omarahmed42.socialmedia.model.cache.Newsfeed;
+import com.omarahmed42.socialmedia.util.RedisKeys;
+
+import io.lettuce.core.ReadFrom;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs the newsfeed store, the reaction counters and replica reads against a
+ * replicated or clustered Redis, as started by the {@code redis-replicated}
+ * and {@code redis-cluster} profiles of {@code docker-compose.yaml}. Run with
+ * {@code mvn test -Dtest=RedisTopologyIntegrationTest -Dredis.topology=cluster}
+ * (nodes in {@code -Dredis.nodes}, default localhost:7000 to 7005) or
+ * {@code -Dredis.topology=replicated} (primary in {@code -Dredis.host} and
+ * {@code -Dredis.port}, default localhost:6379, replicas in
+ * {@code -Dredis.replicas}, default localhost:6380). Uses keys of user and
+ * post {@value #ID}, run it against a disposable Redis.
+ */
+@EnabledIfSystemProperty(named = "redis.topology", matches = "cluster|replicated")
+class RedisTopologyIntegrationTest {
+
+    private static final long ID = 9_000_000_000L;
+    private static final Duration REPLICATION_TIMEOUT = Duration.ofSeconds(2);
+
+    private LettuceConnectionFactory primaryFactory;
+    private LettuceConnectionFactory replicaFactory;
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    void connect() {
+        primaryFactory = connectionFactory(ReadFrom.UPSTREAM);
+        replicaFactory = connectionFactory(ReadFrom.REPLICA_PREFERRED);
+        redisTemplate = new StringRedisTemplate(primaryFactory);
+        cleanUp();
+    }
+
+    @AfterEach
+    void disconnect() {
+        cleanUp();
+        primaryFactory.destroy();
+        replicaFactory.destroy();
+    }
+
+    @Test
+    @DisplayName("Should merge, fan out to and read newsfeeds with their multi-key scripts")
+    void newsfeedStore_mergesAndFansOut() {
+        RedisNewsfeedStore newsfeedStore = new RedisNewsfeedStore(redisTemplate, new SimpleMeterRegistry(), 250,
+                Duration.ofMinutes(5), true, 500);
+
+        newsfeedStore.merge(ID, List.of(new Newsfeed(1L, 1L), new Newsfeed(1L, 2L)));
+        newsfeedStore.addAll(List.of(ID, ID + 1), new Newsfeed(1L, 3L));
+        newsfeedStore.addToTimeline(1L, new Newsfeed(1L, 3L));
+
+        assertEquals(List.of(new Newsfeed(1L, 3L), new Newsfeed(1L, 2L), new Newsfeed(1L, 1L)),
+                newsfeedStore.findLatest(ID, null, 10));
+        assertEquals(List.of(), newsfeedStore.findLatest(ID + 1, null, 10));
+        assertEquals(List.of(new Newsfeed(1L, 3L)), newsfeedStore.findLatestFromTimelines(List.of(1L), null, 10));
+    }
+
+    @Test
+    @DisplayName("Should load, shard, add up and collapse reaction counters")
+    void reactionCounters_shardedAndCollapsed() {
+        ReactionShardingProperties sharding = new ReactionShardingProperties();
+        sharding.setThreshold(1);
+        sharding.setShards(4);
+        sharding.setCooldown(Duration.ZERO);
+        sharding.setStateRefresh(Duration.ZERO);
+        ReactionCountWriteBehind writeBehind = mock(ReactionCountWriteBehind.class);
+        when(writeBehind.counts(eq(ReactionOwnerType.POST), eq(ID), any(), anyInt()))
+                .thenReturn(new ReactionCountWriteBehind.Snapshot(Map.of("like", 2L, "love", 0L), 0));
+        ReactionCounters counters = new ReactionCounters(redisTemplate, writeBehind, ReactionOwnerType.POST,
+                Set.of("like", "love"), RedisKeys::postReactions, Duration.ofMinutes(5), new CachingProperties.Lock(),
+                sharding, new SimpleMeterRegistry());
+
+        assertEquals(Map.of("like", 2L, "love", 0L), counters.get(ID));
+        counters.add(ID, "like", 1);
+        // Shards the counter, which was incremented in the window
+        counters.rebalance();
+        counters.add(ID, "like", 1);
+        assertEquals(Map.of("like", 4L, "love", 0L), counters.get(ID));
+
+        // Still hot, then drained, then folded
+        counters.rebalance();
+        counters.rebalance();
+        counters.rebalance();
+
+        assertEquals(Map.of("like", 4L, "love", 0L), counters.get(ID));
+        assertFalse(redisTemplate.opsForHash().hasKey(RedisKeys.postReactions(ID), "#shards"));
+    }
+
+    @Test
+    @DisplayName("Should serve lookups of replica read caches once the entry reached a replica")
+    void replicaReads_readWrittenEntry() throws InterruptedException {
+        RedisCacheWriter primaryWriter = RedisCacheWriter.nonLockingRedisCacheWriter(primaryFactory);
+        RedisCacheWriter writer = new ReplicaReadRedisCacheWriter(primaryWriter,
+                RedisCacheWriter.nonLockingRedisCacheWriter(replicaFactory), Set.of("reactions"));
+        byte[] key = ("reactions::" + ID).getBytes(StandardCharsets.UTF_8);
+        byte[] value = "like".getBytes(StandardCharsets.UTF_8);
+
+        writer.put("reactions", key, value, Duration.ofMinutes(5));
+
+        long deadline = System.nanoTime() + REPLICATION_TIMEOUT.toNanos();
+        byte[] read = writer.get("reactions", key);
+        while (!Arrays.equals(value, read) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            read = writer.get("reactions", key);
+        }
+        assertArrayEquals(value, read);
+    }
+
+    private static LettuceConnectionFactory connectionFactory(ReadFrom readFrom) {
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder().readFrom(readFrom)
+                .build();
+        LettuceConnectionFactory connectionFactory;
+        if ("cluster".equals(System.getProperty("redis.topology"))) {
+            connectionFactory = new LettuceConnectionFactory(new RedisClusterConfiguration(
+                    nodes("redis.nodes", "localhost:7000,localhost:7001,localhost:7002,localhost:7003,"
+                            + "localhost:7004,localhost:7005")),
+                    clientConfiguration);
+        } else {
+            RedisStaticMasterReplicaConfiguration configuration = new RedisStaticMasterReplicaConfiguration(
+                    System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+            nodes("redis.replicas", "localhost:6380").forEach(
+                    replica -> configuration.node(replica.substring(0, replica.lastIndexOf(':')),
+                            Integer.parseInt(replica.substring(replica.lastIndexOf(':') + 1))));
+            connectionFactory = new LettuceConnectionFactory(configuration, clientConfiguration);
+        }
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        return connectionFactory;
+    }
+
+    private static List<String> nodes(String property, String defaults) {
+        return Arrays.stream(System.getProperty(property, defaults).split(",")).map(String::trim).toList();
+    }
+
+    // Keys are deleted one by one, as multi-key deletes cannot span the slots of a cluster
+    private void cleanUp() {
+        for (String key : List.of(RedisKeys.newsfeed(ID), RedisKeys.newsfeed(ID + 1), RedisKeys.timeline(1L),
+                RedisKeys.postReactions(ID), "reactions::" + ID))
+            redisTemplate.delete(key);
+        for (String key : redisTemplate.keys("*" + ID + "*"))
+            redisTemplate.delete(key);
+    }
+}
@@ -0,0 +1,70 @@
+package com.omarahmed42.socialmedia.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterIndexesTest {
+
+    @Test
+    @DisplayName("Should size the filter from the expected insertions and false positive probability")
+    void constructor_expectedInsertions_sizesFilter() {
+        BloomFilterIndexes bloomFilterIndexes = new BloomFilterIndexes(1_000_000, 0.01);
+
+        assertEquals(9_585_059L, bloomFilterIndexes.getBits());
+        assertEquals(7, bloomFilterIndexes.getHashes());
+    }
+
+    @Test
+    @DisplayName("Should return the same in-range indexes for the same key")
+    void indexes_sameKey_sameIndexes() {
+        BloomFilterIndexes bloomFilterIndexes = new BloomFilterIndexes(1000, 0.01);
+        long key = 7149718371826434048L;
+
+        long[] indexes = bloomFilterIndexes.indexes(key);
+
+        assertArrayEquals(indexes, bloomFilterIndexes.indexes(key));
+        for (long index : indexes) {
+            assertTrue(index >= 0 && index < bloomFilterIndexes.getBits());
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep the false positive rate close to the target")
+    void indexes_sequentialKeys_falsePositiveRateNearTarget() {
+        int insertions = 10_000;
+        BloomFilterIndexes bloomFilterIndexes = new BloomFilterIndexes(insertions, 0.01);
+        BitSet bits = new BitSet((int) bloomFilterIndexes.getBits());
+        for (long key = 0; key < insertions; key++) {
+            for (long index : bloomFilterIndexes.indexes(key)) {
+                bits.set((int) index);
+            }
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (long key = insertions; key < insertions + probes; key++) {
+            boolean all = true;
+            for (long index : bloomFilterIndexes.indexes(key)) {
+                all &= bits.get((int) index);
+            }
+            if (all)
+                falsePositives++;
+        }
+
+        assertTrue(falsePositives < probes * 0.02, "False positives: " + falsePositives);
+    }
+
+    @Test
+    @DisplayName("Should reject invalid sizing")
+    void constructor_invalidSizing_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilterIndexes(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilterIndexes(1000, 1.0));
+    }
+}
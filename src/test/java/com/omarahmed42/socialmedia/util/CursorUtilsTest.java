@@ -0,0 +1,42 @@
+package com.omarahmed42.socialmedia.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.omarahmed42.socialmedia.exception.InvalidInputException;
+
+class CursorUtilsTest {
+
+    @Test
+    @DisplayName("Should decode an encoded cursor back to the same id")
+    void decode_encodedCursor_returnsSameId() {
+        Long id = 7149718371826434048L;
+        String cursor = CursorUtils.encode(id);
+
+        assertNotEquals(id.toString(), cursor);
+        assertEquals(id, CursorUtils.decode(cursor));
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = { "  " })
+    @DisplayName("Should return null when the cursor is missing")
+    void decode_blankCursor_returnsNull(String cursor) {
+        assertNull(CursorUtils.decode(cursor));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "123", "not base64!", "Y3Vyc29yOmFiYw" })
+    @DisplayName("Should throw InvalidInputException when the cursor is malformed")
+    void decode_malformedCursor_throwsInvalidInputException(String cursor) {
+        assertThrows(InvalidInputException.class, () -> CursorUtils.decode(cursor));
+    }
+}
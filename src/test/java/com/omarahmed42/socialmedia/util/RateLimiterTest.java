@@ -0,0 +1,45 @@
+package com.omarahmed42.socialmedia.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    @DisplayName("Should space out permits evenly at the configured rate")
+    void reserve_consecutivePermits_spacedByRate() {
+        AtomicLong clock = new AtomicLong();
+        RateLimiter rateLimiter = new RateLimiter(100, clock::get);
+
+        assertEquals(0, rateLimiter.reserve(1));
+        assertEquals(10 * MILLIS, rateLimiter.reserve(1));
+        assertEquals(20 * MILLIS, rateLimiter.reserve(5));
+        assertEquals(70 * MILLIS, rateLimiter.reserve(1));
+    }
+
+    @Test
+    @DisplayName("Should not save up permits while idle")
+    void reserve_afterIdlePeriod_noBurst() {
+        AtomicLong clock = new AtomicLong();
+        RateLimiter rateLimiter = new RateLimiter(100, clock::get);
+
+        clock.set(TimeUnit.SECONDS.toNanos(10));
+
+        assertEquals(0, rateLimiter.reserve(1));
+        assertEquals(10 * MILLIS, rateLimiter.reserve(1));
+    }
+
+    @Test
+    @DisplayName("Should reject a rate below one permit per second")
+    void constructor_zeroRate_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0));
+    }
+}
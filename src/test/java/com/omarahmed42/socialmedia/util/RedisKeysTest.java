@@ -0,0 +1,25 @@
+package com.omarahmed42.socialmedia.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.lettuce.core.cluster.SlotHash;
+
+class RedisKeysTest {
+
+    @Test
+    @DisplayName("Should place the reaction counters of a post in the slot of its id")
+    void postReactions_slotOfPostId() {
+        assertEquals(SlotHash.getSlot("1163"), SlotHash.getSlot(RedisKeys.postReactions(1163L)));
+        assertEquals("post:{1163}:reactions", RedisKeys.postReactions(1163L));
+    }
+
+    @Test
+    @DisplayName("Should keep the newsfeed and timeline of a user in one cluster slot")
+    void newsfeed_sameSlotAsTimeline() {
+        assertEquals(SlotHash.getSlot(RedisKeys.newsfeed(42L)), SlotHash.getSlot(RedisKeys.timeline(42L)));
+        assertEquals("newsfeed:{42}", RedisKeys.newsfeed(42L));
+    }
+}
@@ -0,0 +1,115 @@
+package com.omarahmed42.socialmedia.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final SingleFlight<Long, Integer> singleFlight = new SingleFlight<>();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should share one load between concurrent callers of the same key")
+    void execute_sameKeyWhileLoading_sharesLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<Integer> first = singleFlight.execute(1L, () -> {
+            await(release);
+            return loads.incrementAndGet();
+        }, executor);
+        CompletableFuture<Integer> second = singleFlight.execute(1L, loads::incrementAndGet, executor);
+
+        assertSame(first, second);
+        release.countDown();
+        assertEquals(1, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should load again once the previous load has completed")
+    void execute_afterCompletion_loadsAgain() throws Exception {
+        CompletableFuture<Integer> first = singleFlight.execute(1L, () -> 1, executor);
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Integer> second = singleFlight.execute(1L, () -> 2, executor);
+        assertNotSame(first, second);
+        assertEquals(2, second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Should forget a failed load")
+    void execute_failedLoad_isNotKept() throws Exception {
+        CompletableFuture<Integer> failed = singleFlight.execute(1L, () -> {
+            throw new IllegalStateException("failed");
+        }, executor);
+        assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+
+        assertEquals(2, singleFlight.execute(1L, () -> 2, executor).get(5, TimeUnit.SECONDS));
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    @DisplayName("Should let callers of a key being loaded wait for the caller already loading it")
+    void executeSync_sameKeyWhileLoading_waitsForLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> singleFlight.execute(1L, () -> {
+            loading.countDown();
+            await(release);
+            return loads.incrementAndGet();
+        }), executor);
+        await(loading);
+        AtomicInteger second = new AtomicInteger();
+        Thread waiter = new Thread(() -> second.set(singleFlight.execute(1L, loads::incrementAndGet)));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING && waiter.isAlive())
+            Thread.onSpinWait();
+
+        release.countDown();
+        waiter.join(5_000);
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, second.get());
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    @DisplayName("Should rethrow the failure of a load on the calling thread")
+    void executeSync_failedLoad_throws() {
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute(1L, () -> {
+            throw new IllegalStateException("failed");
+        }));
+        assertEquals(2, singleFlight.execute(1L, () -> 2));
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.omarahmed42.socialmedia.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class TransactionUtilsTest {
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    @DisplayName("Should run the action right away outside of a transaction")
+    void afterCommit_noTransaction_runsNow() {
+        TransactionUtils.afterCommit(runs::incrementAndGet);
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    @DisplayName("Should run the action only once the transaction committed")
+    void afterCommit_committed_runsAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        TransactionUtils.afterCommit(runs::incrementAndGet);
+        assertEquals(0, runs.get());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    @DisplayName("Should not run the action when the transaction rolled back")
+    void afterCommit_rolledBack_neverRuns() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        TransactionUtils.afterCommit(runs::incrementAndGet);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(
+                        TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertEquals(0, runs.get());
+    }
+}